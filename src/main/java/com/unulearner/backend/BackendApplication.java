@@ -1,9 +1,16 @@
 package com.unulearner.backend;
 
+import java.util.Arrays;
+
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
+import com.unulearner.backend.storage.Storage;
+import com.unulearner.backend.storage.tree.Reconciler;
 import com.unulearner.backend.storage.properties.StorageProperties;
 
 @SpringBootApplication
@@ -11,7 +18,29 @@ import com.unulearner.backend.storage.properties.StorageProperties;
 public class BackendApplication {
 
 	public static void main(String[] args) {
+		if (Arrays.asList(args).contains("fsck")) {
+			fsck(args);
+			return;
+		}
+
 		SpringApplication.run(BackendApplication.class, args);
 	}
 
+	/**
+	 * Checks the storage table against the disk and exits (0 if everything checks out, 1 if not, 2 if the pass didn't finish).
+	 * No web server, no storage tree, only the database and the disk.
+	 */
+	private static void fsck(String[] args) {
+		final ConfigurableApplicationContext context = new SpringApplicationBuilder(BackendApplication.class).web(WebApplicationType.NONE).properties("backend.storage.tree-reconcile-offline=true").run(args);
+		Reconciler.Report report = null;
+
+		try {
+			report = context.getBean(Storage.class).reconcile();
+		} catch (Exception exception) {
+			System.err.println("Storage reconciliation pass failed: %s".formatted(exception.getMessage()));
+		}
+
+		final Integer exitCode = report == null ? 2 : report.isClean() ? 0 : 1;
+		System.exit(SpringApplication.exit(context, () -> exitCode));
+	}
 }
@@ -0,0 +1,30 @@
+package com.unulearner.backend.configuration.serialization;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Binary alternatives to JSON (Smile and CBOR), for the clients that ask for them ({@code Accept: application/x-jackson-smile}
+ * or {@code Accept: application/cbor}). Whoever doesn't ask keeps getting JSON.
+ *
+ * The mappers are built by the same (application configured) builder the JSON one is, so the responses only ever differ
+ * in how they are encoded. Spring Boot picks the converters up and puts them in place of the default ones.
+ */
+@Configuration
+public class BinaryFormatConfig {
+    @Bean
+    MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new MappingJackson2SmileHttpMessageConverter(objectMapperBuilder.createXmlMapper(false).factory(new SmileFactory()).build());
+    }
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder objectMapperBuilder) {
+        return new MappingJackson2CborHttpMessageConverter(objectMapperBuilder.createXmlMapper(false).factory(new CBORFactory()).build());
+    }
+}
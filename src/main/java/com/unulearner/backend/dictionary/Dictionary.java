@@ -46,58 +46,6 @@ public class Dictionary {
                 }      
             });
 
-            this.languageMap.forEach((id, language) -> {
-                this.dictionaryInterface.getInitiallyAvailableWordLists(language.getCode()).forEach(list -> {
-                    String wordListDescription = list.get("description");
-                    String wordListPath = list.get("path");
-                    Map<String, Integer> lines = null;
-                    WordList wordList = null;
-                    Entry entry = null;
-                    
-                    if (wordListPath == null || wordListPath.isEmpty() || wordListPath.isBlank()) {
-                        return;
-                    }
-
-                    try {
-                        entry  = this.storage.whwh(wordListPath);
-                    } catch (Exception exception) {
-                        throw new RuntimeException(exception);
-                    }
-
-                    try {
-                        wordList = this.dictionaryInterface.searchWordListByEntry(entry).orElseThrow(() -> new DictionaryUtilityException("Word list '%s' not found in the database".formatted(wordListPath)));
-
-                        if (wordList.getLanguage().getId() != language.getId()) {
-                            throw new DictionaryUtilityException("Word list '%s' is not in the correct language".formatted(wordListPath));
-                        }
-                    } catch (DictionaryUtilityException exception) {
-                        logger.info("%s: %s. Creating new database entry...".formatted(exception.getClass().getSimpleName(), exception.getMessage()));
-                        wordList = new WordList().setEntry(entry).setLanguage(language).setDescription(wordListDescription).setImported(false);
-                    } catch (Exception exception) {
-                        throw new RuntimeException(exception);
-                    }
-
-                    try {
-                        if (wordList.getImported() == true) {
-                            if (wordList.getLinesSum() != Files.lines(entry.getEntryPath().getPath()).count()) {
-                                throw new DictionaryUtilityException("Word list '%s' has been modified since last import".formatted(wordListPath));
-                            }
-                        } else {
-                            throw new DictionaryUtilityException("Word list '%s' has not been imported yet".formatted(wordListPath));
-                        }
-                    } catch (DictionaryUtilityException exception) {
-                        logger.info("%s: %s. Creating new database entry...".formatted(exception.getClass().getSimpleName(), exception.getMessage()));
-                        lines = this.dictionaryInterface.importWordsFromWordList(wordList);
-                        wordList.setImported(true).setLinesMetadata(lines);
-                        this.dictionaryInterface.updateWordList(wordList);
-
-                        logger.info("Word list '%s' imported successfully. Total lines: %d. Lines commented out: %d. Lines accepted: %d. Lines persisted: %d. Lines ignored: %d. Blank lines: %d".formatted(wordListPath, wordList.getLinesSum(), wordList.getLinesCommented(), wordList.getLinesAccepted(), wordList.getLinesPersisted(), wordList.getLinesIgnored(), wordList.getLinesBlank()));
-                    } catch (Exception exception) {
-                        throw new RuntimeException(exception);
-                    }
-                });
-            });
-            
             logger.info("Dictionary initialized with %d languages".formatted(this.languageMap.size()));
         } catch (Exception exception) {
             /* If it got to here then we've got no choice but to crash it! */
@@ -107,6 +55,69 @@ public class Dictionary {
 
             throw new RuntimeException(exception.getMessage(), exception.getCause());
         }
+
+        /* Word lists live in the storage, so they have to wait for the storage tree to be built */
+        this.storage.whenReady().thenRunAsync(this::initializeWordLists).exceptionally(exception -> {
+            logger.error("Fatal error: %s".formatted(exception.getMessage()));
+            logger.error("Failed to import the word lists".formatted());
+            return null;
+        });
+    }
+
+    private void initializeWordLists() {
+        this.languageMap.forEach((id, language) -> {
+            this.dictionaryInterface.getInitiallyAvailableWordLists(language.getCode()).forEach(list -> {
+                String wordListDescription = list.get("description");
+                String wordListPath = list.get("path");
+                Map<String, Integer> lines = null;
+                WordList wordList = null;
+                Entry entry = null;
+                
+                if (wordListPath == null || wordListPath.isEmpty() || wordListPath.isBlank()) {
+                    return;
+                }
+
+                try {
+                    entry  = this.storage.whwh(wordListPath);
+                } catch (Exception exception) {
+                    throw new RuntimeException(exception);
+                }
+
+                try {
+                    wordList = this.dictionaryInterface.searchWordListByEntry(entry).orElseThrow(() -> new DictionaryUtilityException("Word list '%s' not found in the database".formatted(wordListPath)));
+
+                    if (wordList.getLanguage().getId() != language.getId()) {
+                        throw new DictionaryUtilityException("Word list '%s' is not in the correct language".formatted(wordListPath));
+                    }
+                } catch (DictionaryUtilityException exception) {
+                    logger.info("%s: %s. Creating new database entry...".formatted(exception.getClass().getSimpleName(), exception.getMessage()));
+                    wordList = new WordList().setEntry(entry).setLanguage(language).setDescription(wordListDescription).setImported(false);
+                } catch (Exception exception) {
+                    throw new RuntimeException(exception);
+                }
+
+                try {
+                    if (wordList.getImported() == true) {
+                        if (wordList.getLinesSum() != Files.lines(entry.getEntryPath().getPath()).count()) {
+                            throw new DictionaryUtilityException("Word list '%s' has been modified since last import".formatted(wordListPath));
+                        }
+                    } else {
+                        throw new DictionaryUtilityException("Word list '%s' has not been imported yet".formatted(wordListPath));
+                    }
+                } catch (DictionaryUtilityException exception) {
+                    logger.info("%s: %s. Creating new database entry...".formatted(exception.getClass().getSimpleName(), exception.getMessage()));
+                    lines = this.dictionaryInterface.importWordsFromWordList(wordList);
+                    wordList.setImported(true).setLinesMetadata(lines);
+                    this.dictionaryInterface.updateWordList(wordList);
+
+                    logger.info("Word list '%s' imported successfully. Total lines: %d. Lines commented out: %d. Lines accepted: %d. Lines persisted: %d. Lines ignored: %d. Blank lines: %d".formatted(wordListPath, wordList.getLinesSum(), wordList.getLinesCommented(), wordList.getLinesAccepted(), wordList.getLinesPersisted(), wordList.getLinesIgnored(), wordList.getLinesBlank()));
+                } catch (Exception exception) {
+                    throw new RuntimeException(exception);
+                }
+            });
+        });
+
+        logger.info("Word lists of %d languages have been initialized".formatted(this.languageMap.size()));
     }
 
     public Language getLanguage(UUID id) throws LanguageNotFoundException {
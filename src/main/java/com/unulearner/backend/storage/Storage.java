@@ -1,38 +1,63 @@
 package com.unulearner.backend.storage;
 
-import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.nio.file.StandardCopyOption;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.FileVisitResult;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.Collections;
-import java.util.ArrayDeque;
+import java.util.function.Predicate;
+import java.util.LinkedHashMap;
+import java.util.NavigableMap;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashMap;
-import java.util.Deque;
+import java.util.Locale;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.Set;
 import java.io.File;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.boot.availability.LivenessState;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-
+import jakarta.annotation.PreDestroy;
+
+import com.unulearner.backend.storage.tree.Scanner;
+import com.unulearner.backend.storage.tree.Watcher;
+import com.unulearner.backend.storage.tree.Snapshot;
+import com.unulearner.backend.storage.tree.Materializer;
+import com.unulearner.backend.storage.tree.Reconciler;
+import com.unulearner.backend.storage.tree.LockManager;
+import com.unulearner.backend.storage.tree.QuotaLedger;
+import com.unulearner.backend.storage.tree.OwnerIndex;
+import com.unulearner.backend.storage.tree.UrlIndex;
 import com.unulearner.backend.storage.models.Entry;
 import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryPage;
+import com.unulearner.backend.storage.models.utility.EntryCursor;
+import com.unulearner.backend.storage.models.utility.EntryOrder;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
 import com.unulearner.backend.storage.interfaces.StorageInterface;
 import com.unulearner.backend.storage.interfaces.SecurityInterface;
-import com.unulearner.backend.storage.exceptions.StorageEntryException;
+import com.unulearner.backend.storage.properties.StorageProperties;
 import com.unulearner.backend.storage.exceptions.entry.EntryNotFoundException;
 import com.unulearner.backend.storage.exceptions.entry.EntryInaccessibleException;
 import com.unulearner.backend.storage.exceptions.entry.EntryPublishingRaceException;
-import com.unulearner.backend.storage.exceptions.entry.EntryToParentRelationException;
+import com.unulearner.backend.storage.exceptions.entry.EntryVersionConflictException;
+import com.unulearner.backend.storage.exceptions.entry.EntryQuotaExceededException;
 import com.unulearner.backend.storage.exceptions.entry.EntryPhysicalCreationException;
 import com.unulearner.backend.storage.exceptions.entry.EntryTypeNotSupportedException;
-import com.unulearner.backend.storage.exceptions.entry.EntryTypeInDatabaseMismatchException;
 import com.unulearner.backend.storage.exceptions.entry.EntryInsufficientPermissionsException;
 
 import java.nio.file.DirectoryNotEmptyException;
@@ -43,225 +68,277 @@ import java.io.IOException;
 @Service
 public class Storage {
     private final Logger logger = LoggerFactory.getLogger(Storage.class);
+    private final ApplicationEventPublisher applicationEventPublisher;
     private final SecurityInterface securityInterface;
     private final StorageInterface storageInterface;
-    private final HashMap<UUID, Entry> entryCache;
-    private final HashMap<String, Entry> urlMap;
+    private final StorageProperties storageProperties;
+    private final ConcurrentHashMap<UUID, Entry> entryCache;
+    private final UrlIndex urlIndex;
+    private final CompletableFuture<Entry> treeFuture;
+    private final Set<UUID> loadedDirectories;
+    private final Materializer materializer;
+    private final Reconciler reconciler;
+    private final QuotaLedger quotaLedger;
+    private final OwnerIndex ownerIndex;
+    private final LockManager lockManager;
     private final EntryPath rootEntryPath;
-    private final Entry rootEntry;
-
-    public Storage(SecurityInterface securityInterface, StorageInterface storageInterface) {
-        final Deque<Entry> directoryStackDeque = new ArrayDeque<Entry>();
-
-        this.entryCache = new HashMap<UUID, Entry>();
-        this.urlMap = new HashMap<String, Entry>();
+    private final Snapshot snapshot;
+    private final Watcher watcher;
+    private volatile ScheduledExecutorService snapshotExecutor;
+    private volatile ScheduledExecutorService reconcilerExecutor;
+    private volatile Entry rootEntry;
+
+    public Storage(SecurityInterface securityInterface, StorageInterface storageInterface, StorageProperties storageProperties, ApplicationEventPublisher applicationEventPublisher) {
+        this.entryCache = new ConcurrentHashMap<UUID, Entry>();
+        this.urlIndex = new UrlIndex();
+        this.loadedDirectories = ConcurrentHashMap.newKeySet();
+        this.lockManager = new LockManager();
+        this.quotaLedger = new QuotaLedger(storageProperties.getQuotaUserLimitInBytes(), storageProperties.getQuotaGroupLimitInBytes(), (storageProperties.getTaskTimeOutInSeconds() + storageProperties.getTaskTimeOutGracePeriodInSeconds()) * 1000L);
+        this.ownerIndex = new OwnerIndex(!storageProperties.getTreeLazyLoadingEnabled()); /* A lazily loaded tree is asked (the database) instead */
+        this.applicationEventPublisher = applicationEventPublisher;
         this.securityInterface = securityInterface;
         this.storageInterface = storageInterface;
+        this.storageProperties = storageProperties;
+        this.reconcilerExecutor = null;
+        this.snapshotExecutor = null;
+        this.rootEntry = null;
+
+        EntryPath.setAttributesTimeToLive(this.storageProperties.getTreeAttributeCacheTtlInMillis().longValue());
+        EntryOrder.setLocale(Locale.forLanguageTag(this.storageProperties.getTreeSortLocale()));
 
         try {
             this.rootEntryPath = this.storageInterface.getRootDirectoryPath();
-            Files.walkFileTree(rootEntryPath.getPath(), new SimpleFileVisitor<Path>() {
-                @Override
-                public FileVisitResult preVisitDirectory(Path dirPath, BasicFileAttributes attrs) {
-                    try {
-                        final EntryPath dirEntryPath = rootEntryPath.resolveFromRoot(dirPath);
-                        final Entry stackLastEntry = directoryStackDeque.peekLast();
-                        /* Fuck Java, this is final! */ Entry entry = null;
-
-                        if (!dirEntryPath.isValidDirectory()) {
-                            throw new EntryInaccessibleException("Directory '%s' is inaccessible".formatted(dirEntryPath.getRelativePath().toString()));
-                        }
-
-                        if (stackLastEntry == null) { /* null parent is only allowed in the case of the root */
-                            if (!entryCache.isEmpty()) {
-                                throw new RuntimeException("Directory '%s' cannot be root as the root already exists".formatted(dirEntryPath.getPath().toString()));
-                            }
-
-                            if (!rootEntryPath.equals(dirEntryPath)) {
-                                throw new RuntimeException("Directory '%s' cannot be root as it doesn't match the provided root path".formatted(dirEntryPath.getPath().toString()));
-                            }
+            this.materializer = this.storageProperties.getTreeLazyLoadingEnabled() ? new Materializer(this.storageInterface, this.storageProperties, this.rootEntryPath, this.entryCache, this.urlIndex) : null;
+            this.snapshot = this.storageProperties.getTreeSnapshotEnabled() && this.materializer == null ? new Snapshot(this.storageInterface, this.storageProperties, this.rootEntryPath) : null;
+            this.watcher = this.storageProperties.getTreeWatchEnabled() && this.materializer == null ? new Watcher(this.storageInterface, this.storageProperties, this.rootEntryPath, this.lockManager, this.quotaLedger, this.ownerIndex, this.entryCache, this.urlIndex) : null;
+            this.reconciler = new Reconciler(this.storageInterface, this.storageProperties, this.rootEntryPath);
+        } catch (Exception exception) {
+            /* If it got to here then we've got no choice but to crash it! */
+            logger.error("Fatal error: %s".formatted(exception.getMessage()));
+            logger.error("Failed to initialize the storage".formatted());
+            logger.error("Crashing the application...".formatted());
 
-                            try {
-                                entry = storageInterface.searchEntryByURL(dirEntryPath.getRelativePath().toString()).orElseThrow(() -> new EntryNotFoundException("Root entry not found".formatted(dirPath.toString()))).setEntryPath(dirEntryPath);
-                            } catch (EntryNotFoundException exception) {
-                                logger.info("Database entry for the root directory not found. Creating root directory database entry...".formatted());
-                                entry = storageInterface.persistEntry(storageInterface.createRootEntry(rootEntryPath));
-                            } catch (Exception exception) {
-                                throw new RuntimeException(exception.getMessage(), exception.getCause());
-                            }
+            throw new RuntimeException(exception.getMessage(), exception.getCause());
+        }
 
-                            entryCache.put(entry.getId(), entry);
-                            urlMap.put(entry.getUrl(), entry);
-                            directoryStackDeque.offer(entry);
+        if (this.storageProperties.getTreeReconcileOffline()) { /* Never ready, nothing but the reconciliation pass is going to run */
+            logger.info("Storage is offline, the storage tree is not going to be built".formatted());
+            this.treeFuture = new CompletableFuture<Entry>();
+            return;
+        }
 
-                            logger.info("Storage root has been successfully initialized at %s".formatted(dirPath.toString()));
-                            return FileVisitResult.CONTINUE;
-                        }
+        /* The tree is built in the background so that the application (and whatever is already scanned) is up in the meantime */
+        this.treeFuture = CompletableFuture.supplyAsync(this::buildTree, runnable -> {
+            final Thread thread = new Thread(runnable, "storage-tree");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
 
-                        try {
-                            entry = storageInterface.searchEntryByURL(dirEntryPath.getRelativePath().toString()).orElseThrow(() -> new EntryNotFoundException("Database entry for directory '%s' not found".formatted(dirPath.toString()))).setEntryPath(dirEntryPath);
+    private Entry buildTree() {
+        try {
+            if (this.materializer != null) { /* Nothing to build up front, directories are loaded as they are accessed */
+                final Entry rootEntry = this.materializer.materializeRoot();
+                this.quotaLedger.seed(this.storageInterface.retrieveUsageByUser(), this.storageInterface.retrieveUsageByGroup()); /* Nothing is going to be scanned to add it up */
 
-                            if (!stackLastEntry.getId().equals(entry.getParent().getId())) {
-                                throw new EntryToParentRelationException("Directory is supposedly a child of directory '%s' but the relationship is not mirrored on the persistent level".formatted(stackLastEntry.getUrl()));
-                            }
+                synchronized (this) {
+                    this.rootEntry = rootEntry;
+                    AvailabilityChangeEvent.publish(this.applicationEventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+                }
 
-                            if (entry.getIsDirectory() == null || entry.getIsDirectory() != true) {
-                                throw new EntryTypeInDatabaseMismatchException("Directory '%s' type doesn't match the type persisted to the database".formatted(entry.getUrl()));
-                            }
+                logger.info("Storage tree is being loaded lazily. Entry budget: %d".formatted(this.storageProperties.getTreeCacheEntryBudget()));
+                return this.rootEntry;
+            }
 
-                            entry.setChildren(storageInterface.retrieveChildEntries(entry));
-                            if (!entry.getChildren().isEmpty()) { /* Sorting at this stage and then inserting accordingly seems like a better idea than throwing it all in together and sorting on postDirectoryVisit */
-                                Collections.sort(entry.getChildren(), storageInterface.getStorageComparator());
-                            }
-                        } catch (StorageEntryException exception) {
-                            if (entry != null && exception instanceof EntryTypeInDatabaseMismatchException) {
-                                //TODO: do something with the old entry...
-                            }
+            final Scanner scanner = new Scanner(this.storageInterface, this.storageProperties, this.rootEntryPath, this.snapshot, this::publishScannedSubtree);
+            final Entry rootEntry = scanner.scan();
 
-                            logger.info("%s: %s. Creating new database entry...".formatted(exception.getClass().getSimpleName(), exception.getMessage()));
-                            entry = storageInterface.persistEntry(storageInterface.createNewEntry(stackLastEntry, new ArrayList<>(), dirEntryPath, null, null, null));
-                        } catch (Exception exception) {
-                            throw new Exception(exception.getMessage(), exception.getCause());
-                        }
+            synchronized (this) {
+                this.rootEntry = rootEntry;
+                AvailabilityChangeEvent.publish(this.applicationEventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+            }
 
-                        final Integer iEntry = Collections.binarySearch(stackLastEntry.getChildren(), entry, storageInterface.getStorageComparator());
-                        if (iEntry >= 0) {
-                            stackLastEntry.getChildren().set(iEntry, entry);
-                        } else {
-                            stackLastEntry.getChildren().add((-iEntry - 1), entry);
-                        }
+            logger.info("Storage tree has been built successfully. Total entries: %d".formatted(scanner.getScannedEntries().size()));
+            if (this.watcher != null) {
+                this.watcher.start();
+            }
+        } catch (Exception exception) {
+            /* There is nothing left to crash here, so the application is marked as broken instead */
+            logger.error("Fatal error: %s".formatted(exception.getMessage()));
+            logger.error("Failed to build the storage tree".formatted());
+            logger.error("Marking the application as broken...".formatted());
 
+            AvailabilityChangeEvent.publish(this.applicationEventPublisher, this, LivenessState.BROKEN);
+            throw new RuntimeException(exception.getMessage(), exception.getCause());
+        }
 
-                        if (entryCache.put(entry.getId(), entry) != null || urlMap.put(entry.getUrl(), entry) != null) {
-                            throw new RuntimeException("Directory '%s' already exists in the storage hashmap!".formatted(dirEntryPath.getRelativePath().toString()));
-                        }
+        final Integer snapshotInterval = this.storageProperties.getTreeSnapshotInterval();
+        if (this.snapshot != null && snapshotInterval > 0) {
+            this.snapshotExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "storage-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-                        directoryStackDeque.offer(entry);
-                    } catch (Exception exception) {
-                        if (exception instanceof RuntimeException) {
-                            throw new RuntimeException(exception.getMessage(), exception.getCause());
-                        }
+            this.snapshotExecutor.scheduleWithFixedDelay(this::saveSnapshot, snapshotInterval, snapshotInterval, TimeUnit.SECONDS);
+        }
 
-                        logger.warn("Failed to add directory '%s' to the storage tree: %s".formatted(dirPath.toString(), exception.getMessage()));
-                        return FileVisitResult.SKIP_SUBTREE;
-                    }
+        final Integer reconcileInterval = this.storageProperties.getTreeReconcileInterval();
+        if (reconcileInterval > 0) {
+            this.reconcilerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "storage-reconciler");
+                thread.setDaemon(true);
+                return thread;
+            });
 
-                    logger.info("Directory '%s' was successfully added to the storage tree".formatted(dirPath.toString()));
-                    return FileVisitResult.CONTINUE;
-                }
+            /* An interrupted pass is resumed right away rather than a whole interval later */
+            this.reconcilerExecutor.scheduleWithFixedDelay(this::runReconciliation, this.reconciler.hasCheckpoint() ? 0 : reconcileInterval, reconcileInterval, TimeUnit.SECONDS);
+        }
 
-                @Override
-                public FileVisitResult visitFile(Path filePath, BasicFileAttributes attrs) {
-                    try {
-                        final EntryPath fileEntryPath = rootEntryPath.resolveFromRoot(filePath);
-                        final Entry stackLastEntry = directoryStackDeque.peekLast();
-                        /* Fuck Java, this is final! */ Entry entry = null;
+        return this.rootEntry;
+    }
 
-                        if (!fileEntryPath.isValidFile()) {
-                            throw new EntryInaccessibleException("File '%s' is inaccessible".formatted(fileEntryPath.getRelativePath().toString()));
-                        }
+    /**
+     * Makes a fully scanned subtree reachable while the rest of the tree is still being built.
+     * Entries are published once the subtree of their parent is complete, so nothing the scanner
+     * is still working on is ever handed out.
+     */
+    private void publishScannedSubtree(Entry dirEntry) {
+        ((EntryChildren) dirEntry.getChildren()).aggregate(); /* Subdirectories are complete (and added up) by now */
 
-                        try {
-                            entry = storageInterface.searchEntryByURL(fileEntryPath.getRelativePath().toString()).orElseThrow(() -> new EntryNotFoundException("Database entry for file '%s' not found".formatted(filePath.toString()))).setEntryPath(fileEntryPath);
+        final List<Entry> entries = new ArrayList<Entry>(dirEntry.getChildren());
+        if (dirEntry.getParent() == null) {
+            entries.add(dirEntry);
+        }
 
-                            if (!stackLastEntry.getId().equals(entry.getParent().getId())) {
-                                throw new EntryToParentRelationException("File is supposedly a child of directory '%s' but the relationship is not mirrored on the persistent level".formatted(stackLastEntry.getUrl()));
-                            }
+        for (Entry entry : entries) {
+            if (this.entryCache.putIfAbsent(entry.getId(), entry) != null || this.urlIndex.putIfAbsent(entry.getUrl(), entry) != null) {
+                throw new RuntimeException("%s '%s' already exists in the storage hashmap!".formatted(entry.getIsDirectory() ? "Directory" : "File", entry.getUrl()));
+            }
 
-                            if (entry.getIsDirectory() == null || entry.getIsDirectory() != false) {
-                                throw new EntryTypeInDatabaseMismatchException("File '%s' type doesn't match the type persisted to the database".formatted(entry.getUrl()));
-                            }
-                        } catch (StorageEntryException exception) {
-                            if (entry != null && exception instanceof EntryTypeInDatabaseMismatchException) {
-                                //TODO: do something with the old entry...
-                            }
+            this.quotaLedger.account(entry, true);
+            this.ownerIndex.add(entry);
+        }
 
-                            logger.info("%s: %s. Creating new database entry...".formatted(exception.getClass().getSimpleName(), exception.getMessage()));
-                            entry = storageInterface.persistEntry(storageInterface.createNewEntry(stackLastEntry, null, fileEntryPath, null, null, null));
-                        } catch (Exception exception) {
-                            throw new Exception(exception.getMessage(), exception.getCause());
-                        }     
-                        
-                        final Integer iEntry = Collections.binarySearch(stackLastEntry.getChildren(), entry, storageInterface.getStorageComparator());
-                        if (iEntry >= 0) {
-                            stackLastEntry.getChildren().set(iEntry, entry);
-                        } else {
-                            stackLastEntry.getChildren().add((-iEntry - 1), entry);
-                        }
+        this.loadedDirectories.add(dirEntry.getId());
+        if (this.watcher != null) { /* Right after the listing, whatever changes from now on is going to be picked up once the tree is built */
+            this.watcher.register(dirEntry);
+        }
+    }
 
-                        if (entryCache.put(entry.getId(), entry) != null || urlMap.put(entry.getUrl(), entry) != null) {
-                            throw new RuntimeException("File '%s' already exists in the storage hashmap".formatted(fileEntryPath.getRelativePath().toString()));
-                        }
-                    } catch (Exception exception) {
-                        if (exception instanceof RuntimeException) {
-                            throw new RuntimeException(exception.getMessage(), exception.getCause());
-                        }
+    /**
+     * Spring declares the application ready as soon as the context is up, which is
+     * (most likely) before the storage tree has been fully built.
+     */
+    @EventListener
+    public synchronized void onReadinessStateChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && this.rootEntry == null) {
+            AvailabilityChangeEvent.publish(this.applicationEventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
 
-                        logger.warn("Failed to add file '%s' to the storage tree: %s".formatted(filePath.toString(), exception.getMessage()));
-                        return FileVisitResult.CONTINUE;
-                    }
+    /**
+     * Stops watching the disk and the periodic snapshots, and writes the final one on the way out (unless the tree never got built).
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (this.reconcilerExecutor != null) {
+            this.reconcilerExecutor.shutdownNow();
+        }
 
-                    logger.info("File '%s' was successfully added to the storage tree".formatted(filePath.toString()));
-                    return FileVisitResult.CONTINUE;
-                }
+        if (this.watcher != null) {
+            this.watcher.stop();
+        }
 
-                @Override
-                public FileVisitResult visitFileFailed(Path filePath, IOException exception) {
-                    if (exception != null) {
-                        logger.warn("Failed to visit file '%s': %s".formatted(filePath.toString(), exception.getMessage()));
-                        return FileVisitResult.CONTINUE;
-                    }
+        if (this.snapshotExecutor != null) {
+            this.snapshotExecutor.shutdownNow();
+        }
 
-                    return FileVisitResult.CONTINUE;
-                }
+        if (this.isReady()) {
+            this.saveSnapshot();
+        }
+    }
 
-                @Override
-                public FileVisitResult postVisitDirectory(Path dirPath, IOException exception) {
-                    if (exception != null) {
-                        logger.warn("Failed to traverse the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
-                        return FileVisitResult.CONTINUE;
-                    }
+    /* Lets the watcher know that the change coming its way has been made through the API */
+    private void expectChange(EntryPath entryPath) {
+        if (this.watcher != null) {
+            this.watcher.expectChange(entryPath.getPath());
+        }
+    }
 
-                    final Entry dirEntry = directoryStackDeque.peekLast();
-                    long fileCount = 0, directoryCount = 0, visitedCount = 0, accessibleCount = 0;
-                    for (Entry entry : dirEntry.getChildren()) {
-                        visitedCount++;
+    private void runReconciliation() {
+        try {
+            this.reconciler.reconcile();
+        } catch (Exception exception) {
+            logger.warn("Failed to run the storage reconciliation pass: %s".formatted(exception.getMessage()));
+        }
+    }
 
-                        if (entry.getIsAccessible()) {
-                            accessibleCount++;
-                        }
+    private void saveSnapshot() {
+        if (this.snapshot == null) {
+            return;
+        }
 
-                        if (entry.getIsDirectory()) {
-                            directoryCount++;
-                        } else {
-                            fileCount++;
-                        }
-                    }
+        try {
+            this.snapshot.save(this.rootEntry);
+        } catch (Exception exception) {
+            logger.warn("Failed to write the storage tree snapshot: %s".formatted(exception.getMessage()));
+        }
+    }
 
-                    if (directoryStackDeque.size() > 1) {
-                        directoryStackDeque.removeLast();
-                    }
+    /**
+     * Checks whether the storage tree has been fully built.
+     *
+     * Until then only the entries of the already scanned subtrees can be retrieved
+     * and nothing is to be modified.
+     *
+     * @return {@code true} if the storage tree is complete, {@code false} if it is still being built (or failed to).
+     */
+    public Boolean isReady() {
+        return this.rootEntry != null;
+    }
 
-                    logger.info("Directory '%s' visited successfully. Total entries: %d. Directory entries: %d. File entries: %d. Accessible entries: %d".formatted(dirPath.toString(), visitedCount, directoryCount, fileCount, accessibleCount));
-                    return FileVisitResult.CONTINUE;
-                }
-            });
+    /**
+     * Checks the storage table against the disk (fsck) and reports the orphan rows, missing files, type mismatches
+     * and untracked files it comes across. Nothing gets fixed, the findings end up in the report file.
+     *
+     * The pass picks up where the last one left off if that one got interrupted. This is what the background passes
+     * and the offline "fsck" command run, and it doesn't need the storage tree to be built.
+     *
+     * @return The report of the pass, or {@code null} if it got interrupted.
+     * @throws IOException If the report or the checkpoint cannot be written.
+     */
+    public Reconciler.Report reconcile() throws IOException {
+        return this.reconciler.reconcile();
+    }
 
-            if ((this.rootEntry = directoryStackDeque.pollLast()) == null) {
-                throw new RuntimeException("No discernable root entry was detected".formatted());
-            }
+    /**
+     * Checks whether the storage tree failed to build (in which case it never will be ready).
+     *
+     * @return {@code true} if the storage tree build has failed.
+     */
+    public Boolean hasFailed() {
+        return this.treeFuture.isCompletedExceptionally();
+    }
 
-            if (!directoryStackDeque.isEmpty()) {
-                throw new RuntimeException("%d unhandled directories left in the deque".formatted(directoryStackDeque.size()));
-            }
-        } catch (Exception exception) {
-            /* If it got to here then we've got no choice but to crash it! */
-            logger.error("Fatal error: %s".formatted(exception.getMessage()));
-            logger.error("Failed to build the storage tree".formatted());
-            logger.error("Crashing the application...".formatted());
+    /**
+     * Checks whether an entry can be safely handed out, i.e. the whole subtree beneath it has been scanned.
+     *
+     * @param entry The entry in question.
+     * @return {@code true} if the entry (and everything below it) is loaded.
+     */
+    public Boolean isLoaded(Entry entry) {
+        return this.isReady() || !entry.getIsDirectory() || this.loadedDirectories.contains(entry.getId());
+    }
 
-            throw new RuntimeException(exception.getMessage(), exception.getCause());
-        }
+    /**
+     * Provides a future that completes with the root entry once the storage tree has been fully built
+     * (or exceptionally if the build fails).
+     *
+     * @return The storage tree build future.
+     */
+    public CompletableFuture<Entry> whenReady() {
+        return this.treeFuture.copy();
     }
 
     /**
@@ -270,7 +347,7 @@ public class Storage {
      * The root entry serves as the top-level directory and cannot be deleted or modified 
      * in the same way as other entries.
      *
-     * @return The root {@code Entry} of the storage tree.
+     * @return The root {@code Entry} of the storage tree, or {@code null} if the tree is not built yet.
      */
     public Entry getRootEntry() {
         return this.rootEntry;
@@ -280,15 +357,194 @@ public class Storage {
      * Retrieves an entry from the quick-access cache by its UUID.
      *
      * This method checks the in-memory cache for a matching entry. If no match is found,
-     * it returns {@code null} without querying persistent storage.
+     * it returns {@code null} without querying persistent storage, unless the tree is
+     * loaded lazily, in which case the entry (and the path leading up to it) is loaded
+     * from persistent storage. Directories come with their children loaded.
      *
      * @param targetEntryUUID The UUID of the entry to retrieve.
      * @return The matching {@code Entry} if found, or {@code null} if no match exists.
      */
     public Entry retrieveEntry(UUID targetEntryUUID) {
+        if (this.materializer != null) {
+            return this.materializer.materializeEntry(targetEntryUUID);
+        }
+
         return this.entryCache.get(targetEntryUUID);
     }
 
+    /**
+     * Retrieves the children of a directory entry.
+     *
+     * If the tree is loaded lazily the children are loaded first (if they haven't been already, or have since been unloaded).
+     * Anything walking down the tree should go through here rather than straight to {@code Entry.getChildren()}.
+     *
+     * @param directoryEntry The directory entry whose children are to be retrieved.
+     * @return The children of the directory.
+     */
+    public List<Entry> retrieveChildEntries(Entry directoryEntry) {
+        if (this.materializer != null) {
+            return this.materializer.materializeChildren(directoryEntry);
+        }
+
+        return directoryEntry.getChildren();
+    }
+
+    /**
+     * Retrieves a page of the children of a directory entry in the given ordering.
+     *
+     * Orderings other than by name are indexed per directory on their first use and kept up to date since,
+     * so a page costs as much as the page itself no matter how big the directory is.
+     *
+     * @param directoryEntry The directory entry whose children are to be retrieved.
+     * @param ordering The ordering of the children.
+     * @param descending Whether the ordering is reversed.
+     * @param afterEntry The last child of the previous page, {@code null} for the first page.
+     * @param pageSize The most children to be retrieved.
+     * @return The children of the directory in the given ordering, up to {@code pageSize} of them.
+     */
+    public List<Entry> retrieveChildEntries(Entry directoryEntry, EntryChildren.Ordering ordering, Boolean descending, Entry afterEntry, Integer pageSize) {
+        final List<Entry> childEntries = new ArrayList<Entry>(Math.min(pageSize, 1024));
+        final Iterator<Entry> iterator = ((EntryChildren) this.retrieveChildEntries(directoryEntry)).iterator(ordering, descending, afterEntry);
+        while (iterator.hasNext() && childEntries.size() < pageSize) {
+            childEntries.add(iterator.next());
+        }
+
+        return childEntries;
+    }
+
+    /**
+     * Retrieves a page of the children of a directory entry in the given ordering, only the ones the filter lets through.
+     *
+     * No more than {@code scanLimit} children are looked at for a page, so that a filter letting next to nothing through
+     * can't have a page cost as much as the whole directory. Such a page comes back short (even empty), but with a cursor to go on from.
+     *
+     * @param directoryEntry The directory entry whose children are to be retrieved.
+     * @param ordering The ordering of the children.
+     * @param descending Whether the ordering is reversed.
+     * @param cursor The cursor handed out with the previous page, {@code null} for the first page.
+     * @param filter The filter the children are to pass, {@code null} to let them all through.
+     * @param pageSize The most children to be retrieved.
+     * @param scanLimit The most children to be looked at.
+     * @return The page of the children along with the directory, and the cursor of the next page (unless this one is the last).
+     * @throws IllegalArgumentException If the cursor is malformed or it belongs to a listing in another ordering.
+     */
+    public EntryPage retrieveChildEntries(Entry directoryEntry, EntryChildren.Ordering ordering, Boolean descending, String cursor, Predicate<Entry> filter, Integer pageSize, Integer scanLimit) throws IllegalArgumentException {
+        final Entry afterEntry = cursor != null ? EntryCursor.decode(cursor, ordering, descending) : null;
+        if (!directoryEntry.getIsDirectory() || !(this.retrieveChildEntries(directoryEntry) instanceof EntryChildren directoryChildren)) {
+            return new EntryPage(directoryEntry, List.of(), null);
+        }
+
+        final List<Entry> childEntries = new ArrayList<Entry>(Math.min(pageSize, 1024));
+        final Iterator<Entry> iterator = directoryChildren.iterator(ordering, descending, afterEntry);
+        Entry lastEntry = null;
+
+        for (int iScanned = 0; iScanned < scanLimit && childEntries.size() < pageSize && iterator.hasNext(); iScanned++) {
+            lastEntry = iterator.next();
+            if (filter == null || filter.test(lastEntry)) {
+                childEntries.add(lastEntry);
+            }
+        }
+
+        return new EntryPage(directoryEntry, childEntries, lastEntry != null && iterator.hasNext() ? EntryCursor.encode(ordering, descending, lastEntry) : null);
+    }
+
+    /**
+     * Retrieves an entry by its URL (e.g. {@code /a/b/c}) in a single lookup, rather than walking down the tree name by name.
+     *
+     * If the tree is loaded lazily, the directories on the way down are loaded first (if they haven't been already).
+     *
+     * @param targetEntryUrl The URL of the entry, as in {@code Entry.getUrl()} (the leading and the trailing slashes are optional).
+     * @return The matching {@code Entry} if found, or {@code null} if no match exists.
+     */
+    public Entry resolveEntry(String targetEntryUrl) {
+        final String url = this.normalizeUrl(targetEntryUrl);
+        if (this.materializer != null) {
+            return this.materializer.materializeUrl(url);
+        }
+
+        return this.urlIndex.get(url);
+    }
+
+    /**
+     * Lists the URLs of everything under the given URL (the whole subtree, not just the children) in their sorted order,
+     * straight from the URL index. Lazily loaded trees only have the entries that have been loaded so far indexed.
+     *
+     * @param directoryEntryUrl The URL of the directory (e.g. {@code /a/b}).
+     * @param afterEntryUrl The URL to list from (exclusive), as in the last one of the previous page, or {@code null} to start from the beginning.
+     * @param pageSize The most URLs to be listed.
+     * @return The URLs along with the IDs of their entries, in their sorted order.
+     */
+    public LinkedHashMap<String, UUID> retrieveEntryUrls(String directoryEntryUrl, String afterEntryUrl, Integer pageSize) {
+        NavigableMap<String, Entry> indexedEntries = this.urlIndex.under(this.normalizeUrl(directoryEntryUrl));
+        if (afterEntryUrl != null) {
+            indexedEntries = indexedEntries.tailMap(this.normalizeUrl(afterEntryUrl), false);
+        }
+
+        final LinkedHashMap<String, UUID> entryUrls = new LinkedHashMap<String, UUID>();
+        for (Map.Entry<String, Entry> indexedEntry : indexedEntries.entrySet()) {
+            if (entryUrls.size() >= pageSize) {
+                break;
+            }
+
+            entryUrls.put(indexedEntry.getKey(), indexedEntry.getValue().getId());
+        }
+
+        return entryUrls;
+    }
+
+    /**
+     * Lists the URLs of every entry owned by the user (or the group), in their sorted order. Lookups go through the owner index,
+     * which keeps every owner's entries sorted, so a page costs as much as there is on it (plus finding where it starts).
+     * Lazily loaded trees are not all there to be indexed, the database is asked for the page instead (the URL column sorts bytewise, same as here).
+     *
+     * @param ownerUUID The UUID of the user (or of the group).
+     * @param isGroup Whether the UUID is of a group rather than of a user.
+     * @param afterEntryUrl The URL to list from (exclusive), as in the last one of the previous page, or {@code null} to start from the beginning.
+     * @param pageSize The most URLs to be listed.
+     * @return The URLs along with the IDs of their entries, in their sorted order.
+     * @throws EntryInsufficientPermissionsException If the user is neither the owner in question nor a member of the group.
+     */
+    public LinkedHashMap<String, UUID> retrieveOwnedEntryUrls(UUID ownerUUID, Boolean isGroup, String afterEntryUrl, Integer pageSize) throws Exception {
+        if (!this.securityInterface.userHasRootPrivilages()) {
+            if (isGroup ? !this.securityInterface.userBelongsToTheGroup(ownerUUID) : !this.securityInterface.userCanInteractWithTheUser(ownerUUID)) {
+                throw new EntryInsufficientPermissionsException("Cannot list the entries of %s '%s' due to insufficient permissions".formatted(isGroup ? "group" : "user", ownerUUID.toString()));
+            }
+        }
+
+        final LinkedHashMap<String, UUID> entryUrls = new LinkedHashMap<String, UUID>();
+        if (this.ownerIndex.isEnabled()) {
+            NavigableMap<String, Entry> ownedEntries = isGroup ? this.ownerIndex.getGroupEntries(ownerUUID) : this.ownerIndex.getUserEntries(ownerUUID);
+            if (afterEntryUrl != null) {
+                ownedEntries = ownedEntries.tailMap(this.normalizeUrl(afterEntryUrl), false);
+            }
+
+            for (Map.Entry<String, Entry> ownedEntry : ownedEntries.entrySet()) {
+                if (entryUrls.size() >= pageSize) {
+                    break;
+                }
+
+                entryUrls.put(ownedEntry.getKey(), ownedEntry.getValue().getId());
+            }
+
+            return entryUrls;
+        }
+
+        entryUrls.putAll(this.storageInterface.retrieveEntryUrlsByOwner(ownerUUID, isGroup, afterEntryUrl != null ? this.normalizeUrl(afterEntryUrl) : null, pageSize)); /* Paged by the database */
+        return entryUrls;
+    }
+
+    /**
+     * Retrieves a child of a directory entry by its name (without going through all the children).
+     *
+     * @param directoryEntry The directory entry whose child is to be retrieved.
+     * @param childEntryName The name of the child.
+     * @return The matching child {@code Entry} if found, or {@code null} if no match exists.
+     */
+    public Entry retrieveChildEntry(Entry directoryEntry, String childEntryName) {
+        this.retrieveChildEntries(directoryEntry); /* Only for the lazily loaded tree's sake */
+        return directoryEntry.retrieveChild(childEntryName);
+    }
+
     /**
      * Recovers an existing entry by name, whether it exists as a full-blown entry 
      * in the tree or as a physical file on the drive.
@@ -315,28 +571,31 @@ public class Storage {
             throw new InvalidParameterException("Destination entry is not a directory".formatted());
         }
 
-        /* If entry is already there (whether the file is actually accessible or not) */
-        for (int iEntry = 0; iEntry < destinationEntry.getChildren().size(); iEntry++) {
-            if (destinationEntry.getChildren().get(iEntry).getName().equals(targetEntryName)) {
-                return destinationEntry.getChildren().get(iEntry);
+        try (LockManager.Locks locks = this.lockManager.lockForWriting(destinationEntry)) {
+            /* If entry is already there (whether the file is actually accessible or not) */
+            final Entry existingEntry = this.retrieveChildEntry(destinationEntry, targetEntryName);
+            if (existingEntry != null) {
+                return existingEntry;
             }
-        }
 
-        final Entry newEntry; /* If entry is not there but the file supposedly is... */
-        final EntryPath targetPath = destinationEntry.getEntryPath().resolve(targetEntryName);
-        if (targetPath.isValidDirectory()) {
-            newEntry = this.storageInterface.createNewEntry(destinationEntry, new ArrayList<>(), targetPath, null, null, null);
-        } else if (targetPath.isValidFile()) {
-            newEntry = this.storageInterface.createNewEntry(destinationEntry, null, targetPath, null, null, null);
-        } else if (targetPath.isValid()) {
-            throw new EntryTypeNotSupportedException("Entry '%s' is of unsupported file type".formatted(targetPath.getPath().toString()));
-        } else {
-            throw new EntryInaccessibleException("Entry '%s' is inaccessible or nonexistent".formatted(targetPath.getPath().toString()));
-        }
+            final Entry newEntry; /* If entry is not there but the file supposedly is... */
+            final EntryPath targetPath = destinationEntry.getEntryPath().resolve(targetEntryName);
+            this.expectChange(targetPath);
 
-        /* TODO: bring this entry to the attention of the admin! */
-        logger.warn("%s '%s' has been recovered and requires attention".formatted(newEntry.getIsDirectory() ? "Directory" : "File", newEntry.getUrl(), newEntry.getIsDirectory() ? "created" : "uploaded"));
-        return newEntry;
+            if (targetPath.isValidDirectory()) {
+                newEntry = this.storageInterface.createNewEntry(destinationEntry, new ArrayList<>(), targetPath, null, null, null);
+            } else if (targetPath.isValidFile()) {
+                newEntry = this.storageInterface.createNewEntry(destinationEntry, null, targetPath, null, null, null);
+            } else if (targetPath.isValid()) {
+                throw new EntryTypeNotSupportedException("Entry '%s' is of unsupported file type".formatted(targetPath.getPath().toString()));
+            } else {
+                throw new EntryInaccessibleException("Entry '%s' is inaccessible or nonexistent".formatted(targetPath.getPath().toString()));
+            }
+
+            /* TODO: bring this entry to the attention of the admin! */
+            logger.warn("%s '%s' has been recovered and requires attention".formatted(newEntry.getIsDirectory() ? "Directory" : "File", newEntry.getUrl(), newEntry.getIsDirectory() ? "created" : "uploaded"));
+            return newEntry;
+        }
     }
 
     /**
@@ -354,6 +613,7 @@ public class Storage {
      * @throws FileAlreadyExistsException If an entry with the same name already exists in the destination.
      * @throws EntryInsufficientPermissionsException If the user lacks the necessary permissions.
      * @throws EntryPhysicalCreationException If the file cannot be moved or the directory cannot be created.
+     * @throws EntryQuotaExceededException If the owners of the new file don't have enough room left in their quotas.
      * @throws Exception If an unexpected error occurs.
      */
     public Entry createEntry(Entry destinationEntry, String newEntryName, File newEntryFile) throws Exception {
@@ -363,30 +623,42 @@ public class Storage {
             }
         }
 
-        for (int iEntry = 0; iEntry < destinationEntry.getChildren().size(); iEntry++) {
-            if (destinationEntry.getChildren().get(iEntry).getName().equals(newEntryName)) {
+        QuotaLedger.Reservation reservation = null;
+        try (LockManager.Locks locks = this.lockManager.lockForWriting(destinationEntry)) {
+            if (this.retrieveChildEntry(destinationEntry, newEntryName) != null) {
                 throw new FileAlreadyExistsException("Entry '%s' already exists in '%s' directory".formatted(newEntryName, destinationEntry.getUrl()));
             }
-        }
 
-        final EntryPath entryPath = destinationEntry.getEntryPath().resolve(newEntryName);
-        if (newEntryFile != null) {
-            try {
-                Files.move(Path.of(newEntryFile.getPath()), entryPath.getPath());
-            } catch (Exception exception) {
-                throw new EntryPhysicalCreationException("File content couldn't be written to '%s' file: %s".formatted(entryPath.getRelativePath().toString(), exception.getMessage()));
+            if (newEntryFile != null) {
+                reservation = this.reserveQuotas(destinationEntry, null, newEntryFile.length());
             }
-        } else {
-            try {
-                Files.createDirectory(entryPath.getPath());
-            } catch (Exception exception) {
-                throw new EntryPhysicalCreationException("Directory '%s' couldn't be created".formatted(entryPath.getRelativePath().toString(), exception.getMessage()));
+
+            final EntryPath entryPath = destinationEntry.getEntryPath().resolve(newEntryName);
+            this.expectChange(entryPath);
+
+            if (newEntryFile != null) {
+                try {
+                    Files.move(Path.of(newEntryFile.getPath()), entryPath.getPath());
+                } catch (Exception exception) {
+                    throw new EntryPhysicalCreationException("File content couldn't be written to '%s' file: %s".formatted(entryPath.getRelativePath().toString(), exception.getMessage()));
+                }
+            } else {
+                try {
+                    Files.createDirectory(entryPath.getPath());
+                } catch (Exception exception) {
+                    throw new EntryPhysicalCreationException("Directory '%s' couldn't be created".formatted(entryPath.getRelativePath().toString(), exception.getMessage()));
+                }
             }
-        }
 
-        final Entry newEntry = this.storageInterface.createNewEntry(destinationEntry, newEntryFile == null ? new ArrayList<>() : null, entryPath, null, null, null);
-        logger.info("%s '%s' has been %s successfully".formatted(newEntry.getIsDirectory() ? "Directory" : "File", newEntry.getUrl(), newEntry.getIsDirectory() ? "created" : "uploaded"));
-        return newEntry;
+            final Entry newEntry = this.storageInterface.createNewEntry(destinationEntry, newEntryFile == null ? new ArrayList<>() : null, entryPath, null, null, null);
+            this.quotaLedger.hold(newEntry, reservation);
+
+            logger.info("%s '%s' has been %s successfully".formatted(newEntry.getIsDirectory() ? "Directory" : "File", newEntry.getUrl(), newEntry.getIsDirectory() ? "created" : "uploaded"));
+            return newEntry;
+        } catch (Exception exception) {
+            this.quotaLedger.release(reservation);
+            throw exception;
+        }
     }
 
     /**
@@ -397,6 +669,7 @@ public class Storage {
      * @return The published or updated entry.
      * @throws InvalidParameterException If the target entry is null or has invalid path.
      * @throws EntryPublishingRaceException If a race condition is detected.
+     * @throws EntryVersionConflictException If the entry has been modified (and published) by someone else since it was read.
      * @throws Exception If an unexpected error occurs during publishing.
      */
     public Entry publishEntry(Entry targetEntry) throws Exception {
@@ -406,35 +679,68 @@ public class Storage {
             throw new InvalidParameterException("Root entry is not targetable".formatted());
         }
 
-        logger.debug("Attempting to publish '%s' ".formatted(targetEntry.getUrl(), targetEntry.getIsDirectory() ? "directory" : "file"));
-        final Entry persistedEntry = this.storageInterface.persistEntry(targetEntry);
-        final Entry parentEntry = persistedEntry.getParent();
+        try (LockManager.Locks locks = this.lockManager.lockForWriting(targetEntry.getParent())) {
+            logger.debug("Attempting to publish '%s' ".formatted(targetEntry.getUrl(), targetEntry.getIsDirectory() ? "directory" : "file"));
+            final Boolean isUpdate = targetEntry.getId() != null; /* Fresh IDs can't be anywhere in the tree yet */
+            final Entry persistedEntry;
+            try {
+                persistedEntry = this.storageInterface.persistEntry(targetEntry);
+            } catch (OptimisticLockingFailureException exception) { /* Left for the caller to redo on the latest version */
+                throw new EntryVersionConflictException("%s '%s' has been modified concurrently".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl()), exception);
+            }
+
+            final Entry parentEntry = persistedEntry.getParent();
+
+            final EntryChildren parentChildren = (EntryChildren) this.retrieveChildEntries(parentEntry);
+            synchronized (parentChildren) { /* The watcher might be at it as well */
+                /* If search by ID turns up with anything then this is an update job */
+                final Entry previousEntry = isUpdate ? this.entryCache.get(persistedEntry.getId()) : null;
+                if (previousEntry != null && previousEntry.getParent() != null && parentEntry.getId().equals(previousEntry.getParent().getId())) {
+                    if (parentChildren.remove(previousEntry)) { /* Remove now and replace later */
+                        parentEntry.unindexChild(previousEntry);
+                        previousEntry.aggregateUpwards(false);
+                        this.quotaLedger.account(previousEntry, false);
+                        this.ownerIndex.remove(previousEntry);
+                    }
+
+                    if (!previousEntry.getUrl().equals(persistedEntry.getUrl())) {
+                        this.urlIndex.remove(previousEntry.getUrl(), previousEntry);
+                    }
+                }
 
-        /* If search by ID turns up with anything then this is an update job */
-        for (int iEntry = 0; iEntry < parentEntry.getChildren().size(); iEntry++) {
-            if (parentEntry.getChildren().get(iEntry).getId().equals(persistedEntry.getId())) {
-                parentEntry.getChildren().remove(iEntry); /* Remove now and replace later */
+                /* If search by name turns up with anything then we have a big problem */
+                final Integer iEntry = parentChildren.rank(persistedEntry);
+                if (iEntry >= 0) { /* If the ID matches then update is permissible... although it should never come to this. */
+                    if (!persistedEntry.getId().equals(parentChildren.get(iEntry).getId())) {
+                        /* If the ID doesn't match then we have a race condition. */
+                        throw new EntryPublishingRaceException("It's a race!".formatted());
+                    }
+
+                    final Entry replacedEntry = parentChildren.set(iEntry, persistedEntry).aggregateUpwards(false);
+                    this.quotaLedger.account(replacedEntry, false);
+                    this.ownerIndex.remove(replacedEntry);
+                } else {            
+                    parentChildren.add((-iEntry - 1), persistedEntry);
+                }
+
+                /* Moved entries are added here and taken away from wherever they were once the original is deleted */
+                persistedEntry.aggregateUpwards(true);
+                this.quotaLedger.account(persistedEntry, true);
+                this.quotaLedger.settle(targetEntry); /* Charged for real by now */
+                this.ownerIndex.add(persistedEntry);
+                parentEntry.indexChild(persistedEntry);
+
+                this.entryCache.put(persistedEntry.getId(), persistedEntry);
+                this.urlIndex.put(persistedEntry.getUrl(), persistedEntry);
             }
-        }
 
-        /* If search by name turns up with anything then we have a big problem */
-        final Integer iEntry = Collections.binarySearch(parentEntry.getChildren(), persistedEntry, this.storageInterface.getStorageComparator());
-        if (iEntry >= 0) { /* If the ID matches then update is permissible... although it should never come to this. */
-            if (!persistedEntry.getId().equals(parentEntry.getChildren().get(iEntry).getId())) {
-                /* If the ID doesn't match then we have a race condition. */
-                throw new EntryPublishingRaceException("It's a race!".formatted());
+            if (this.watcher != null && persistedEntry.getIsDirectory()) {
+                this.watcher.register(persistedEntry);
             }
 
-            parentEntry.getChildren().set(iEntry, persistedEntry);
-        } else {            
-            parentEntry.getChildren().add((-iEntry - 1), persistedEntry);
+            logger.info("%s '%s' has been published successfully".formatted(persistedEntry.getIsDirectory() ? "Directory" : "File", persistedEntry.getUrl()));
+            return persistedEntry;
         }
-        
-        this.entryCache.put(persistedEntry.getId(), persistedEntry);
-        this.urlMap.put(persistedEntry.getUrl(), persistedEntry);
-
-        logger.info("%s '%s' has been published successfully".formatted(persistedEntry.getIsDirectory() ? "Directory" : "File", persistedEntry.getUrl()));
-        return persistedEntry;
     }
 
     /**
@@ -453,6 +759,7 @@ public class Storage {
      * @throws FileAlreadyExistsException If a entry with the same name already exists in the destination and {@code replaceExisting} is {@code false}.
      * @throws EntryInsufficientPermissionsException If the user lacks the necessary permissions to perform the operation.
      * @throws EntryTypeNotSupportedException If attempting to replace a directory entry.
+     * @throws EntryQuotaExceededException If the owners of the copied (or handed over) file don't have enough room left in their quotas.
      * @throws IOException If the transfer fails due to an I/O issue.
      * @throws Exception If an unexpected error occurs.
      */
@@ -472,63 +779,82 @@ public class Storage {
         final String newEntryName = newName != null ? newName : targetEntry.getName();
         final Boolean replaceExistingEntry = replaceExisting == null ? false : replaceExisting;
         final Boolean persistOriginalEntry = persistOriginal == null ? true : persistOriginal;
-        for (int iEntry = 0; iEntry < destinationEntry.getChildren().size(); iEntry++) {
-            if (destinationEntry.getChildren().get(iEntry).getName().equals(newEntryName)) {
+        final List<Entry> writtenDirectories = persistOriginalEntry ? List.of(destinationEntry) : List.of(destinationEntry, targetEntry.getParent());
+        QuotaLedger.Reservation reservation = null;
+        try (LockManager.Locks locks = this.lockManager.lock(writtenDirectories, List.of(targetEntry.getParent()))) { /* Copies only read the directory of the original */
+            if (this.retrieveChildEntry(destinationEntry, newEntryName) != null) {
                 throw new FileAlreadyExistsException("Entry '%s' already exists in '%s' directory".formatted(newEntryName, destinationEntry.getUrl()));
             }
-        }
 
-        if (!this.securityInterface.userHasRootPrivilages()) {
-            if (persistOriginalEntry) {
-                if (!this.securityInterface.userHasRequiredPermissions(targetEntry, true, false, false) || !this.securityInterface.userHasRequiredPermissions(destinationEntry, false, true, true)) {
-                    throw new EntryInsufficientPermissionsException("Cannot copy %s '%s' to directory '%s' due to insufficient permissions".formatted(targetEntry.getIsDirectory() ? "directory" : "file", targetEntry.getUrl(), destinationEntry.getUrl()));
-                }
-            } else {
-                if (!this.securityInterface.userHasRequiredPermissions(targetEntry.getParent(), false, true, true) || !this.securityInterface.userHasRequiredPermissions(destinationEntry, false, true, true)) {
-                    throw new EntryInsufficientPermissionsException("Cannot move %s '%s' to directory '%s' due to insufficient permissions".formatted(targetEntry.getIsDirectory() ? "directory" : "file", targetEntry.getUrl(), destinationEntry.getUrl()));
-                }
+            if (!this.securityInterface.userHasRootPrivilages()) {
+                if (persistOriginalEntry) {
+                    if (!this.securityInterface.userHasRequiredPermissions(targetEntry, true, false, false) || !this.securityInterface.userHasRequiredPermissions(destinationEntry, false, true, true)) {
+                        throw new EntryInsufficientPermissionsException("Cannot copy %s '%s' to directory '%s' due to insufficient permissions".formatted(targetEntry.getIsDirectory() ? "directory" : "file", targetEntry.getUrl(), destinationEntry.getUrl()));
+                    }
+                } else {
+                    if (!this.securityInterface.userHasRequiredPermissions(targetEntry.getParent(), false, true, true) || !this.securityInterface.userHasRequiredPermissions(destinationEntry, false, true, true)) {
+                        throw new EntryInsufficientPermissionsException("Cannot move %s '%s' to directory '%s' due to insufficient permissions".formatted(targetEntry.getIsDirectory() ? "directory" : "file", targetEntry.getUrl(), destinationEntry.getUrl()));
+                    }
 
-                if (targetEntry.getParent().stickyBitIsSet() && !this.securityInterface.userIsTheOwnerOfTheEntry(targetEntry) && !this.securityInterface.userIsTheOwnerOfTheEntry(targetEntry.getParent())) {
-                    throw new EntryInsufficientPermissionsException("Cannot move %s '%s' out of a shared directory due to insufficient permissions".formatted(targetEntry.getIsDirectory() ? "directory" : "file", targetEntry.getUrl()));
+                    if (targetEntry.getParent().stickyBitIsSet() && !this.securityInterface.userIsTheOwnerOfTheEntry(targetEntry) && !this.securityInterface.userIsTheOwnerOfTheEntry(targetEntry.getParent())) {
+                        throw new EntryInsufficientPermissionsException("Cannot move %s '%s' out of a shared directory due to insufficient permissions".formatted(targetEntry.getIsDirectory() ? "directory" : "file", targetEntry.getUrl()));
+                    }
                 }
             }
-        }
 
-        final EntryPath targetEntryPath = destinationEntry.getEntryPath().resolve(newEntryName);
-        final EntryPath currentEntryPath = targetEntry.getEntryPath();
-        final EntryPath afterTransferEntryPath;
+            /* Copies are new bytes altogether, moved bytes only change hands if the destination hands them over (setuid/setgid) */
+            reservation = this.reserveQuotas(destinationEntry, persistOriginalEntry ? null : targetEntry, targetEntry.getIsDirectory() ? 0L : targetEntry.getSize());
 
-        if (persistOriginalEntry) {
-            if (replaceExistingEntry) {
-                afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.copy(currentEntryPath.getPath(), targetEntryPath.getPath(), StandardCopyOption.REPLACE_EXISTING));
-            } else {
-                afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.copy(currentEntryPath.getPath(), targetEntryPath.getPath()));
+            final EntryPath targetEntryPath = destinationEntry.getEntryPath().resolve(newEntryName);
+            final EntryPath currentEntryPath = targetEntry.getEntryPath();
+            final EntryPath afterTransferEntryPath;
+
+            this.expectChange(targetEntryPath);
+            if (!persistOriginalEntry) {
+                this.expectChange(currentEntryPath);
             }
-        } else {
-            if (targetEntry.getIsDirectory()) {
+
+            if (persistOriginalEntry) {
                 if (replaceExistingEntry) {
-                    throw new EntryTypeNotSupportedException("Cannot replace existing '%s' directory".formatted(targetEntry.getUrl()));
+                    afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.copy(currentEntryPath.getPath(), targetEntryPath.getPath(), StandardCopyOption.REPLACE_EXISTING));
+                } else {
+                    afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.copy(currentEntryPath.getPath(), targetEntryPath.getPath()));
                 }
-
-                afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.createDirectory(targetEntryPath.getPath()));
             } else {
-                if (replaceExistingEntry) {
-                    afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.move(currentEntryPath.getPath(), targetEntryPath.getPath(), StandardCopyOption.REPLACE_EXISTING));
+                if (targetEntry.getIsDirectory()) {
+                    if (replaceExistingEntry) {
+                        throw new EntryTypeNotSupportedException("Cannot replace existing '%s' directory".formatted(targetEntry.getUrl()));
+                    }
+
+                    afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.createDirectory(targetEntryPath.getPath()));
                 } else {
-                    afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.move(currentEntryPath.getPath(), targetEntryPath.getPath()));
+                    if (replaceExistingEntry) {
+                        afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.move(currentEntryPath.getPath(), targetEntryPath.getPath(), StandardCopyOption.REPLACE_EXISTING));
+                    } else {
+                        afterTransferEntryPath = destinationEntry.getEntryPath().resolveFromRoot(Files.move(currentEntryPath.getPath(), targetEntryPath.getPath()));
+                    }
                 }
             }
-        }
 
-        final Entry newEntry;
-        if (persistOriginalEntry) { /* Copied entries acquire new attributes (defaults) */
-            newEntry = this.storageInterface.createNewEntry(destinationEntry, targetEntry.getIsDirectory() ? new ArrayList<>() : null, afterTransferEntryPath, null, null, null);
-        } else { /* Moved entries retain attributes of the original entry */
-            newEntry = this.storageInterface.createNewEntry(destinationEntry, targetEntry.getIsDirectory() ? new ArrayList<>() : null, afterTransferEntryPath, targetEntry.getUser(), targetEntry.getGroup(), targetEntry.getPermissions());
-        }
+            /* Whatever was read of either path before the transfer no longer holds */
+            currentEntryPath.invalidateAttributes();
+            targetEntryPath.invalidateAttributes();
+
+            final Entry newEntry;
+            if (persistOriginalEntry) { /* Copied entries acquire new attributes (defaults) */
+                newEntry = this.storageInterface.createNewEntry(destinationEntry, targetEntry.getIsDirectory() ? new ArrayList<>() : null, afterTransferEntryPath, null, null, null);
+            } else { /* Moved entries retain attributes of the original entry */
+                newEntry = this.storageInterface.createNewEntry(destinationEntry, targetEntry.getIsDirectory() ? new ArrayList<>() : null, afterTransferEntryPath, targetEntry.getUser(), targetEntry.getGroup(), targetEntry.getPermissions());
+            }
+
+            this.quotaLedger.hold(newEntry, reservation);
 
-        logger.info("%s '%s' has been %s to '%s' directory successfully".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl(), persistOriginalEntry ? "copied" : "moved", destinationEntry.getUrl()));
-        return newEntry;
+            logger.info("%s '%s' has been %s to '%s' directory successfully".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl(), persistOriginalEntry ? "copied" : "moved", destinationEntry.getUrl()));
+            return newEntry;
+        } catch (Exception exception) {
+            this.quotaLedger.release(reservation);
+            throw exception;
+        }
     }
 
     public Entry modifyEntry(Entry targetEntry) throws Exception {
@@ -568,7 +894,7 @@ public class Storage {
             Pattern pattern = Pattern.compile("^((?:[ugo]{1,3}|a)?)([+=-])([rwxst]{0,5})$");
             ArrayList<String[]> operationsMatrix = new ArrayList<>();
 
-            Integer integerPermissions = Integer.parseInt(targetEntry.getPermissions(), 8);
+            Integer integerPermissions = targetEntry.getPermissionBits();
             Integer flagMask, specialMask, permissionMask;
             String scope, operator, permissions;
 
@@ -669,7 +995,7 @@ public class Storage {
             }
 
             logger.info("%s '%s' permission flags have been updated to %o successfully".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl(), integerPermissions));
-            return targetEntry.setPermissions(String.format("%o", integerPermissions));
+            return targetEntry.setPermissionBits(integerPermissions);
         }
 
         logger.info("%s '%s' permission flags have been set to %s successfully".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl(), permissionFlags));
@@ -721,12 +1047,27 @@ public class Storage {
             }
         }
 
+        /* The entry in the tree is changed right away, so are the bytes its owners are charged with (the published copies are accounted for once published) */
+        final Boolean isInTree = targetEntry.getId() != null && this.entryCache.get(targetEntry.getId()) == targetEntry;
+        if (isInTree) {
+            this.quotaLedger.account(targetEntry, false);
+            this.ownerIndex.remove(targetEntry);
+        }
+
         /* Done separately from the permission check to ensure that the change is not just partially permitted */
         if (user != null) targetEntry.setUser(user);
             
         /* Done separately from the permission check to ensure that the change is not just partially permitted */
         if (group != null) targetEntry.setGroup(group);
 
+        if (isInTree) {
+            this.quotaLedger.account(targetEntry, true);
+            this.ownerIndex.add(targetEntry);
+            if (targetEntry.getParent().getChildren() instanceof EntryChildren parentChildren) {
+                parentChildren.reindex(targetEntry);
+            }
+        }
+
         logger.info("%s '%s' ownership has been transfered to %s:%s successfully".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl(), user != null ? user.toString() : "", group != null ? group.toString() : ""));
         return targetEntry;
     }
@@ -743,6 +1084,7 @@ public class Storage {
      * @throws InvalidParameterException If the provided entry is {@code null} or is the root entry.
      * @throws EntryInsufficientPermissionsException If the user lacks the necessary permissions to delete the entry.
      * @throws DirectoryNotEmptyException If attempting to delete a non-empty directory.
+     * @throws EntryVersionConflictException If the entry has been modified (and published) by someone else since it was read.
      * @throws IOException If the entry removal attempt fails due to an I/O issue.
      * @throws Exception If an unexpected error occurs.
      */
@@ -763,16 +1105,37 @@ public class Storage {
             }
         }
 
-        if (targetEntry.getId() != null) {
-            this.storageInterface.deleteEntry(targetEntry);
-            this.entryCache.remove(targetEntry.getId());
-        }
+        try (LockManager.Locks locks = this.lockManager.lockForWriting(targetEntry.getParent(), targetEntry.getIsDirectory() ? targetEntry : null)) {
+            if (targetEntry.getId() != null) {
+                try {
+                    this.storageInterface.deleteEntry(targetEntry);
+                } catch (OptimisticLockingFailureException exception) {
+                    throw new EntryVersionConflictException("%s '%s' has been modified concurrently".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl()), exception);
+                }
+
+                this.entryCache.remove(targetEntry.getId());
+            }
+
+            this.urlIndex.remove(targetEntry.getUrl(), targetEntry);
+
+            synchronized (this.retrieveChildEntries(targetEntry.getParent())) {
+                if (this.retrieveChildEntries(targetEntry.getParent()).remove(targetEntry)) {
+                    targetEntry.getParent().unindexChild(targetEntry);
+                    targetEntry.aggregateUpwards(false);
+                    this.quotaLedger.account(targetEntry, false);
+                    this.ownerIndex.remove(targetEntry);
+                }
+            }
+
+            this.quotaLedger.settle(targetEntry); /* Whatever was set aside for it, had it never been published */
 
-        targetEntry.getParent().getChildren().remove(targetEntry);
-        Files.deleteIfExists(targetEntry.getEntryPath().getPath());
+            this.expectChange(targetEntry.getEntryPath());
+            Files.deleteIfExists(targetEntry.getEntryPath().getPath());
+            targetEntry.getEntryPath().invalidateAttributes();
 
-        logger.info("%s '%s' has been removed successfully".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl()));
-        return targetEntry.setEntryPath(null).setId(null);
+            logger.info("%s '%s' has been removed successfully".formatted(targetEntry.getIsDirectory() ? "Directory" : "File", targetEntry.getUrl()));
+            return targetEntry.setEntryPath(null).setId(null);
+        }
     }
 
     //**********************************************************//
@@ -796,9 +1159,64 @@ public class Storage {
         return this.storageInterface.createNewEntry(destinationEntry, children, null, null, null, null).setName(entryName);
     }
 
+    /**
+     * Retrieves how many bytes the entries of the user (or of the group) take up, along with the most they are allowed to.
+     *
+     * @param ownerUUID The UUID of the user (or of the group).
+     * @param isGroup Whether the UUID is of a group rather than of a user.
+     * @return The bytes in use ("usage") and the limit ("limit", 0 for none).
+     * @throws EntryInsufficientPermissionsException If the user is neither the owner in question nor a member of the group.
+     */
+    public LinkedHashMap<String, Long> retrieveQuotaUsage(UUID ownerUUID, Boolean isGroup) throws Exception {
+        if (!this.securityInterface.userHasRootPrivilages()) {
+            if (isGroup ? !this.securityInterface.userBelongsToTheGroup(ownerUUID) : !this.securityInterface.userCanInteractWithTheUser(ownerUUID)) {
+                throw new EntryInsufficientPermissionsException("Cannot retrieve the quota usage of %s '%s' due to insufficient permissions".formatted(isGroup ? "group" : "user", ownerUUID.toString()));
+            }
+        }
+
+        final LinkedHashMap<String, Long> quotaUsage = new LinkedHashMap<String, Long>();
+        quotaUsage.put("usage", isGroup ? this.quotaLedger.getGroupUsage(ownerUUID) : this.quotaLedger.getUserUsage(ownerUUID));
+        quotaUsage.put("limit", isGroup ? this.quotaLedger.getGroupLimit() : this.quotaLedger.getUserLimit());
+        return quotaUsage;
+    }
+
+    /**
+     * Makes sure the owners the entry is going to end up with have room for its bytes before any of them hit the disk, and sets the bytes
+     * aside for them right away (concurrent writers of the same owners don't get to count on the same room). The reservation is released
+     * once the entry is published (its bytes are charged for real then) or if it never gets to be.
+     * New entries go to the default owners and moved ones keep theirs, unless the destination has the setuid/setgid bit set.
+     *
+     * @param chargedEntry The entry whose bytes are already charged to its owners (the original of a move), {@code null} for new bytes.
+     * @return The reservation, {@code null} if there's nothing to reserve.
+     */
+    private QuotaLedger.Reservation reserveQuotas(Entry destinationEntry, Entry chargedEntry, Long size) throws EntryQuotaExceededException {
+        if (size <= 0 || this.securityInterface.userHasRootPrivilages()) {
+            return null;
+        }
+
+        final UUID user = destinationEntry.setuidBitIsSet() ? destinationEntry.getUser() : chargedEntry != null ? chargedEntry.getUser() : this.storageProperties.getDefaultUserUUID();
+        final UUID group = destinationEntry.setgidBitIsSet() ? destinationEntry.getGroup() : chargedEntry != null ? chargedEntry.getGroup() : this.storageProperties.getDefaultGroupUUID();
+
+        return this.quotaLedger.reserve(chargedEntry == null || !user.equals(chargedEntry.getUser()) ? user : null, chargedEntry == null || !group.equals(chargedEntry.getGroup()) ? group : null, size);
+    }
+
+    /* URLs are indexed with the leading slash and without the trailing one (the root being just the slash) */
+    private String normalizeUrl(String url) {
+        String normalizedUrl = url != null ? url.replace("\\", "/").trim() : "";
+        if (!normalizedUrl.startsWith("/")) {
+            normalizedUrl = "/" + normalizedUrl;
+        }
+
+        while (normalizedUrl.length() > 1 && normalizedUrl.endsWith("/")) {
+            normalizedUrl = normalizedUrl.substring(0, normalizedUrl.length() - 1);
+        }
+
+        return normalizedUrl;
+    }
+
     public Entry whwh(String url) throws Exception {
         final Path relativePath = this.rootEntryPath.getPath().relativize(Path.of(url));
-        final Entry entry = this.urlMap.get("/%s".formatted(relativePath.toString()));
+        final Entry entry = this.materializer != null ? this.materializer.materializeUrl("/%s".formatted(relativePath.toString())) : this.urlIndex.get("/%s".formatted(relativePath.toString()));
 
         if (entry == null) {
             throw new EntryNotFoundException("Entry '%s' not found".formatted(url));
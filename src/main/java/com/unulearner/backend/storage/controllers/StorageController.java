@@ -3,8 +3,17 @@ package com.unulearner.backend.storage.controllers;
 import java.io.File;
 import java.net.URI;
 import java.util.Map;
+import java.util.List;
 import java.util.UUID;
-
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.FileSystems;
+import java.util.function.Predicate;
+
+import org.springframework.http.MediaType;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpHeaders;
 import org.springframework.core.io.Resource;
@@ -21,6 +30,10 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 
 import com.unulearner.backend.storage.tasks.Base;
 import com.unulearner.backend.storage.tasks.Create;
@@ -31,8 +44,12 @@ import com.unulearner.backend.storage.tasks.ModifyField;
 import com.unulearner.backend.storage.tasks.ModifyOwnership;
 import com.unulearner.backend.storage.tasks.ModifyPermissions;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.unulearner.backend.storage.Storage;
 import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryPage;
+import com.unulearner.backend.storage.models.utility.EntryWriter;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
 import com.unulearner.backend.storage.tasks.response.Response;
 import com.unulearner.backend.storage.properties.StorageProperties;
 import com.unulearner.backend.storage.tasks.dispatcher.TaskDispatch;
@@ -41,20 +58,30 @@ import com.unulearner.backend.storage.exceptions.StorageControllerException;
 @Controller
 @RequestMapping(path = "/storage")
 public class StorageController {
+    private static final MediaType APPLICATION_SMILE = new MediaType("application", "x-jackson-smile");
+    private static final List<MediaType> STREAMED_MEDIA_TYPES = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_NDJSON, APPLICATION_SMILE, MediaType.APPLICATION_CBOR);
     private final Storage storage;
     private final TaskDispatch taskDispatch;
     private final StorageProperties storageProperties;
     private final Long PROCESS_ID = ProcessHandle.current().pid();
     private final String TEMP_DIR = System.getProperty("java.io.tmpdir");
+    private final Integer retryAfterInSeconds;
     private final Boolean printStackTrace;
+    private final EntryWriter entryWriter;
+    private final ObjectMapper smileObjectMapper;
+    private final ObjectMapper cborObjectMapper;
 
-    public StorageController(Storage storage, TaskDispatch taskDispatch, StorageProperties storageProperties) {
+    public StorageController(Storage storage, TaskDispatch taskDispatch, StorageProperties storageProperties, ObjectMapper objectMapper, MappingJackson2SmileHttpMessageConverter smileConverter, MappingJackson2CborHttpMessageConverter cborConverter) {
         this.storage = storage;
         this.taskDispatch = taskDispatch;
         this.storageProperties = storageProperties;
+        this.entryWriter = new EntryWriter(objectMapper);
+        this.smileObjectMapper = smileConverter.getObjectMapper();
+        this.cborObjectMapper = cborConverter.getObjectMapper();
 
         /* We'll be getting some storage properties here (mostly in regards to logging) */
         this.printStackTrace = this.storageProperties.getControllerPrintExceptionStackTrace();
+        this.retryAfterInSeconds = this.storageProperties.getControllerRetryAfterInSeconds();
     }
 
     /**
@@ -79,6 +106,10 @@ public class StorageController {
         @PathVariable() UUID taskUUID,
         @RequestParam(required = false) Map<String, Object> parameters) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             final Base task = this.taskDispatch.retrieveTask(taskUUID); task.execute(parameters);
             return new ResponseEntity<Response>(task.getResponse(), HttpStatus.OK);
@@ -95,30 +126,235 @@ public class StorageController {
      * with its children. If no UUID is provided (i.e., null), the method retrieves the root storage 
      * entry.</p>
      *
+     * <p>The children are written out as the tree is walked, down to the given depth (only the immediate children 
+     * by default), so that no response ever has to be put together in memory as a whole. Clients asking for 
+     * {@code application/x-ndjson} get one entry (without its children) per line instead, while the ones asking for 
+     * {@code application/x-jackson-smile} or {@code application/cbor} get the very same as JSON, only in a binary encoding.</p>
+     *
+     * <p>If any of the optional parameters (but the depth) is provided, the children come a page at a time instead (sorted 
+     * and filtered as asked, none of them with its own children). The next page is asked for by passing the 
+     * {@code cursor} of the previous one along with the very same parameters. A page costs as much as the page 
+     * itself no matter how big the directory is, which is why a page of a filtered listing can come back short 
+     * (or even empty) while there is still a cursor to go on from.</p>
+     *
      * @param targetEntryUUID the UUID of the storage entry to retrieve; if null, retrieves the root entry
-     * @return a {@link ResponseEntity} containing the requested storage entry along with its children, 
+     * @param depth (optional) how many levels of children are to be written (1 by default, 0 for the entry alone)
+     * @param accept (optional) the media types the client accepts
+     * @param sort (optional) the ordering of the children: {@code name} (default), {@code updated}, {@code size} or {@code owner}
+     * @param order (optional) either {@code asc} (default) or {@code desc}
+     * @param type (optional) only the children of this type: either {@code file} or {@code directory}
+     * @param name (optional) only the children whose names match this glob (e.g. {@code *.txt})
+     * @param user (optional) only the children owned by this user
+     * @param group (optional) only the children owned by this group
+     * @param cursor (optional) the cursor of the previous page
+     * @param pageSize (optional) the most children to be listed; capped by the configured listing page size
+     * @return a {@link ResponseEntity} containing the requested storage entry along with its children (or a page of them), 
      *         or an error message with an appropriate HTTP status code if the retrieval fails
      * @throws StorageControllerException if the target UUID is invalid, does not point to a valid storage entry,
      * or any other errors encountered during the retrieval process
      */
     @GetMapping(value = {"/ls", "/ls/{targetEntryUUID}"})
     public ResponseEntity<?> ls(
-        @PathVariable(required = false) UUID targetEntryUUID) {
+        @PathVariable(required = false) UUID targetEntryUUID,
+        @RequestParam(name = "depth", required = false, defaultValue = "1") Integer depth,
+        @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+        @RequestParam(name = "sort", required = false) String sort,
+        @RequestParam(name = "order", required = false) String order,
+        @RequestParam(name = "type", required = false) String type,
+        @RequestParam(name = "name", required = false) String name,
+        @RequestParam(name = "user", required = false) UUID user,
+        @RequestParam(name = "group", required = false) UUID group,
+        @RequestParam(name = "cursor", required = false) String cursor,
+        @RequestParam(name = "limit", required = false) Integer pageSize) {
+
+        final Boolean isPaged = sort != null || order != null || type != null || name != null || user != null || group != null || cursor != null || pageSize != null;
+        try {
+            final Entry targetEntry = targetEntryUUID != null ? this.storage.retrieveEntry(targetEntryUUID) : this.storage.isReady() ? this.storage.getRootEntry() : null;
+            if (targetEntry == null ? !this.storage.isReady() : !this.storage.isLoaded(targetEntry)) {
+                return this.storageUnavailable();
+            }
+
+            if (targetEntry == null || !targetEntry.getEntryPath().isValid()) {
+                throw new StorageControllerException("Invalid target UUID: %s".formatted(targetEntryUUID));
+            }
+
+            if (!isPaged) {
+                return this.streamEntry(targetEntry, depth, accept);
+            }
+
+            if (order != null && !order.equals("asc") && !order.equals("desc")) {
+                throw new StorageControllerException("Invalid order: %s".formatted(order));
+            }
+
+            if (type != null && !type.equals("file") && !type.equals("directory")) {
+                throw new StorageControllerException("Invalid type: %s".formatted(type));
+            }
 
-        if (targetEntryUUID == null) {
-            return new ResponseEntity<Entry>(this.storage.getRootEntry(), HttpStatus.OK);
+            if (sort != null && !sort.equals("name") && !sort.equals("updated") && !sort.equals("size") && !sort.equals("owner")) {
+                throw new StorageControllerException("Invalid sort: %s".formatted(sort));
+            }
+
+            final EntryChildren.Ordering ordering = sort != null ? EntryChildren.Ordering.valueOf(sort.toUpperCase(Locale.ROOT)) : EntryChildren.Ordering.NAME;
+            final PathMatcher nameMatcher = name != null ? FileSystems.getDefault().getPathMatcher("glob:%s".formatted(name)) : null;
+            final Predicate<Entry> filter = type == null && nameMatcher == null && user == null && group == null ? null : childEntry -> 
+                (type == null || childEntry.getIsDirectory() == type.equals("directory")) &&
+                (user == null || user.equals(childEntry.getUser())) &&
+                (group == null || group.equals(childEntry.getGroup())) &&
+                (nameMatcher == null || nameMatcher.matches(Path.of(childEntry.getName())));
+
+            final Integer maxPageSize = this.storageProperties.getControllerListingPageSize();
+            final Integer listingPageSize = pageSize != null && pageSize > 0 ? Math.min(pageSize, maxPageSize) : maxPageSize;
+
+            final EntryPage entryPage = this.storage.retrieveChildEntries(targetEntry, ordering, "desc".equals(order), cursor, filter, listingPageSize, this.storageProperties.getControllerListingScanLimit());
+            final MediaType mediaType = this.negotiateMediaType(accept);
+            if (mediaType.equals(APPLICATION_SMILE) || mediaType.equals(MediaType.APPLICATION_CBOR)) { /* The binary formats are left to the message converters */
+                return new ResponseEntity<EntryPage>(entryPage, HttpStatus.OK);
+            }
+
+            return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body((StreamingResponseBody) outputStream -> this.entryWriter.writePage(entryPage, outputStream));
+        } catch (Exception exception) {
+            if (this.printStackTrace) exception.printStackTrace();
+            return new ResponseEntity<String>("Directory '%s' cannot be traversed: %s".formatted(targetEntryUUID, exception.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
         }
+    }
+
+    /**
+     * Retrieves a storage entry (along with its children, if it is a directory) by its path.
+     *
+     * <p>The path is resolved in a single lookup (e.g. {@code /stat/a/b/c} resolves {@code /a/b/c}), 
+     * sparing the clients from walking down the tree one directory at a time.</p>
+     *
+     * @param targetEntryUrl the path of the storage entry to retrieve, relative to the storage root
+     * @param depth (optional) how many levels of children are to be written (1 by default, 0 for the entry alone)
+     * @param accept (optional) the media types the client accepts (JSON, NDJSON, Smile or CBOR)
+     * @return a {@link ResponseEntity} containing the requested storage entry along with its children, 
+     *         or an error message with an appropriate HTTP status code if the retrieval fails
+     * @throws StorageControllerException if the path does not point to a valid storage entry,
+     * or any other errors encountered during the retrieval process
+     */
+    @GetMapping(value = "/stat/{*targetEntryUrl}")
+    public ResponseEntity<?> stat(
+        @PathVariable String targetEntryUrl,
+        @RequestParam(name = "depth", required = false, defaultValue = "1") Integer depth,
+        @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept) {
 
         try {
-            final Entry targetEntry = this.storage.retrieveEntry(targetEntryUUID);
+            final Entry targetEntry = this.storage.resolveEntry(targetEntryUrl);
+            if (targetEntry == null ? !this.storage.isReady() : !this.storage.isLoaded(targetEntry)) {
+                return this.storageUnavailable();
+            }
+
             if (targetEntry == null || !targetEntry.getEntryPath().isValid()) {
-                throw new StorageControllerException("Invalid target UUID: %s".formatted(targetEntryUUID.toString()));
+                throw new StorageControllerException("Invalid target path: %s".formatted(targetEntryUrl));
             }
-    
-            return new ResponseEntity<Entry>(targetEntry, HttpStatus.OK);
+
+            return this.streamEntry(targetEntry, depth, accept);
+        } catch (Exception exception) {
+            if (this.printStackTrace) exception.printStackTrace();
+            return new ResponseEntity<String>("Path '%s' cannot be resolved: %s".formatted(targetEntryUrl, exception.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Lists the paths of everything under a directory (its whole subtree), along with the UUIDs of their storage entries.
+     *
+     * <p>The paths come in their sorted order, a page at a time. The next page starts right after 
+     * the last path of the previous one (passed as {@code after}).</p>
+     *
+     * @param directoryEntryUrl the path of the directory, relative to the storage root
+     * @param afterEntryUrl (optional) the last path of the previous page
+     * @param pageSize (optional) the most paths to be listed; capped by the configured listing page size
+     * @return a {@link ResponseEntity} containing the paths mapped to the UUIDs of their storage entries,
+     *         or an error message with an appropriate HTTP status code if the listing fails
+     */
+    @GetMapping(value = "/find/{*directoryEntryUrl}")
+    public ResponseEntity<?> find(
+        @PathVariable String directoryEntryUrl,
+        @RequestParam(name = "after", required = false) String afterEntryUrl,
+        @RequestParam(name = "limit", required = false) Integer pageSize) {
+
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
+        try {
+            final Integer maxPageSize = this.storageProperties.getControllerListingPageSize();
+            final Integer listingPageSize = pageSize != null && pageSize > 0 ? Math.min(pageSize, maxPageSize) : maxPageSize;
+
+            return new ResponseEntity<Map<String, UUID>>(this.storage.retrieveEntryUrls(directoryEntryUrl, afterEntryUrl, listingPageSize), HttpStatus.OK);
+        } catch (Exception exception) {
+            if (this.printStackTrace) exception.printStackTrace();
+            return new ResponseEntity<String>("Directory '%s' cannot be listed: %s".formatted(directoryEntryUrl, exception.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Lists the paths of every entry owned by a user (or by a group), along with the UUIDs of their storage entries.
+     *
+     * <p>The paths come in their sorted order, a page at a time. The next page starts right after 
+     * the last path of the previous one (passed as {@code after}). The lookup costs as much as there is to be found.</p>
+     *
+     * @param ownerType either {@code user} or {@code group}
+     * @param ownerUUID the UUID of the user (or of the group)
+     * @param afterEntryUrl (optional) the last path of the previous page
+     * @param pageSize (optional) the most paths to be listed; capped by the configured listing page size
+     * @return a {@link ResponseEntity} containing the paths mapped to the UUIDs of their storage entries,
+     *         or an error message with an appropriate HTTP status code if the listing fails
+     */
+    @GetMapping(value = "/owned/{ownerType}/{ownerUUID}")
+    public ResponseEntity<?> owned(
+        @PathVariable String ownerType,
+        @PathVariable UUID ownerUUID,
+        @RequestParam(name = "after", required = false) String afterEntryUrl,
+        @RequestParam(name = "limit", required = false) Integer pageSize) {
+
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
+        try {
+            if (!ownerType.equals("user") && !ownerType.equals("group")) {
+                throw new StorageControllerException("Invalid owner type: %s".formatted(ownerType));
+            }
+
+            final Integer maxPageSize = this.storageProperties.getControllerListingPageSize();
+            final Integer listingPageSize = pageSize != null && pageSize > 0 ? Math.min(pageSize, maxPageSize) : maxPageSize;
+
+            return new ResponseEntity<Map<String, UUID>>(this.storage.retrieveOwnedEntryUrls(ownerUUID, ownerType.equals("group"), afterEntryUrl, listingPageSize), HttpStatus.OK);
+        } catch (Exception exception) {
+            if (this.printStackTrace) exception.printStackTrace();
+            return new ResponseEntity<String>("Entries of %s '%s' cannot be listed: %s".formatted(ownerType, ownerUUID, exception.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Retrieves how many bytes the entries of a user (or of a group) take up, along with the most they are allowed to.
+     *
+     * <p>The usage is kept up to date as the entries come and go, so it is read in a single lookup.</p>
+     *
+     * @param ownerType either {@code user} or {@code group}
+     * @param ownerUUID the UUID of the user (or of the group)
+     * @return a {@link ResponseEntity} containing the bytes in use ({@code usage}) and the limit ({@code limit}, 0 for none),
+     *         or an error message with an appropriate HTTP status code if the retrieval fails
+     */
+    @GetMapping(value = "/quota/{ownerType}/{ownerUUID}")
+    public ResponseEntity<?> quota(
+        @PathVariable String ownerType,
+        @PathVariable UUID ownerUUID) {
+
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
+        try {
+            if (!ownerType.equals("user") && !ownerType.equals("group")) {
+                throw new StorageControllerException("Invalid owner type: %s".formatted(ownerType));
+            }
+
+            return new ResponseEntity<Map<String, Long>>(this.storage.retrieveQuotaUsage(ownerUUID, ownerType.equals("group")), HttpStatus.OK);
         } catch (Exception exception) {
             if (this.printStackTrace) exception.printStackTrace();
-            return new ResponseEntity<String>("Directory '%s' cannot be traversed: %s".formatted(targetEntryUUID.toString(), exception.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
+            return new ResponseEntity<String>("Quota usage of %s '%s' cannot be retrieved: %s".formatted(ownerType, ownerUUID, exception.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
@@ -145,6 +381,10 @@ public class StorageController {
         @PathVariable(required = false) String newFileName,
         @RequestParam(name = "file") MultipartFile multipartFile) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             final Entry destinationEntry = this.storage.retrieveEntry(destinationEntryUUID);
             if (destinationEntry == null || !destinationEntry.getIsDirectory() || !destinationEntry.getEntryPath().isValidDirectory()) {
@@ -180,6 +420,10 @@ public class StorageController {
         @PathVariable UUID destinationEntryUUID,
         @PathVariable(required = true) String newDirectoryName) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             final Entry destinationEntry = this.storage.retrieveEntry(destinationEntryUUID);
             if (destinationEntry == null || !destinationEntry.getIsDirectory() || !destinationEntry.getEntryPath().isValidDirectory()) {
@@ -218,6 +462,10 @@ public class StorageController {
         @PathVariable UUID destinationEntryUUID,
         @PathVariable(required = false) String newNodeName) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             final Entry targetEntry = this.storage.retrieveEntry(targetEntryUUID);
             if (targetEntry == null || !targetEntry.getEntryPath().isValid()) {
@@ -260,6 +508,10 @@ public class StorageController {
         @PathVariable UUID destinationEntryUUID,
         @PathVariable(required = false) String newNodeName) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             final Entry targetEntry = this.storage.retrieveEntry(targetEntryUUID);
             if (targetEntry == null || !targetEntry.getEntryPath().isValid()) {
@@ -306,6 +558,10 @@ public class StorageController {
         @RequestParam(required = true) String options,
         @RequestParam(required = false) Boolean recursive) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             if (options.isEmpty() || options.isBlank()) {
                 throw new StorageControllerException("Empty permissions parameter".formatted());
@@ -345,6 +601,10 @@ public class StorageController {
         @RequestParam(required = true) String owners,
         @RequestParam(required = false) Boolean recursive) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             if (owners.isEmpty() || owners.isBlank()) {
                 throw new StorageControllerException("Empty 'user:group' parameter".formatted());
@@ -384,6 +644,10 @@ public class StorageController {
 
         try {
             final Entry targetEntry = this.storage.retrieveEntry(targetEntryUUID);
+            if (targetEntry == null && !this.storage.isReady()) {
+                return this.storageUnavailable();
+            }
+
             if (targetEntry == null || !targetEntry.getEntryPath().isValidFile()) {
                 throw new StorageControllerException("Invalid target UUID: %s".formatted(targetEntryUUID.toString()));
             }
@@ -422,6 +686,10 @@ public class StorageController {
         @PathVariable UUID targetEntryUUID,
         @RequestParam Map<String, Object> updatedMetadata) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             final Entry targetEntry = this.storage.retrieveEntry(targetEntryUUID);
             if (targetEntry == null || !targetEntry.getEntryPath().isValid()) {
@@ -451,6 +719,10 @@ public class StorageController {
     public ResponseEntity<?> dos(
         @RequestBody Entry targetEntry) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             if (targetEntry == null) {
                 throw new StorageControllerException("Invalid target".formatted());
@@ -485,6 +757,10 @@ public class StorageController {
     public ResponseEntity<?> rm(
         @PathVariable UUID targetEntryUUID) {
 
+        if (!this.storage.isReady()) {
+            return this.storageUnavailable();
+        }
+
         try {
             final Entry targetEntry = this.storage.retrieveEntry(targetEntryUUID);
             if (targetEntry == null || !targetEntry.getEntryPath().isValid()) {
@@ -498,4 +774,71 @@ public class StorageController {
             return new ResponseEntity<String>("Failed to remove '%s' from storage! Error: %s".formatted(targetEntryUUID.toString(), exception.getMessage()), HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the entry (along with its children, down to the given depth) straight to the response as the tree is walked.
+     *
+     * @param targetEntry the storage entry to write
+     * @param depth how many levels of children are to be written
+     * @param accept the media types the client accepts, the response is written in whichever of the streamed ones it prefers
+     * @return a {@link ResponseEntity} streaming the storage entry
+     * @throws StorageControllerException if the depth is invalid
+     */
+    private ResponseEntity<StreamingResponseBody> streamEntry(Entry targetEntry, Integer depth, String accept) throws StorageControllerException {
+        if (depth == null || depth < 0) {
+            throw new StorageControllerException("Invalid depth: %s".formatted(depth));
+        }
+
+        final MediaType mediaType = this.negotiateMediaType(accept);
+        if (mediaType.equals(MediaType.APPLICATION_NDJSON)) {
+            return ResponseEntity.ok().contentType(mediaType).body(outputStream -> this.entryWriter.writeLines(targetEntry, depth, outputStream));
+        }
+
+        if (!mediaType.equals(MediaType.APPLICATION_JSON)) {
+            final ObjectMapper objectMapper = mediaType.equals(APPLICATION_SMILE) ? this.smileObjectMapper : this.cborObjectMapper;
+            return ResponseEntity.ok().contentType(mediaType).body(outputStream -> this.entryWriter.writeTree(targetEntry, depth, objectMapper.getFactory().createGenerator(outputStream)));
+        }
+
+        return ResponseEntity.ok().contentType(mediaType).body(outputStream -> this.entryWriter.writeTree(targetEntry, depth, outputStream));
+    }
+
+    /**
+     * Picks what the streamed responses are to be written as, going by the media types the client accepts (in the order of
+     * their quality). JSON goes first, it is what the clients that accept anything (or nothing in particular) get.
+     *
+     * @param accept the media types the client accepts
+     * @return either JSON, newline delimited JSON, Smile or CBOR
+     */
+    private MediaType negotiateMediaType(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return MediaType.APPLICATION_JSON;
+        }
+
+        final List<MediaType> acceptedMediaTypes = new ArrayList<MediaType>(MediaType.parseMediaTypes(accept));
+        acceptedMediaTypes.sort(Comparator.comparingDouble(MediaType::getQualityValue).reversed());
+        for (MediaType acceptedMediaType : acceptedMediaTypes) {
+            for (MediaType mediaType : STREAMED_MEDIA_TYPES) {
+                if (acceptedMediaType.isCompatibleWith(mediaType)) {
+                    return mediaType;
+                }
+            }
+        }
+
+        return MediaType.APPLICATION_JSON;
+    }
+
+    /**
+     * Response for the requests that cannot be served until the storage tree has been fully built.
+     *
+     * @return a {@link ResponseEntity} with the 503 status code (and a Retry-After header if the tree is still being built)
+     */
+    private ResponseEntity<String> storageUnavailable() {
+        if (this.storage.hasFailed()) {
+            return new ResponseEntity<String>("Storage is unavailable: the storage tree failed to build".formatted(), HttpStatus.SERVICE_UNAVAILABLE);
+        }
+
+        final HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, this.retryAfterInSeconds.toString());
+        return new ResponseEntity<String>("Storage is unavailable: the storage tree is still being built".formatted(), headers, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+}
@@ -0,0 +1,13 @@
+package com.unulearner.backend.storage.exceptions.entry;
+
+import com.unulearner.backend.storage.exceptions.StorageEntryException;
+
+public class EntryQuotaExceededException extends StorageEntryException {
+    public EntryQuotaExceededException(String exceptionMessage) {
+        super(exceptionMessage);
+    }
+
+    public EntryQuotaExceededException(String exceptionMessage, Throwable exceptionRoot) {
+        super(exceptionMessage, exceptionRoot);
+    }
+}
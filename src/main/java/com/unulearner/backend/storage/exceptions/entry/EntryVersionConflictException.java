@@ -0,0 +1,13 @@
+package com.unulearner.backend.storage.exceptions.entry;
+
+import com.unulearner.backend.storage.exceptions.StorageEntryException;
+
+public class EntryVersionConflictException extends StorageEntryException {
+    public EntryVersionConflictException(String exceptionMessage) {
+        super(exceptionMessage);
+    }
+
+    public EntryVersionConflictException(String exceptionMessage, Throwable exceptionRoot) {
+        super(exceptionMessage, exceptionRoot);
+    }
+}
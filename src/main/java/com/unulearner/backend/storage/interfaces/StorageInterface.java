@@ -2,8 +2,10 @@ package com.unulearner.backend.storage.interfaces;
 
 import java.util.Comparator;
 import java.util.Optional;
+import java.util.Map;
 import java.util.List;
 import java.util.UUID;
+import java.util.Date;
 
 import com.unulearner.backend.storage.models.Entry;
 import com.unulearner.backend.storage.models.utility.EntryPath;
@@ -11,9 +13,17 @@ import com.unulearner.backend.storage.models.utility.EntryPath;
 public interface StorageInterface {
     public Entry createNewEntry(Entry parent, List<Entry> children, EntryPath nodePath, UUID user, UUID group, String permissions);
     public Optional<Entry> searchEntryByURL(String relativePath);
+    public Optional<Entry> searchEntryByUUID(UUID entryUUID);
     public List<Entry> retrieveChildEntries(Entry entry);
+    public List<Entry> retrieveEntriesAfter(UUID lastEntryUUID, Integer pageSize);
+    public Date retrieveLatestUpdate();
+    public Long countEntries();
+    public Map<String, UUID> retrieveEntryUrlsByOwner(UUID owner, Boolean isGroup, String afterUrl, Integer pageSize);
+    public Map<UUID, Long> retrieveUsageByUser();
+    public Map<UUID, Long> retrieveUsageByGroup();
     public Entry createRootEntry(EntryPath entryPath);
     public Entry persistEntry(Entry entry);
+    public List<Entry> persistEntries(List<Entry> entries);
     public void deleteEntry(Entry entry);
     public Comparator<Entry> getStorageComparator();
     public EntryPath getRootDirectoryPath() throws Exception;
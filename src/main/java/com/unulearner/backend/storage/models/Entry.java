@@ -3,33 +3,53 @@ package com.unulearner.backend.storage.models;
 import java.util.UUID;
 import java.util.Date;
 import java.util.List;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import jakarta.persistence.Id;
+import jakarta.persistence.Access;
 import jakarta.persistence.Table;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Column;
+import jakarta.persistence.Version;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Transient;
 import jakarta.persistence.PreUpdate;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.PrePersist;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.AccessType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 
 import org.hibernate.annotations.UpdateTimestamp;
 import org.hibernate.annotations.CreationTimestamp;
+import org.springframework.http.MediaTypeFactory;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
+import com.unulearner.backend.storage.models.utility.Interner;
 import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryOrder;
+import com.unulearner.backend.storage.models.utility.EntryFragment;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
 import com.unulearner.backend.storage.exceptions.StorageEntryException;
 
 @Entity
 @Table(name = "storage")
 public class Entry {
+    /* Owners (and the descriptions, mostly the default ones) repeat across the entries, no point in every entry holding a copy */
+    private static final Interner<String> DESCRIPTIONS = new Interner<String>(4096);
+    private static final Interner<UUID> OWNERS = new Interner<UUID>(65536);
+    private static final Interner<String> CONTENT_TYPES = new Interner<String>(1024);
+    private static final AtomicIntegerFieldUpdater<Entry> REVISION = AtomicIntegerFieldUpdater.newUpdater(Entry.class, "revision");
+
     /**
      * Default constructor. Never meant to be called manually!!!
      */
@@ -50,6 +70,7 @@ public class Entry {
 
     public Entry setId(UUID id) {
         this.id = id;
+        this.revise();
 
         return this;
     }
@@ -57,23 +78,66 @@ public class Entry {
     /**
      * This property is guaranteed to be unique with each node as it emulates unix-like file system urls.
      * From this property we can easily derive the full, physical path to a file/directory.
+     * Only held as is until the entry gets a path, from then on it is derived from the path (on the first call, see {@code derivedUrl}).
      */
-    @Column(name = "url", columnDefinition = "TEXT COLLATE \"C\"", unique = true, nullable = false)
+    @Transient
     private String url;
 
+    /**
+     * For internal use only!
+     * The URL as derived from the path, put together on the first call and dropped whenever the entry is given another path (renamed or moved).
+     */
+    @Transient
+    @JsonIgnore
+    private volatile String derivedUrl = null;
+
     public String getUrl() {
-        if (this.url != null && !this.url.startsWith("/")) {
-            return "/" + this.url;
+        final EntryPath entryPath = this.entryPath;
+        if (entryPath == null) {
+            if (this.url != null && !this.url.startsWith("/")) {
+                return "/" + this.url;
+            }
+
+            return this.url;
         }
-        
-        return this.url;
+
+        String derivedUrl = this.derivedUrl;
+        if (derivedUrl == null) {
+            this.derivedUrl = derivedUrl = "/" + entryPath.getRelativeUrl().trim();
+            if (this.entryPath != entryPath) { /* The entry has been given another path in the meantime, whatever was just put together is of the old one */
+                this.derivedUrl = null;
+            }
+        }
+
+        return derivedUrl;
     }
 
     public Entry setUrl(String url) {
         this.url = url.replace("\\", "/").trim();
+        this.revise();
         return this;
     }
 
+    /**
+     * For JPA only! The URL in its persisted form (relative to the root, without the leading slash).
+     */
+    @JsonIgnore
+    @Access(AccessType.PROPERTY)
+    @Column(name = "url", columnDefinition = "TEXT COLLATE \"C\"", unique = true, nullable = false)
+    protected String getPersistedUrl() {
+        final EntryPath entryPath = this.entryPath;
+        if (entryPath != null) {
+            return entryPath.getRelativeUrl().trim();
+        }
+
+        return this.url;
+    }
+
+    protected void setPersistedUrl(String persistedUrl) {
+        this.url = persistedUrl;
+        this.revise();
+    }
+
     /**
      * This property is mostly for the benefit of the front-end, although it can still be useful in the back-end.
      */
@@ -85,10 +149,30 @@ public class Entry {
     }
 
     public Entry setName(String name) {
+        this.sortKey = null;
         this.name = name;
+        this.revise();
         return this;
     }
 
+    /**
+     * For internal use only!
+     * What the entry is sorted by within its directory (see {@link EntryOrder}), put together on the first comparison.
+     */
+    @Transient
+    @JsonIgnore
+    private volatile String sortKey = null;
+
+    @JsonIgnore
+    public String getSortKey() {
+        String sortKey = this.sortKey;
+        if (sortKey == null) {
+            this.sortKey = sortKey = EntryOrder.sortKey(this.name, this.getIsDirectory());
+        }
+
+        return sortKey;
+    }
+
     /**
      * This property serves no purpose in file system management.
      * This property is purely for the human eyes or the search bots.
@@ -101,7 +185,8 @@ public class Entry {
     }
 
     public Entry setDescription(String description) {
-        this.description = description;
+        this.description = DESCRIPTIONS.intern(description);
+        this.revise();
         return this;
     }
 
@@ -116,7 +201,8 @@ public class Entry {
     }
 
     public Entry setUser(UUID user) {
-        this.user = user;
+        this.user = OWNERS.intern(user);
+        this.revise();
         return this;
     }
 
@@ -131,42 +217,59 @@ public class Entry {
     }
 
     public Entry setGroup(UUID group) {
-        this.group = group;
+        this.group = OWNERS.intern(group);
+        this.revise();
         return this;
     }
 
     /**
      * Unix-like file/directory permissions presented as a 4 digit integer (not applied to physical files/directories - only the nodes associated to them.)
+     * Held as plain mode bits, the octal string is only put together for the database (and whoever else asks for it).
      */
+    @Transient
+    private short permissionBits;
+
+    @Access(AccessType.PROPERTY)
     @Column(name = "permission_flags", columnDefinition = "VARCHAR(4)", unique = false, nullable = false, updatable = true)
-    private String permissions;
-    
     public String getPermissions() {
-        return this.permissions;
+        return Integer.toOctalString(this.permissionBits);
     }
 
     public Entry setPermissions(String permissions) {
-        this.permissions = permissions;
+        this.permissionBits = (short) (Integer.parseInt(permissions, 8) & 07777);
+        this.revise();
+        return this;
+    }
+
+    @JsonIgnore
+    public Integer getPermissionBits() {
+        return (int) this.permissionBits;
+    }
+
+    public Entry setPermissionBits(Integer permissionBits) {
+        this.permissionBits = (short) (permissionBits & 07777);
+        this.revise();
         return this;
     }
 
     public Boolean setuidBitIsSet() {
-        return ((this.permissions.length() == 4 ? (Integer.parseInt(this.permissions, 8) / 1000) % 10 : 0) & 4) != 0;
+        return (this.permissionBits & 04000) != 0;
     }
 
     public Boolean setgidBitIsSet() {
-        return ((this.permissions.length() == 4 ? (Integer.parseInt(this.permissions, 8) / 1000) % 10 : 0) & 2) != 0;
+        return (this.permissionBits & 02000) != 0;
     }
 
     public Boolean stickyBitIsSet() {
-        return ((this.permissions.length() == 4 ? (Integer.parseInt(this.permissions, 8) / 1000) % 10 : 0) & 1) != 0;
+        return (this.permissionBits & 01000) != 0;
     }
 
     /**
      * Self-explanatory.
      * This is a JPA-persisted, JSON-ignored property, beneficial only in creating a node tree.
+     * Fetched lazily so that loading an entry never drags its whole ancestor chain out of the database with it.
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JsonBackReference
     @JoinColumn(name = "parent", columnDefinition = "UUID", unique = false, nullable = true)
     private Entry parent;
@@ -182,26 +285,179 @@ public class Entry {
 
     /**
      * Self-explanatory.
-     * This property does not have a setter as it should never be set manually.
+     * This property does not have a (regular) setter as it should never be set manually.
      */
+    @Transient
+    private long created;
+
     @CreationTimestamp
+    @Access(AccessType.PROPERTY)
     @Column(name = "created", columnDefinition = "TIMESTAMP", nullable = false, updatable = false)
-    private Date created;
-
     public Date getCreated() {
-        return this.created;
+        return this.created != 0L ? new Date(this.created) : null;
+    }
+
+    private void setCreated(Date created) {
+        this.created = created != null ? created.getTime() : 0L;
+        this.revise();
+    }
+
+    /**
+     * For the storage tree snapshot only! Never meant to be called manually!!!
+     */
+    public Entry restoreCreated(Date created) {
+        this.setCreated(created);
+        return this;
     }
 
     /**
      * Self-explanatory.
-     * This property does not have a setter as it should never be set manually.
+     * This property does not have a (regular) setter as it should never be set manually.
      */
+    @Transient
+    private long updated;
+
     @UpdateTimestamp
+    @Access(AccessType.PROPERTY)
     @Column(name = "updated", columnDefinition = "TIMESTAMP", nullable = false, updatable = true)
-    private Date updated;
-
     public Date getUpdated() {
-        return this.updated;
+        return this.updated != 0L ? new Date(this.updated) : null;
+    }
+
+    private void setUpdated(Date updated) {
+        this.updated = updated != null ? updated.getTime() : 0L;
+        this.revise();
+    }
+
+    /**
+     * For the storage tree snapshot only! Never meant to be called manually!!!
+     */
+    public Entry restoreUpdated(Date updated) {
+        this.setUpdated(updated);
+        return this;
+    }
+
+    /**
+     * Size of the file in bytes, as of the last time it was looked at on disk (directories have no size of their own).
+     */
+    @Column(name = "size", columnDefinition = "BIGINT", nullable = false)
+    private long size;
+
+    public Long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Modification time of the file/directory on disk, as of the last time it was looked at.
+     */
+    @Transient
+    private long modified;
+
+    @Access(AccessType.PROPERTY)
+    @Column(name = "modified", columnDefinition = "TIMESTAMP", nullable = true)
+    public Date getModified() {
+        return this.modified != 0L ? new Date(this.modified) : null;
+    }
+
+    private void setModified(Date modified) {
+        this.modified = modified != null ? modified.getTime() : 0L;
+        this.revise();
+    }
+
+    /**
+     * Media type of the file, going by its name (directories have none).
+     */
+    @Column(name = "content_type", columnDefinition = "TEXT", nullable = true)
+    private String contentType;
+
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    /**
+     * Takes over the size and the modification time of the file/directory as read from disk (and guesses the media type of the file by its name).
+     * These are persisted along with the entry, so that nobody has to go to the disk for them later.
+     */
+    public Entry captureFileAttributes(BasicFileAttributes fileAttributes) {
+        this.size = fileAttributes.isDirectory() ? 0L : fileAttributes.size();
+        this.modified = fileAttributes.lastModifiedTime().toMillis();
+        this.contentType = fileAttributes.isDirectory() || this.name == null ? null : CONTENT_TYPES.intern(MediaTypeFactory.getMediaType(this.name).map(Object::toString).orElse("application/octet-stream"));
+        this.revise();
+        return this;
+    }
+
+    /**
+     * @return true if the captured attributes still match the ones read from disk.
+     */
+    public Boolean matchesFileAttributes(BasicFileAttributes fileAttributes) {
+        return this.size == (fileAttributes.isDirectory() ? 0L : fileAttributes.size()) && this.modified == fileAttributes.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * For the storage tree snapshot only! Never meant to be called manually!!!
+     */
+    public Entry restoreFileAttributes(Long size, Date modified, String contentType) {
+        this.contentType = CONTENT_TYPES.intern(contentType);
+        this.size = size != null ? size : 0L;
+        this.setModified(modified); /* Revises the entry as well */
+        return this;
+    }
+
+    /**
+     * Bumped with every update of the entry. An update only goes through if it was made on the latest version of the entry
+     * (compare-and-set), otherwise it is rejected and whoever made it gets to redo it on the latest version instead.
+     */
+    @Version
+    @JsonIgnore
+    @Column(name = "version", columnDefinition = "BIGINT", nullable = false)
+    private long version;
+
+    public Long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * For the storage tree snapshot, the moved entries taking over the ID of the original and the entries updated in place only! Never meant to be called manually!!!
+     */
+    public Entry restoreVersion(Long version) {
+        this.version = version != null ? version : 0L;
+        return this;
+    }
+
+    /**
+     * For internal use only!
+     * Bumped with every change of the entry in memory (the version only counts the updates that made it to the database),
+     * so that whatever was put together out of the entry, like its serialized form, can tell whether it still holds.
+     */
+    @Transient
+    @JsonIgnore
+    private volatile int revision;
+
+    @JsonIgnore
+    public Integer getRevision() {
+        return this.revision;
+    }
+
+    private void revise() {
+        REVISION.incrementAndGet(this);
+    }
+
+    /**
+     * For internal use only!
+     * The entry as it was last serialized (see {@link EntryFragment}), only good for as long as the entry stays as it was.
+     */
+    @Transient
+    @JsonIgnore
+    private volatile EntryFragment fragment = null;
+
+    @JsonIgnore
+    public EntryFragment getFragment() {
+        return this.fragment;
+    }
+
+    public Entry setFragment(EntryFragment fragment) {
+        this.fragment = fragment;
+        return this;
     }
 
     /**
@@ -219,7 +475,121 @@ public class Entry {
     }
 
     public Entry setChildren(List<Entry> children) {
+        this.childrenByName = null;
+        this.sortKey = null;
         this.children = children;
+        this.revise();
+        return this;
+    }
+
+    /**
+     * Total size (in bytes) of everything below the directory, {@code null} for files and for directories not (yet) added up.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getTotalSize() {
+        return this.children instanceof EntryChildren entryChildren ? entryChildren.getSubtreeSize() : null;
+    }
+
+    /**
+     * Number of files anywhere below the directory, {@code null} for files and for directories not (yet) added up.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getTotalFiles() {
+        return this.children instanceof EntryChildren entryChildren ? entryChildren.getSubtreeFiles() : null;
+    }
+
+    /**
+     * Number of directories anywhere below the directory, {@code null} for files and for directories not (yet) added up.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getTotalDirectories() {
+        return this.children instanceof EntryChildren entryChildren ? entryChildren.getSubtreeDirectories() : null;
+    }
+
+    /**
+     * Adds the entry (along with everything below it) to the totals of every directory above it, or takes it away if {@code added} is false.
+     * To be called whenever an entry joins or leaves the tree, and around any change of its size (taking the old one away first).
+     * Copies of a directory share its children (and the totals with them), so it makes no difference which one the parents lead to.
+     */
+    public Entry aggregateUpwards(Boolean added) {
+        final long sign = added ? 1L : -1L;
+        final long size, files, directories;
+        if (this.children instanceof EntryChildren entryChildren) {
+            size = entryChildren.isAggregated() ? entryChildren.getSubtreeSize() : 0L;
+            files = entryChildren.isAggregated() ? entryChildren.getSubtreeFiles() : 0L;
+            directories = entryChildren.isAggregated() ? entryChildren.getSubtreeDirectories() + 1L : 1L;
+        } else if (this.getIsDirectory()) {
+            size = 0L;
+            files = 0L;
+            directories = 1L;
+        } else {
+            size = this.size;
+            files = 1L;
+            directories = 0L;
+        }
+
+        /* Fields rather than getters, a parent that was never loaded (a proxy) is where the tree ends as far as this goes */
+        for (Entry ancestorEntry = this.parent; ancestorEntry != null; ancestorEntry = ancestorEntry.parent) {
+            if (ancestorEntry.children instanceof EntryChildren ancestorChildren) {
+                ancestorChildren.aggregate(sign * size, sign * files, sign * directories);
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * For internal use only!
+     * Children by their names, put together on the first lookup and kept up to date by whoever adds/removes the children since.
+     * Anything that gets past it (the count no longer adding up) has it put together anew, so the worst it can be is slow.
+     */
+    @Transient
+    @JsonIgnore
+    private HashMap<String, Entry> childrenByName = null;
+
+    /**
+     * @param childName The name of the child.
+     * @return The child of the directory going by that name, or {@code null} if there is none (or this isn't a directory).
+     */
+    public Entry retrieveChild(String childName) {
+        final List<Entry> children = this.children;
+        if (children == null || childName == null) {
+            return null;
+        }
+
+        synchronized (children) {
+            if (this.childrenByName == null || this.childrenByName.size() != children.size()) {
+                final HashMap<String, Entry> childrenByName = new HashMap<String, Entry>((int) (children.size() / 0.75f) + 1);
+                for (Entry childEntry : children) {
+                    childrenByName.put(childEntry.getName(), childEntry);
+                }
+
+                this.childrenByName = childrenByName;
+            }
+
+            return this.childrenByName.get(childName);
+        }
+    }
+
+    /**
+     * To be called (while holding the children) whenever a child is added to the directory or replaces one of the same name.
+     */
+    public Entry indexChild(Entry childEntry) {
+        if (this.childrenByName != null) {
+            this.childrenByName.put(childEntry.getName(), childEntry);
+        }
+
+        return this;
+    }
+
+    /**
+     * To be called (while holding the children) whenever a child is removed from the directory.
+     */
+    public Entry unindexChild(Entry childEntry) {
+        if (this.childrenByName != null) {
+            this.childrenByName.remove(childEntry.getName(), childEntry);
+        }
+
         return this;
     }
 
@@ -229,19 +599,25 @@ public class Entry {
      */
     @Transient
     @JsonIgnore
-    private EntryPath entryPath = null;
+    private volatile EntryPath entryPath = null;
 
     public EntryPath getEntryPath() {
         return this.entryPath;
     }
 
     public Entry setEntryPath(EntryPath entryPath) {
+        if (entryPath == null && this.entryPath != null) { /* The last known URL outlives the path */
+            this.url = this.getPersistedUrl();
+        }
+
         this.entryPath = entryPath;
+        this.derivedUrl = null;
+        this.revise();
 
         /* null path is allowed all the way up until the node is committed to the database */
         if (this.entryPath != null) {
-            this.setName(this.entryPath.getFileName().toString());
-            this.setUrl(this.entryPath.getRelativePath().toString());
+            this.setName(this.entryPath.getName());
+            this.url = null;
         }
 
         return this;
@@ -267,6 +643,14 @@ public class Entry {
         return this.isDirectory != null ? this.isDirectory : this.children != null;
     }
 
+    @PostLoad
+    private void internSharedValues() {
+        this.contentType = CONTENT_TYPES.intern(this.contentType);
+        this.description = DESCRIPTIONS.intern(this.description);
+        this.group = OWNERS.intern(this.group);
+        this.user = OWNERS.intern(this.user);
+    }
+
     @PreUpdate
     @PrePersist
     public void preCommitChecks() throws StorageEntryException {
@@ -0,0 +1,788 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Comparator;
+import java.util.Collection;
+import java.util.AbstractList;
+import java.util.IdentityHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * Children of a directory entry, kept in the order of the storage comparator.
+ * Held in a B+tree whose nodes know the size (and the first entry) of their subtrees, so that inserting, removing and
+ * finding an entry by its position (or the position of an entry) takes O(log n) no matter how big the directory gets.
+ * It is a {@code List} like any other, positional insertions included (those are up to the caller to keep in order).
+ *
+ * The nodes are never changed once they're in the tree: every change copies the nodes on its way down (O(log n) of them)
+ * and swaps the root in one go. Readers never lock, whatever they're reading (iterators, {@link #snapshot()}) stays the
+ * way it was when they started. Writers are serialized on the monitor of the children (the one everybody already holds).
+ *
+ * The children also carry the totals of the whole subtree below the directory (bytes, files and directories), kept up to
+ * date by whoever adds, removes or resizes anything in it. The totals are added to without any locking, so that changes
+ * deep down can be carried all the way up without holding (or waiting for) any of the directories on the way.
+ *
+ * Other orderings of the children (see {@link Ordering}) are indexed on demand: the first listing in one of them sorts
+ * the children once, every change since is carried over to the index as it is made (in O(log n)), so that any page of
+ * a listing in that ordering costs as much as the page itself.
+ */
+public class EntryChildren extends AbstractList<Entry> {
+    private static final int LEAF_CAPACITY = 64;
+    private static final int BRANCH_CAPACITY = 32;
+    private static final Leaf EMPTY_LEAF = new Leaf(new Entry[0]);
+
+    private static final AtomicLongFieldUpdater<EntryChildren> SUBTREE_SIZE = AtomicLongFieldUpdater.newUpdater(EntryChildren.class, "subtreeSize");
+    private static final AtomicLongFieldUpdater<EntryChildren> SUBTREE_FILES = AtomicLongFieldUpdater.newUpdater(EntryChildren.class, "subtreeFiles");
+    private static final AtomicLongFieldUpdater<EntryChildren> SUBTREE_DIRECTORIES = AtomicLongFieldUpdater.newUpdater(EntryChildren.class, "subtreeDirectories");
+
+    private final Comparator<Entry> comparator;
+    private volatile Node root;
+
+    /* Totals of the subtree, only to be trusted once aggregated (an empty directory is, it has nothing to add up) */
+    private volatile boolean aggregated;
+    private volatile long subtreeSize = 0L;
+    private volatile long subtreeFiles = 0L;
+    private volatile long subtreeDirectories = 0L;
+
+    /* Indexes of the other orderings, none until one of them is asked for (most directories never are) */
+    private volatile Map<Ordering, SecondaryIndex> secondaryIndexes = null;
+
+    public EntryChildren(Comparator<Entry> comparator) {
+        this.comparator = comparator;
+        this.root = EMPTY_LEAF;
+        this.aggregated = true;
+    }
+
+    /**
+     * @param children Children to start with (in any order).
+     */
+    public EntryChildren(Comparator<Entry> comparator, Collection<Entry> children) {
+        this.comparator = comparator;
+
+        final Entry[] entries = children.toArray(new Entry[0]);
+        Arrays.sort(entries, this.comparator);
+        this.root = build(entries);
+        this.aggregated = entries.length == 0;
+    }
+
+    public Comparator<Entry> getComparator() {
+        return this.comparator;
+    }
+
+    /**
+     * Adds up the totals of the children (and of everything below them) anew. Subdirectories are to be aggregated first.
+     */
+    public void aggregate() {
+        long subtreeSize = 0L, subtreeFiles = 0L, subtreeDirectories = 0L;
+        for (Entry childEntry : this.snapshot()) {
+            if (childEntry.getChildren() instanceof EntryChildren childChildren) {
+                subtreeSize += childChildren.subtreeSize;
+                subtreeFiles += childChildren.subtreeFiles;
+                subtreeDirectories += childChildren.subtreeDirectories + 1;
+            } else if (childEntry.getIsDirectory()) {
+                subtreeDirectories++;
+            } else {
+                subtreeSize += childEntry.getSize();
+                subtreeFiles++;
+            }
+        }
+
+        this.subtreeSize = subtreeSize;
+        this.subtreeFiles = subtreeFiles;
+        this.subtreeDirectories = subtreeDirectories;
+        this.aggregated = true;
+    }
+
+    /**
+     * Adds the given amounts (negative ones take away) to the totals, provided they've been aggregated (otherwise they will be later).
+     */
+    public void aggregate(long size, long files, long directories) {
+        if (this.aggregated) {
+            SUBTREE_SIZE.addAndGet(this, size);
+            SUBTREE_FILES.addAndGet(this, files);
+            SUBTREE_DIRECTORIES.addAndGet(this, directories);
+        }
+    }
+
+    public Boolean isAggregated() {
+        return this.aggregated;
+    }
+
+    /**
+     * @return Total size (in bytes) of all the files in the subtree, {@code null} if it hasn't been aggregated (yet).
+     */
+    public Long getSubtreeSize() {
+        return this.aggregated ? this.subtreeSize : null;
+    }
+
+    /**
+     * @return Number of all the files in the subtree, {@code null} if it hasn't been aggregated (yet).
+     */
+    public Long getSubtreeFiles() {
+        return this.aggregated ? this.subtreeFiles : null;
+    }
+
+    /**
+     * @return Number of all the directories in the subtree, {@code null} if it hasn't been aggregated (yet).
+     */
+    public Long getSubtreeDirectories() {
+        return this.aggregated ? this.subtreeDirectories : null;
+    }
+
+    /**
+     * @return The children as they are right now, unaffected by whatever happens to them afterwards (and unmodifiable).
+     */
+    public List<Entry> snapshot() {
+        return new Snapshot(this.root);
+    }
+
+    @Override
+    public int size() {
+        return this.root.size;
+    }
+
+    @Override
+    public Entry get(int index) {
+        return entryAt(this.root, index);
+    }
+
+    @Override
+    public synchronized Entry set(int index, Entry entry) {
+        checkIndex(index, this.root.size);
+
+        final Entry[] replacedEntry = new Entry[1];
+        this.root = replaced(this.root, index, entry, replacedEntry);
+        this.unindex(replacedEntry[0]);
+        this.index(entry);
+        return replacedEntry[0];
+    }
+
+    @Override
+    public synchronized void add(int index, Entry entry) {
+        checkIndex(index, this.root.size + 1);
+
+        final Node[] insertedNodes = inserted(this.root, index, entry);
+        this.root = insertedNodes.length == 1 ? insertedNodes[0] : new Branch(insertedNodes);
+        this.index(entry);
+        this.modCount++;
+    }
+
+    @Override
+    public synchronized Entry remove(int index) {
+        checkIndex(index, this.root.size);
+
+        final Entry[] removedEntry = new Entry[1];
+        Node newRoot = removed(this.root, index, removedEntry);
+        while (newRoot instanceof Branch branch && branch.children.length == 1) {
+            newRoot = branch.children[0];
+        }
+
+        this.root = newRoot != null ? newRoot : EMPTY_LEAF;
+        this.unindex(removedEntry[0]);
+        this.modCount++;
+        return removedEntry[0];
+    }
+
+    @Override
+    public synchronized boolean remove(Object object) {
+        final int index = this.indexOf(object);
+        if (index < 0) {
+            return false;
+        }
+
+        this.remove(index);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.root = EMPTY_LEAF;
+        this.secondaryIndexes = null;
+        this.modCount++;
+    }
+
+    /**
+     * Inserts the entry where it belongs (order-wise), replacing the one it is equal to (order-wise) if there is one.
+     *
+     * @return The replaced entry, or {@code null} if nothing has been replaced.
+     */
+    public synchronized Entry insert(Entry entry) {
+        final int index = this.rank(entry);
+        if (index >= 0) {
+            return this.set(index, entry);
+        }
+
+        this.add(-index - 1, entry);
+        return null;
+    }
+
+    /**
+     * Same as {@code Collections.binarySearch} with the storage comparator, only in O(log n).
+     *
+     * @return The index of the entry equal (order-wise) to the given one, or {@code (-(insertion point) - 1)} if there is none.
+     */
+    public int rank(Entry entry) {
+        Node node = this.root;
+        int index = 0;
+
+        while (node instanceof Branch branch) {
+            int low = 1, high = branch.children.length - 1, iChild = 0;
+            while (low <= high) { /* The last child starting at or before the entry */
+                final int middle = (low + high) >>> 1;
+                if (this.comparator.compare(branch.children[middle].first, entry) <= 0) {
+                    iChild = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            for (int iPreceding = 0; iPreceding < iChild; iPreceding++) {
+                index += branch.children[iPreceding].size;
+            }
+
+            node = branch.children[iChild];
+        }
+
+        final Entry[] entries = ((Leaf) node).entries;
+        final int position = Arrays.binarySearch(entries, 0, entries.length, entry, this.comparator);
+        return position >= 0 ? index + position : position - index;
+    }
+
+    /**
+     * Entries are searched for by their order first, one by one only if they're not where they should be
+     * (which is only ever the case for the ones that have changed since they've been added).
+     */
+    @Override
+    public int indexOf(Object object) {
+        final Node root = this.root;
+        if (object instanceof Entry entry) {
+            final int index = this.rank(entry);
+            if (index >= 0 && index < root.size && entryAt(root, index) == entry) {
+                return index;
+            }
+        }
+
+        int index = 0;
+        for (Iterator<Entry> iterator = new Cursor(root, 0); iterator.hasNext(); index++) {
+            if (iterator.next() == object) {
+                return index;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object object) {
+        return this.indexOf(object) >= 0;
+    }
+
+    @Override
+    public synchronized void sort(Comparator<? super Entry> comparator) {
+        final Entry[] entries = this.toArray(new Entry[0]);
+        Arrays.sort(entries, comparator);
+
+        this.root = build(entries);
+        this.modCount++;
+    }
+
+    @Override
+    public Object[] toArray() {
+        return this.snapshot().toArray();
+    }
+
+    @Override
+    public <T> T[] toArray(T[] array) {
+        return this.snapshot().toArray(array);
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return this.iterator(0);
+    }
+
+    /**
+     * Walks the entries leaf by leaf, starting with the entry at the given index (good for listing them a page at a time).
+     */
+    public Iterator<Entry> iterator(int fromIndex) {
+        final Node root = this.root;
+        checkIndex(fromIndex, root.size + 1);
+        return new Cursor(root, fromIndex);
+    }
+
+    //**********************************************************//
+    //*                                                        *//
+    //*                   Secondary orderings                  *//
+    //*                                                        *//
+    //**********************************************************//
+
+    /**
+     * Orderings the children can be listed in. Entries that are equal in one are ordered by their names.
+     */
+    public enum Ordering {
+        NAME, UPDATED, SIZE, OWNER
+    }
+
+    /**
+     * Walks the entries in the given ordering, starting right after the given entry (or its would-be place, if it's gone).
+     * The first walk in an ordering other than {@code NAME} indexes the children, which is the only time they are sorted.
+     *
+     * @param afterEntry The last entry of the previous page, {@code null} to start from the beginning.
+     */
+    public Iterator<Entry> iterator(Ordering ordering, Boolean descending, Entry afterEntry) {
+        if (ordering == Ordering.NAME) {
+            final List<Entry> snapshot = this.snapshot();
+            final int index = afterEntry != null ? this.rank(afterEntry) : (descending ? snapshot.size() : -1);
+            if (!descending) {
+                return this.iterator(index >= 0 ? Math.min(index + 1, snapshot.size()) : Math.min(-index - 1, snapshot.size()));
+            }
+
+            return new Iterator<Entry>() { /* Backwards, O(log n) a step, there is no going back leaf by leaf */
+                private int iEntry = (index >= 0 ? Math.min(index, snapshot.size()) : -index - 1) - 1;
+
+                @Override
+                public boolean hasNext() {
+                    return this.iEntry >= 0;
+                }
+
+                @Override
+                public Entry next() {
+                    if (this.iEntry < 0) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return snapshot.get(this.iEntry--);
+                }
+            };
+        }
+
+        final SecondaryIndex secondaryIndex = this.secondaryIndex(ordering);
+        ConcurrentNavigableMap<IndexKey, Entry> orderedEntries = descending ? secondaryIndex.orderedEntries.descendingMap() : secondaryIndex.orderedEntries;
+        if (afterEntry != null) {
+            orderedEntries = orderedEntries.tailMap(IndexKey.of(ordering, afterEntry), false);
+        }
+
+        return orderedEntries.values().iterator();
+    }
+
+    /**
+     * To be called (while holding the children) whenever an entry is changed in place, so that it is moved where it belongs in the other orderings.
+     */
+    public synchronized void reindex(Entry entry) {
+        final Map<Ordering, SecondaryIndex> secondaryIndexes = this.secondaryIndexes;
+        if (secondaryIndexes != null) {
+            for (SecondaryIndex secondaryIndex : secondaryIndexes.values()) {
+                if (secondaryIndex.remove(entry)) {
+                    secondaryIndex.add(entry);
+                }
+            }
+        }
+    }
+
+    private synchronized SecondaryIndex secondaryIndex(Ordering ordering) {
+        final Map<Ordering, SecondaryIndex> secondaryIndexes = this.secondaryIndexes;
+        if (secondaryIndexes != null && secondaryIndexes.containsKey(ordering)) {
+            return secondaryIndexes.get(ordering);
+        }
+
+        final SecondaryIndex secondaryIndex = new SecondaryIndex(ordering, this.comparator);
+        for (Entry entry : this.snapshot()) {
+            secondaryIndex.add(entry);
+        }
+
+        /* Replaced rather than changed, so that it can be read without holding the children */
+        final Map<Ordering, SecondaryIndex> newSecondaryIndexes = secondaryIndexes != null ? new EnumMap<Ordering, SecondaryIndex>(secondaryIndexes) : new EnumMap<Ordering, SecondaryIndex>(Ordering.class);
+        newSecondaryIndexes.put(ordering, secondaryIndex);
+        this.secondaryIndexes = newSecondaryIndexes;
+        return secondaryIndex;
+    }
+
+    private void index(Entry entry) {
+        final Map<Ordering, SecondaryIndex> secondaryIndexes = this.secondaryIndexes;
+        if (secondaryIndexes != null && entry != null) {
+            for (SecondaryIndex secondaryIndex : secondaryIndexes.values()) {
+                secondaryIndex.add(entry);
+            }
+        }
+    }
+
+    private void unindex(Entry entry) {
+        final Map<Ordering, SecondaryIndex> secondaryIndexes = this.secondaryIndexes;
+        if (secondaryIndexes != null && entry != null) {
+            for (SecondaryIndex secondaryIndex : secondaryIndexes.values()) {
+                secondaryIndex.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * The entries ordered by whatever they were like when they were indexed (the keys are kept), so an entry changed in place
+     * is still found (and removed) where it was put, instead of getting lost somewhere along the way.
+     */
+    private static final class SecondaryIndex {
+        private final ConcurrentSkipListMap<IndexKey, Entry> orderedEntries;
+        private final IdentityHashMap<Entry, IndexKey> indexKeys;
+        private final Ordering ordering;
+
+        private SecondaryIndex(Ordering ordering, Comparator<Entry> comparator) {
+            this.orderedEntries = new ConcurrentSkipListMap<IndexKey, Entry>((key, otherKey) -> {
+                final int highComparison = Long.compare(key.high, otherKey.high);
+                if (highComparison != 0) {
+                    return highComparison;
+                }
+
+                final int lowComparison = Long.compare(key.low, otherKey.low);
+                return lowComparison != 0 ? lowComparison : comparator.compare(key.entry, otherKey.entry);
+            });
+
+            this.indexKeys = new IdentityHashMap<Entry, IndexKey>();
+            this.ordering = ordering;
+        }
+
+        private void add(Entry entry) {
+            final IndexKey indexKey = IndexKey.of(this.ordering, entry);
+            final IndexKey previousKey = this.indexKeys.put(entry, indexKey);
+            if (previousKey != null) {
+                this.orderedEntries.remove(previousKey);
+            }
+
+            this.orderedEntries.put(indexKey, entry);
+        }
+
+        private Boolean remove(Entry entry) {
+            final IndexKey indexKey = this.indexKeys.remove(entry);
+            if (indexKey == null) {
+                return false;
+            }
+
+            this.orderedEntries.remove(indexKey);
+            return true;
+        }
+    }
+
+    private static final class IndexKey {
+        private final Entry entry;
+        private final long high;
+        private final long low;
+
+        private IndexKey(Entry entry, long high, long low) {
+            this.entry = entry;
+            this.high = high;
+            this.low = low;
+        }
+
+        private static IndexKey of(Ordering ordering, Entry entry) {
+            switch (ordering) {
+                case UPDATED:
+                    return new IndexKey(entry, entry.getUpdated() != null ? entry.getUpdated().getTime() : 0L, 0L);
+                case SIZE:
+                    return new IndexKey(entry, entry.getSize(), 0L);
+                case OWNER:
+                    return new IndexKey(entry, entry.getUser() != null ? entry.getUser().getMostSignificantBits() : 0L, entry.getUser() != null ? entry.getUser().getLeastSignificantBits() : 0L);
+                default:
+                    return new IndexKey(entry, 0L, 0L);
+            }
+        }
+    }
+
+    //**********************************************************//
+    //*                                                        *//
+    //*                        The tree                        *//
+    //*                                                        *//
+    //**********************************************************//
+
+    private static abstract class Node {
+        final Entry first;
+        final int size;
+
+        private Node(Entry first, int size) {
+            this.first = first;
+            this.size = size;
+        }
+    }
+
+    private static final class Leaf extends Node {
+        private final Entry[] entries;
+
+        private Leaf(Entry[] entries) {
+            super(entries.length > 0 ? entries[0] : null, entries.length);
+            this.entries = entries;
+        }
+    }
+
+    private static final class Branch extends Node {
+        private final Node[] children;
+
+        private Branch(Node[] children) {
+            super(children[0].first, sizeOf(children));
+            this.children = children;
+        }
+
+        private static int sizeOf(Node[] children) {
+            int size = 0;
+            for (Node child : children) {
+                size += child.size;
+            }
+
+            return size;
+        }
+    }
+
+    private static Entry entryAt(Node node, int index) {
+        checkIndex(index, node.size);
+
+        while (node instanceof Branch branch) {
+            int iChild = 0;
+            while (index >= branch.children[iChild].size) {
+                index -= branch.children[iChild++].size;
+            }
+
+            node = branch.children[iChild];
+        }
+
+        return ((Leaf) node).entries[index];
+    }
+
+    private static Node replaced(Node node, int index, Entry entry, Entry[] replacedEntry) {
+        if (node instanceof Branch branch) {
+            int iChild = 0;
+            while (index >= branch.children[iChild].size) {
+                index -= branch.children[iChild++].size;
+            }
+
+            final Node[] children = branch.children.clone();
+            children[iChild] = replaced(children[iChild], index, entry, replacedEntry);
+            return new Branch(children);
+        }
+
+        final Entry[] entries = ((Leaf) node).entries.clone();
+        replacedEntry[0] = entries[index];
+        entries[index] = entry;
+        return new Leaf(entries);
+    }
+
+    /**
+     * @return The node the given one has become, or the two it has been split into (if there wasn't room enough).
+     */
+    private static Node[] inserted(Node node, int index, Entry entry) {
+        if (node instanceof Branch branch) {
+            int iChild = 0; /* Boundaries go to the child on the left, appending is the most common case by far */
+            while (iChild < branch.children.length - 1 && index > branch.children[iChild].size) {
+                index -= branch.children[iChild++].size;
+            }
+
+            final Node[] insertedChildren = inserted(branch.children[iChild], index, entry);
+            final Node[] children = new Node[branch.children.length + insertedChildren.length - 1];
+            System.arraycopy(branch.children, 0, children, 0, iChild);
+            System.arraycopy(insertedChildren, 0, children, iChild, insertedChildren.length);
+            System.arraycopy(branch.children, iChild + 1, children, iChild + insertedChildren.length, branch.children.length - iChild - 1);
+
+            if (children.length > BRANCH_CAPACITY) {
+                return new Node[] { new Branch(Arrays.copyOfRange(children, 0, children.length / 2)), new Branch(Arrays.copyOfRange(children, children.length / 2, children.length)) };
+            }
+
+            return new Node[] { new Branch(children) };
+        }
+
+        final Entry[] leafEntries = ((Leaf) node).entries;
+        final Entry[] entries = new Entry[leafEntries.length + 1];
+        System.arraycopy(leafEntries, 0, entries, 0, index);
+        System.arraycopy(leafEntries, index, entries, index + 1, leafEntries.length - index);
+        entries[index] = entry;
+
+        if (entries.length > LEAF_CAPACITY) {
+            return new Node[] { new Leaf(Arrays.copyOfRange(entries, 0, entries.length / 2)), new Leaf(Arrays.copyOfRange(entries, entries.length / 2, entries.length)) };
+        }
+
+        return new Node[] { new Leaf(entries) };
+    }
+
+    /**
+     * @return The node the given one has become, or {@code null} if nothing is left of it.
+     */
+    private static Node removed(Node node, int index, Entry[] removedEntry) {
+        if (node instanceof Branch branch) {
+            int iChild = 0;
+            while (index >= branch.children[iChild].size) {
+                index -= branch.children[iChild++].size;
+            }
+
+            final Node childNode = removed(branch.children[iChild], index, removedEntry);
+            if (childNode == null) {
+                if (branch.children.length == 1) {
+                    return null;
+                }
+
+                final Node[] children = new Node[branch.children.length - 1];
+                System.arraycopy(branch.children, 0, children, 0, iChild);
+                System.arraycopy(branch.children, iChild + 1, children, iChild, children.length - iChild);
+                return new Branch(children);
+            }
+
+            final Node[] children = branch.children.clone();
+            children[iChild] = childNode;
+
+            if (children.length > 1 && widthOf(childNode) < (childNode instanceof Leaf ? LEAF_CAPACITY : BRANCH_CAPACITY) / 4) {
+                final int iLeft = iChild + 1 < children.length ? iChild : iChild - 1; /* Merged with the next one, the last one with the previous */
+                final Node mergedNode = merged(children[iLeft], children[iLeft + 1]);
+
+                if (mergedNode != null) {
+                    final Node[] mergedChildren = new Node[children.length - 1];
+                    System.arraycopy(children, 0, mergedChildren, 0, iLeft);
+                    System.arraycopy(children, iLeft + 2, mergedChildren, iLeft + 1, children.length - iLeft - 2);
+                    mergedChildren[iLeft] = mergedNode;
+                    return new Branch(mergedChildren);
+                }
+            }
+
+            return new Branch(children);
+        }
+
+        final Entry[] leafEntries = ((Leaf) node).entries;
+        if (leafEntries.length == 1) {
+            removedEntry[0] = leafEntries[0];
+            return null;
+        }
+
+        final Entry[] entries = new Entry[leafEntries.length - 1];
+        System.arraycopy(leafEntries, 0, entries, 0, index);
+        System.arraycopy(leafEntries, index + 1, entries, index, entries.length - index);
+        removedEntry[0] = leafEntries[index];
+        return new Leaf(entries);
+    }
+
+    /**
+     * @return The two nodes as one, or {@code null} if there isn't room enough for both in one.
+     */
+    private static Node merged(Node leftNode, Node rightNode) {
+        if (leftNode instanceof Leaf leftLeaf && rightNode instanceof Leaf rightLeaf) {
+            if (leftLeaf.entries.length + rightLeaf.entries.length > LEAF_CAPACITY) {
+                return null;
+            }
+
+            final Entry[] entries = Arrays.copyOf(leftLeaf.entries, leftLeaf.entries.length + rightLeaf.entries.length);
+            System.arraycopy(rightLeaf.entries, 0, entries, leftLeaf.entries.length, rightLeaf.entries.length);
+            return new Leaf(entries);
+        }
+
+        final Branch leftBranch = (Branch) leftNode, rightBranch = (Branch) rightNode;
+        if (leftBranch.children.length + rightBranch.children.length > BRANCH_CAPACITY) {
+            return null;
+        }
+
+        final Node[] children = Arrays.copyOf(leftBranch.children, leftBranch.children.length + rightBranch.children.length);
+        System.arraycopy(rightBranch.children, 0, children, leftBranch.children.length, rightBranch.children.length);
+        return new Branch(children);
+    }
+
+    private static int widthOf(Node node) {
+        return node instanceof Branch branch ? branch.children.length : ((Leaf) node).entries.length;
+    }
+
+    /* Bottom up, every node filled to its capacity */
+    private static Node build(Entry[] entries) {
+        if (entries.length <= LEAF_CAPACITY) {
+            return entries.length > 0 ? new Leaf(entries.clone()) : EMPTY_LEAF;
+        }
+
+        Node[] level = new Node[(entries.length + LEAF_CAPACITY - 1) / LEAF_CAPACITY];
+        for (int iLeaf = 0; iLeaf < level.length; iLeaf++) {
+            level[iLeaf] = new Leaf(Arrays.copyOfRange(entries, iLeaf * LEAF_CAPACITY, Math.min((iLeaf + 1) * LEAF_CAPACITY, entries.length)));
+        }
+
+        while (level.length > 1) {
+            final Node[] upperLevel = new Node[(level.length + BRANCH_CAPACITY - 1) / BRANCH_CAPACITY];
+            for (int iBranch = 0; iBranch < upperLevel.length; iBranch++) {
+                upperLevel[iBranch] = new Branch(Arrays.copyOfRange(level, iBranch * BRANCH_CAPACITY, Math.min((iBranch + 1) * BRANCH_CAPACITY, level.length)));
+            }
+
+            level = upperLevel;
+        }
+
+        return level[0];
+    }
+
+    private static void checkIndex(int index, int bound) {
+        if (index < 0 || index >= bound) {
+            throw new IndexOutOfBoundsException("Index %d out of bounds for length %d".formatted(index, bound));
+        }
+    }
+
+    /* The children at one point in time */
+    private static class Snapshot extends AbstractList<Entry> {
+        private final Node root;
+
+        private Snapshot(Node root) {
+            this.root = root;
+        }
+
+        @Override
+        public int size() {
+            return this.root.size;
+        }
+
+        @Override
+        public Entry get(int index) {
+            return entryAt(this.root, index);
+        }
+
+        @Override
+        public Iterator<Entry> iterator() {
+            return new Cursor(this.root, 0);
+        }
+    }
+
+    /* Finds its way down the tree once per leaf rather than once per entry */
+    private static class Cursor implements Iterator<Entry> {
+        private final Node root;
+        private Entry[] entries;
+        private int iEntries;
+        private int index;
+
+        private Cursor(Node root, int fromIndex) {
+            this.index = fromIndex;
+            this.entries = null;
+            this.root = root;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.index < this.root.size;
+        }
+
+        @Override
+        public Entry next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            if (this.entries == null || this.iEntries >= this.entries.length) {
+                int localIndex = this.index;
+                Node node = this.root;
+                while (node instanceof Branch branch) {
+                    int iChild = 0;
+                    while (localIndex >= branch.children[iChild].size) {
+                        localIndex -= branch.children[iChild++].size;
+                    }
+
+                    node = branch.children[iChild];
+                }
+
+                this.entries = ((Leaf) node).entries;
+                this.iEntries = localIndex;
+            }
+
+            this.index++;
+            return this.entries[this.iEntries++];
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * Continuation token of a paged listing of the children of a directory (opaque to the clients).
+ * It holds whatever the last listed entry was ordered by rather than the entry itself, so the next page picks up
+ * right where the previous one left off, even if that entry has been changed or removed in the meantime.
+ */
+public class EntryCursor {
+    private static final int FORMAT = 1;
+
+    /**
+     * @param ordering The ordering of the listing.
+     * @param descending Whether the ordering is reversed.
+     * @param lastEntry The last entry of the page.
+     * @return The cursor of the next page.
+     */
+    public static String encode(EntryChildren.Ordering ordering, Boolean descending, Entry lastEntry) {
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream(64);
+        try (DataOutputStream dataStream = new DataOutputStream(byteStream)) {
+            dataStream.writeByte(FORMAT);
+            dataStream.writeByte(ordering.ordinal());
+            dataStream.writeBoolean(descending);
+            dataStream.writeBoolean(lastEntry.getIsDirectory());
+            dataStream.writeLong(lastEntry.getUpdated() != null ? lastEntry.getUpdated().getTime() : 0L);
+            dataStream.writeLong(lastEntry.getSize());
+            dataStream.writeBoolean(lastEntry.getUser() != null);
+            if (lastEntry.getUser() != null) {
+                dataStream.writeLong(lastEntry.getUser().getMostSignificantBits());
+                dataStream.writeLong(lastEntry.getUser().getLeastSignificantBits());
+            }
+
+            dataStream.writeUTF(lastEntry.getName());
+        } catch (IOException exception) { /* Not going to happen, it's all in memory */
+            throw new RuntimeException("Cursor cannot be encoded: %s".formatted(exception.getMessage()), exception);
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(byteStream.toByteArray());
+    }
+
+    /**
+     * @param cursor The cursor as handed out with the previous page.
+     * @param ordering The ordering of the listing.
+     * @param descending Whether the ordering is reversed.
+     * @return An entry standing in for the last one of the previous page (it is ordered the very same, but belongs to no tree).
+     * @throws IllegalArgumentException If the cursor is malformed or it belongs to a listing in another ordering.
+     */
+    public static Entry decode(String cursor, EntryChildren.Ordering ordering, Boolean descending) throws IllegalArgumentException {
+        try (DataInputStream dataStream = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (dataStream.readByte() != FORMAT || dataStream.readByte() != ordering.ordinal() || dataStream.readBoolean() != descending) {
+                throw new IOException("Cursor belongs to another listing");
+            }
+
+            final Boolean isDirectory = dataStream.readBoolean();
+            final Long updated = dataStream.readLong();
+            final Long size = dataStream.readLong();
+            final UUID user = dataStream.readBoolean() ? new UUID(dataStream.readLong(), dataStream.readLong()) : null;
+            final String name = dataStream.readUTF();
+
+            final Entry standInEntry = new Entry().setName(name).setUser(user);
+            standInEntry.restoreUpdated(updated != 0L ? new Date(updated) : null).restoreFileAttributes(size, null, null);
+            return isDirectory ? standInEntry.setChildren(new ArrayList<Entry>()) : standInEntry;
+        } catch (IOException | IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Invalid cursor '%s'".formatted(cursor), exception);
+        }
+    }
+}
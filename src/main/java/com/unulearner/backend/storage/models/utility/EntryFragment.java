@@ -0,0 +1,31 @@
+package com.unulearner.backend.storage.models.utility;
+
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * An entry serialized as a JSON object (without its children and without the closing brace, so that more can still be put in),
+ * along with the revision and the version of the entry it was serialized at. As long as the entry is still at both, the bytes
+ * can go straight into the response, no matter how many times it is listed.
+ */
+public class EntryFragment {
+    private final byte[] bytes;
+    private final int revision;
+    private final long version;
+
+    public EntryFragment(byte[] bytes, Integer revision, Long version) {
+        this.bytes = bytes;
+        this.revision = revision;
+        this.version = version;
+    }
+
+    public byte[] getBytes() {
+        return this.bytes;
+    }
+
+    /**
+     * @return true if the entry hasn't changed since it was serialized.
+     */
+    public Boolean holdsFor(Entry entry) {
+        return this.revision == entry.getRevision() && this.version == entry.getVersion();
+    }
+}
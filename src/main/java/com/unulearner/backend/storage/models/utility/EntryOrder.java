@@ -0,0 +1,100 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.text.Collator;
+
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * The order of the entries within their directories: directories first, then by name in natural (numbers by their value,
+ * so "file9" goes before "file10"), locale-aware order (accents and case only matter when the names are otherwise equal).
+ *
+ * Every entry puts together its sort key once (see {@link Entry#getSortKey()}) and every comparison after that is just
+ * a comparison of two strings. The key is a directory marker followed by the segments of the name: runs of text as their
+ * primary collation weights (ending with 0), runs of digits as a marker (1), their length and their digits (leading zeros
+ * stripped). Names whose keys are equal are ordered as they are (raw), so no two different names are ever equal.
+ */
+public final class EntryOrder {
+    private static final char TEXT_END = 0;
+    private static final char NUMBER_START = 1;
+    private static final char DIRECTORY = 0;
+    private static final char FILE = 1;
+
+    /* Collators don't take kindly to being shared, every thread gets its own copy (of whichever locale is set) */
+    private static volatile ThreadLocal<Collator> collators = collatorsOf(Locale.ENGLISH);
+
+    public static final Comparator<Entry> COMPARATOR = (entry, otherEntry) -> {
+        final int keyComparison = entry.getSortKey().compareTo(otherEntry.getSortKey());
+        return keyComparison != 0 ? keyComparison : entry.getName().compareTo(otherEntry.getName());
+    };
+
+    private EntryOrder() {}
+
+    /**
+     * To be set before the tree is built, the keys already put together are left as they are.
+     */
+    public static void setLocale(Locale locale) {
+        collators = collatorsOf(locale != null ? locale : Locale.ROOT);
+    }
+
+    private static ThreadLocal<Collator> collatorsOf(Locale locale) {
+        final Collator collator = Collator.getInstance(locale);
+        collator.setDecomposition(Collator.CANONICAL_DECOMPOSITION);
+        collator.setStrength(Collator.PRIMARY);
+        return ThreadLocal.withInitial(() -> (Collator) collator.clone());
+    }
+
+    /**
+     * @return The key the entry of that name (and type) is sorted by.
+     */
+    public static String sortKey(String name, Boolean isDirectory) {
+        final StringBuilder sortKey = new StringBuilder(name != null ? name.length() * 2 + 2 : 2);
+        sortKey.append(isDirectory ? DIRECTORY : FILE);
+        if (name == null) {
+            return sortKey.toString();
+        }
+
+        final Collator collator = collators.get();
+        int iSegment = 0;
+        while (iSegment < name.length()) {
+            int iEnd = iSegment;
+            if (Character.isDigit(name.charAt(iSegment))) {
+                while (iEnd < name.length() && Character.isDigit(name.charAt(iEnd))) {
+                    iEnd++;
+                }
+
+                int iFirstDigit = iSegment;
+                while (iFirstDigit < iEnd - 1 && Character.digit(name.charAt(iFirstDigit), 10) == 0) {
+                    iFirstDigit++;
+                }
+
+                sortKey.append(NUMBER_START).append((char) (iEnd - iFirstDigit));
+                for (int iDigit = iFirstDigit; iDigit < iEnd; iDigit++) {
+                    sortKey.append((char) ('0' + Character.digit(name.charAt(iDigit), 10)));
+                }
+            } else {
+                while (iEnd < name.length() && !Character.isDigit(name.charAt(iEnd))) {
+                    iEnd++;
+                }
+
+                /* The key is a string of weights (two bytes each), the trailing zeros only separate the (unused) levels */
+                final byte[] collationKey = collator.getCollationKey(name.substring(iSegment, iEnd)).toByteArray();
+                for (int iByte = 0; iByte + 1 < collationKey.length; iByte += 2) {
+                    final char weight = (char) (((collationKey[iByte] & 0xFF) << 8) | (collationKey[iByte + 1] & 0xFF));
+                    if (weight == 0) {
+                        break;
+                    }
+
+                    sortKey.append(weight);
+                }
+
+                sortKey.append(TEXT_END);
+            }
+
+            iSegment = iEnd;
+        }
+
+        return sortKey.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * A page of the children of a directory, along with the directory itself. Neither comes with its own children,
+ * so the page weighs as much as there is on it, no matter how big the directory (or the ones in it) are.
+ */
+public class EntryPage {
+    @JsonIgnoreProperties({"children"})
+    private final Entry entry;
+
+    @JsonIgnoreProperties({"children"})
+    private final List<Entry> children;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String cursor;
+
+    public Entry getEntry() {
+        return this.entry;
+    }
+
+    public List<Entry> getChildren() {
+        return this.children;
+    }
+
+    /**
+     * @return The cursor of the next page, {@code null} if this one is the last.
+     */
+    public String getCursor() {
+        return this.cursor;
+    }
+
+    public EntryPage(Entry entry, List<Entry> children, String cursor) {
+        this.entry = entry;
+        this.children = children;
+        this.cursor = cursor;
+    }
+}
@@ -1,31 +1,52 @@
 package com.unulearner.backend.storage.models.utility;
 
-import java.net.URI;
-
 import java.nio.file.Path;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
 
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
-
-import java.net.MalformedURLException;
+import java.io.IOException;
 
+/**
+ * Path of an entry relative to the storage root, kept as a chain of names (each one linked to the path of its parent).
+ * Paths resolved from one another share everything but their last name, so a whole tree of them costs next to nothing,
+ * while the actual {@code Path} is only put together when it is asked for.
+ */
 public class EntryPath {
+    private static final int ATTRIBUTE_EXISTS = 1;
+    private static final int ATTRIBUTE_SYMBOLIC_LINK = 2;
+    private static final int ATTRIBUTE_DIRECTORY = 4;
+    private static final int ATTRIBUTE_READABLE = 8;
+    private static final int ATTRIBUTE_WRITABLE = 16;
+
+    /* How long (in milliseconds) the attributes read from the disk are trusted for, 0 means they are read anew every time */
+    private static volatile Long attributesTimeToLive = 0L;
+
+    private final EntryPath parent;
     private final Path rootPath;
-    private final Path path;
+    private final String name;
+
+    /* The attributes as last read (the low byte) along with the moment they expire (the rest), so that both are always read together */
+    private volatile long attributeStamp = 0L;
 
-    private EntryPath(Path rootPath, Path path) {
+    private EntryPath(Path rootPath, EntryPath parent, String name) {
         this.rootPath = rootPath;
-        this.path = path;
+        this.parent = parent;
+        this.name = name;
     }
 
     public EntryPath(Path path) {
         this.rootPath = path;
-        this.path = path;
+        this.parent = null;
+        this.name = null;
     }
 
     public Path getPath() {
-        return this.path;
+        if (this.parent == null) {
+            return this.rootPath;
+        }
+
+        return this.rootPath.resolve(this.buildRelativePath(this.rootPath.getFileSystem().getSeparator()));
     }
 
     public Path getRootPath() {
@@ -33,39 +54,111 @@ public class EntryPath {
     }
 
     public Path getFileName() {
-        return this.path.getFileName();
+        if (this.parent == null) {
+            return this.rootPath.getFileName();
+        }
+
+        return this.rootPath.getFileSystem().getPath(this.name);
+    }
+
+    /**
+     * @return the name of the file/directory (the very same instance every time)
+     */
+    public String getName() {
+        if (this.parent == null) {
+            return this.rootPath.getFileName() != null ? this.rootPath.getFileName().toString() : "";
+        }
+
+        return this.name;
     }
 
     public Path getRelativePath() {
-        return this.rootPath.relativize(path);
+        return this.rootPath.getFileSystem().getPath(this.buildRelativePath(this.rootPath.getFileSystem().getSeparator()));
+    }
+
+    /**
+     * @return the path relative to the root as it goes into the URL ('/' for a separator whatever the platform), without a {@code Path} ever being made.
+     */
+    public String getRelativeUrl() {
+        return this.buildRelativePath("/");
+    }
+
+    /* The length is added up on the way to the root first, so that the names can be copied straight into place (last one first) on the second way up */
+    private String buildRelativePath(String separator) {
+        if (this.parent == null) {
+            return "";
+        }
+
+        if (this.parent.parent == null) {
+            return this.name;
+        }
+
+        int length = -separator.length();
+        for (EntryPath entryPath = this; entryPath.parent != null; entryPath = entryPath.parent) {
+            length += entryPath.name.length() + separator.length();
+        }
+
+        final char[] relativePath = new char[length];
+        for (EntryPath entryPath = this; entryPath.parent != null; entryPath = entryPath.parent) {
+            length -= entryPath.name.length();
+            entryPath.name.getChars(0, entryPath.name.length(), relativePath, length);
+            if (entryPath.parent.parent != null) {
+                length -= separator.length();
+                separator.getChars(0, separator.length(), relativePath, length);
+            }
+        }
+
+        return new String(relativePath);
     }
 
     public EntryPath resolve(String other) {
-        return new EntryPath(this.rootPath, this.path.resolve(other));
+        return this.resolve(this.rootPath.getFileSystem().getPath(other));
     }
 
     public EntryPath resolve(Path other) {
-        return new EntryPath(this.rootPath, this.path.resolve(other));
+        if (other.isAbsolute()) {
+            return new EntryPath(this.rootPath).resolveFromRoot(other);
+        }
+
+        EntryPath entryPath = this;
+        for (Path otherName : other) {
+            if (!otherName.toString().isEmpty()) {
+                entryPath = new EntryPath(this.rootPath, entryPath, otherName.toString());
+            }
+        }
+
+        return entryPath;
     }
 
     public EntryPath resolveSibling(String other) {
-        return new EntryPath(this.rootPath, this.path.resolveSibling(other));
+        return this.resolveSibling(this.rootPath.getFileSystem().getPath(other));
     }
 
     public EntryPath resolveSibling(Path other) {
-        return new EntryPath(this.rootPath, this.path.resolveSibling(other));
+        if (this.parent == null) {
+            return this.resolve("..").resolve(other);
+        }
+
+        return this.parent.resolve(other);
     }
 
-    public EntryPath resolveFromRoot(Path other) throws Exception {
+    public EntryPath resolveFromRoot(Path other) {
         final Path absoluteRoot = this.rootPath.toAbsolutePath();
         final Path absoluteOther = other.toAbsolutePath();
 
         /* TODO: error handling */
         final Path relativeOther = absoluteRoot.relativize(absoluteOther);
-        final Path finalOther = this.rootPath.resolve(relativeOther);
+        if (relativeOther.toString().isEmpty()) {
+            return new EntryPath(this.rootPath);
+        }
 
         /* We jump through so many hoops because we don't know if root is absolute or not (both is supported) */
-        return new EntryPath(this.rootPath, finalOther);
+        final Path relativeParent = relativeOther.getParent() != null ? relativeOther.getParent() : absoluteRoot.getFileSystem().getPath("");
+        if (relativeOther.getFileName() != null && relativeParent.toString().equals(this.buildRelativePath(absoluteRoot.getFileSystem().getSeparator()))) {
+            return new EntryPath(this.rootPath, this, relativeOther.getFileName().toString()); /* Shares this path rather than building the whole chain anew */
+        }
+
+        return new EntryPath(this.rootPath).resolve(relativeOther);
     }
 
     /* TODO: handle symlinks */
@@ -119,37 +212,94 @@ public class EntryPath {
      * This one does the actual stuff...
      */
     private Boolean validateEntryPath(Boolean validateFile, Boolean validateDirectory, Boolean allowSymbolicLinks) {
-        if (!Files.exists(this.path)) {
+        final int attributes = this.readAttributes();
+
+        if ((attributes & ATTRIBUTE_EXISTS) == 0) {
             return false;
         }
 
-        if (allowSymbolicLinks == false && Files.isSymbolicLink(this.path)) {
+        if (allowSymbolicLinks == false && (attributes & ATTRIBUTE_SYMBOLIC_LINK) != 0) {
             return false;
         }
 
-        if (validateDirectory && Files.isDirectory(this.path)) {
-            if (!Files.isReadable(this.path) || !Files.isWritable(this.path)) {
+        if (validateDirectory && (attributes & ATTRIBUTE_DIRECTORY) != 0) {
+            if ((attributes & ATTRIBUTE_READABLE) == 0 || (attributes & ATTRIBUTE_WRITABLE) == 0) {
                 return false;
             }
         }
 
-        if (validateFile && !Files.isDirectory(this.path)) {
-            final URI targetURI = this.path.toUri();
-            if (targetURI == null) {
+        if (validateFile && (attributes & ATTRIBUTE_DIRECTORY) == 0) {
+            if ((attributes & ATTRIBUTE_READABLE) == 0) {
                 return false;
             }
+        }
 
-            try {
-                final Resource targetResource = new UrlResource(targetURI);
-                if (!targetResource.isReadable()) {
-                    return false;
-                }
-            } catch (MalformedURLException exception) {
-                return false;
+        return true;
+    }
+
+    /**
+     * Reads the attributes from the disk (a single stat, plus the access checks) unless the ones read last are still fresh.
+     */
+    private int readAttributes() {
+        final long attributeStamp = this.attributeStamp;
+        final long currentTime = System.currentTimeMillis();
+        if ((attributeStamp >>> 8) > currentTime) {
+            return (int) (attributeStamp & 0xFF);
+        }
+
+        final Path path = this.getPath();
+        int attributes = 0;
+        try {
+            BasicFileAttributes fileAttributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (fileAttributes.isSymbolicLink()) { /* Whatever the link points to is what counts (a dangling link doesn't exist) */
+                attributes |= ATTRIBUTE_SYMBOLIC_LINK;
+                fileAttributes = Files.readAttributes(path, BasicFileAttributes.class);
             }
+
+            attributes |= ATTRIBUTE_EXISTS;
+            if (fileAttributes.isDirectory()) {
+                attributes |= ATTRIBUTE_DIRECTORY;
+            }
+
+            if (Files.isReadable(path)) {
+                attributes |= ATTRIBUTE_READABLE;
+            }
+
+            if (fileAttributes.isDirectory() && Files.isWritable(path)) {
+                attributes |= ATTRIBUTE_WRITABLE;
+            }
+        } catch (IOException exception) {
+            attributes = 0;
         }
 
-        return true;
+        if (attributesTimeToLive > 0) {
+            this.attributeStamp = ((currentTime + attributesTimeToLive) << 8) | attributes;
+        }
+
+        return attributes;
+    }
+
+    /**
+     * @return The attributes of the file/directory (of whatever it points to, if it is a link) as they are on disk right now.
+     * @throws IOException If the attributes cannot be read.
+     */
+    public BasicFileAttributes readFileAttributes() throws IOException {
+        return Files.readAttributes(this.getPath(), BasicFileAttributes.class);
+    }
+
+    /**
+     * To be called whenever the file/directory is changed on disk, so that the next check reads its attributes anew.
+     */
+    public EntryPath invalidateAttributes() {
+        this.attributeStamp = 0L;
+        return this;
+    }
+
+    /**
+     * @param timeToLive How long (in milliseconds) the attributes read from the disk are to be trusted for (0 to always read them anew).
+     */
+    public static void setAttributesTimeToLive(Long timeToLive) {
+        attributesTimeToLive = timeToLive != null && timeToLive > 0 ? timeToLive : 0L;
     }
 
     @Override
@@ -162,13 +312,32 @@ public class EntryPath {
             return false;
         }
 
-        EntryPath other = (EntryPath) obj;
-        return this.rootPath.equals(other.rootPath) && this.path.equals(other.path);
+        /* Name by name up both chains (until they meet), nothing is put together just to be compared */
+        EntryPath entryPath = this, otherEntryPath = (EntryPath) obj;
+        while (entryPath != otherEntryPath) {
+            if (entryPath.parent == null || otherEntryPath.parent == null) {
+                return entryPath.parent == null && otherEntryPath.parent == null && entryPath.rootPath.equals(otherEntryPath.rootPath);
+            }
+
+            if (!entryPath.name.equals(otherEntryPath.name)) {
+                return false;
+            }
+
+            entryPath = entryPath.parent;
+            otherEntryPath = otherEntryPath.parent;
+        }
+
+        return true;
     }
 
     @Override
     public int hashCode() {
-        return 31 * rootPath.hashCode() + path.hashCode();
+        int hashCode = this.rootPath.hashCode();
+        for (EntryPath entryPath = this; entryPath.parent != null; entryPath = entryPath.parent) {
+            hashCode = 31 * hashCode + entryPath.name.hashCode();
+        }
+
+        return hashCode;
     }
 
     /*
@@ -0,0 +1,237 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+
+import com.fasterxml.jackson.core.ObjectCodec;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * Writes the entries out as the tree is walked (down to the given depth), rather than having the whole subtree put together
+ * as one response first. Every entry is serialized on its own, without its children, and whatever children there are to be
+ * written are written around it. Nothing but the entry being written (and the path down to it) is ever held on to.
+ *
+ * The serialized entries are kept with the entries (see {@link EntryFragment}) and reused for as long as the entries stay
+ * as they were, so a listing mostly comes down to copying bytes. What can change without the entry itself changing
+ * (whether it is accessible on disk and what there is below it) is left out of the kept bytes and written anew every time.
+ */
+public class EntryWriter {
+    private static final byte[] CHILDREN = ",\"children\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ENTRY = "{\"entry\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CURSOR = ",\"cursor\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.UTF_8);
+
+    private final ConcurrentHashMap<ObjectCodec, ObjectWriter> childlessEntryWriters;
+    private final ObjectWriter fragmentEntryWriter;
+    private final ObjectWriter valueWriter;
+
+    /**
+     * @param objectMapper The object mapper the rest of the responses are serialized with (so that the entries look the same either way).
+     */
+    public EntryWriter(ObjectMapper objectMapper) {
+        this.fragmentEntryWriter = objectMapper.copy().addMixIn(Entry.class, FragmentEntry.class).writerFor(Entry.class);
+        this.childlessEntryWriters = new ConcurrentHashMap<ObjectCodec, ObjectWriter>();
+        this.valueWriter = objectMapper.writer();
+    }
+
+    /**
+     * Writes the entry as a single JSON object, with its children nested in it (and theirs in them) down to the given depth.
+     * Directories past that depth come without their children ({@code null}), just like the files.
+     *
+     * @param entry The entry to be written.
+     * @param depth How many levels of children are to be written (0 for the entry alone).
+     * @param outputStream The stream to write to (flushed, but left open).
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeTree(Entry entry, Integer depth, OutputStream outputStream) throws IOException {
+        final OutputStream bufferedStream = new BufferedOutputStream(outputStream, 65536);
+        this.appendTree(entry, depth, bufferedStream);
+        bufferedStream.flush();
+    }
+
+    private void appendTree(Entry entry, int depth, OutputStream outputStream) throws IOException {
+        final List<Entry> childEntries = depth > 0 ? this.childEntries(entry) : null;
+
+        this.appendFragment(entry, outputStream);
+        outputStream.write(CHILDREN);
+        if (childEntries == null) { /* Same as the files, the type tells them apart */
+            outputStream.write(NULL);
+            outputStream.write('}');
+            return;
+        }
+
+        outputStream.write('[');
+        for (int iChild = 0; iChild < childEntries.size(); iChild++) {
+            if (iChild > 0) {
+                outputStream.write(',');
+            }
+
+            this.appendTree(childEntries.get(iChild), depth - 1, outputStream);
+        }
+
+        outputStream.write(']');
+        outputStream.write('}');
+    }
+
+    /**
+     * Writes the entry the same as {@link #writeTree(Entry, Integer, OutputStream)} does, only to a generator of any format
+     * (e.g. Smile or CBOR), by the object mapper the generator was created by. The kept fragments are JSON, so the entries
+     * are serialized anew every time.
+     *
+     * @param entry The entry to be written.
+     * @param depth How many levels of children are to be written (0 for the entry alone).
+     * @param generator The generator to write to (flushed, but left open), created by an {@code ObjectMapper}.
+     * @throws IOException If the generator cannot be written to.
+     */
+    public void writeTree(Entry entry, Integer depth, JsonGenerator generator) throws IOException {
+        final ObjectWriter childlessEntryWriter = this.childlessEntryWriters.computeIfAbsent(generator.getCodec(), objectCodec -> 
+            ((ObjectMapper) objectCodec).copy().addMixIn(Entry.class, ChildlessEntry.class).writerFor(Entry.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE));
+
+        this.appendTree(entry, depth, generator, childlessEntryWriter);
+        generator.flush();
+    }
+
+    private void appendTree(Entry entry, int depth, JsonGenerator generator, ObjectWriter childlessEntryWriter) throws IOException {
+        final List<Entry> childEntries = depth > 0 ? this.childEntries(entry) : null;
+        final JsonStreamContext outerContext = generator.getOutputContext();
+
+        childlessEntryWriter.writeValue(new JsonGeneratorDelegate(generator, false) {
+            @Override
+            public void writeEndObject() throws IOException {
+                if (this.delegate.getOutputContext().getParent() != outerContext) { /* The entry itself is left open, so that the children can still be put in */
+                    super.writeEndObject();
+                }
+            }
+        }, entry);
+
+        generator.writeFieldName("children");
+        if (childEntries == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (Entry childEntry : childEntries) {
+                this.appendTree(childEntry, depth - 1, generator, childlessEntryWriter);
+            }
+
+            generator.writeEndArray();
+        }
+
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes the entry and its descendants (down to the given depth) as newline delimited JSON, one entry (without its children)
+     * per line, every directory followed by its children. Whose children they are is to be told by their URLs.
+     *
+     * @param entry The entry to be written.
+     * @param depth How many levels of children are to be written (0 for the entry alone).
+     * @param outputStream The stream to write to (flushed, but left open).
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writeLines(Entry entry, Integer depth, OutputStream outputStream) throws IOException {
+        final OutputStream bufferedStream = new BufferedOutputStream(outputStream, 65536);
+        this.appendLines(entry, depth, bufferedStream);
+        bufferedStream.flush();
+    }
+
+    private void appendLines(Entry entry, int depth, OutputStream outputStream) throws IOException {
+        final List<Entry> childEntries = depth > 0 ? this.childEntries(entry) : null;
+
+        this.appendFragment(entry, outputStream);
+        outputStream.write('}');
+        outputStream.write('\n');
+        if (childEntries != null) {
+            for (Entry childEntry : childEntries) {
+                this.appendLines(childEntry, depth - 1, outputStream);
+            }
+        }
+    }
+
+    /**
+     * Writes a page of a directory listing as a JSON object, the same as it would've been serialized (see {@link EntryPage}).
+     *
+     * @param entryPage The page to be written.
+     * @param outputStream The stream to write to (flushed, but left open).
+     * @throws IOException If the stream cannot be written to.
+     */
+    public void writePage(EntryPage entryPage, OutputStream outputStream) throws IOException {
+        final OutputStream bufferedStream = new BufferedOutputStream(outputStream, 65536);
+        final List<Entry> childEntries = entryPage.getChildren();
+
+        bufferedStream.write(ENTRY);
+        this.appendFragment(entryPage.getEntry(), bufferedStream);
+        bufferedStream.write('}');
+        bufferedStream.write(CHILDREN);
+        bufferedStream.write('[');
+        for (int iChild = 0; iChild < childEntries.size(); iChild++) {
+            if (iChild > 0) {
+                bufferedStream.write(',');
+            }
+
+            this.appendFragment(childEntries.get(iChild), bufferedStream);
+            bufferedStream.write('}');
+        }
+
+        bufferedStream.write(']');
+        if (entryPage.getCursor() != null) {
+            bufferedStream.write(CURSOR);
+            bufferedStream.write(this.valueWriter.writeValueAsBytes(entryPage.getCursor()));
+        }
+
+        bufferedStream.write('}');
+        bufferedStream.flush();
+    }
+
+    /* Whatever the children are at the moment, the directory can go on changing while they are being written */
+    private List<Entry> childEntries(Entry entry) {
+        final List<Entry> childEntries = entry.getChildren();
+        return childEntries instanceof EntryChildren entryChildren ? entryChildren.snapshot() : childEntries;
+    }
+
+    /* The entry as a JSON object without its children and without the closing brace, so that the children can still be put in */
+    private void appendFragment(Entry entry, OutputStream outputStream) throws IOException {
+        EntryFragment fragment = entry.getFragment();
+        if (fragment == null || !fragment.holdsFor(entry)) {
+            final Integer revision = entry.getRevision(); /* Taken before, so that a change made in the meantime can't go unnoticed */
+            final Long version = entry.getVersion();
+
+            final byte[] json = this.fragmentEntryWriter.writeValueAsBytes(entry);
+            fragment = new EntryFragment(Arrays.copyOf(json, json.length - 1), revision, version);
+            if (entry.getId() != null) { /* Entries yet to be persisted are about to change (and not by the setters) */
+                entry.setFragment(fragment);
+            }
+        }
+
+        final byte[] bytes = fragment.getBytes();
+        outputStream.write(bytes);
+
+        final StringBuilder liveProperties = new StringBuilder(96);
+        liveProperties.append(bytes.length > 1 ? ",\"isAccessible\":" : "\"isAccessible\":").append(entry.getIsAccessible());
+        final Long totalSize = entry.getTotalSize(), totalFiles = entry.getTotalFiles(), totalDirectories = entry.getTotalDirectories();
+        if (totalSize != null && totalFiles != null && totalDirectories != null) {
+            liveProperties.append(",\"totalSize\":").append(totalSize);
+            liveProperties.append(",\"totalFiles\":").append(totalFiles);
+            liveProperties.append(",\"totalDirectories\":").append(totalDirectories);
+        }
+
+        outputStream.write(liveProperties.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @JsonIgnoreProperties({"children", "isAccessible", "totalSize", "totalFiles", "totalDirectories"})
+    private static abstract class FragmentEntry {}
+
+    @JsonIgnoreProperties({"children"})
+    private static abstract class ChildlessEntry {}
+}
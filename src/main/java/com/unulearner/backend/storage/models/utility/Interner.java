@@ -0,0 +1,35 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out one shared instance per distinct value, so that the (many) entries holding equal values don't each hold a copy.
+ * The pool stops growing once it reaches its capacity, past that point values are simply handed back as they are.
+ */
+public class Interner<T> {
+    private final ConcurrentHashMap<T, T> pool;
+    private final Integer capacity;
+
+    public Interner(Integer capacity) {
+        this.pool = new ConcurrentHashMap<T, T>();
+        this.capacity = capacity;
+    }
+
+    public T intern(T value) {
+        if (value == null) {
+            return null;
+        }
+
+        final T pooledValue = this.pool.get(value);
+        if (pooledValue != null) {
+            return pooledValue;
+        }
+
+        if (this.pool.size() >= this.capacity) {
+            return value;
+        }
+
+        final T racingValue = this.pool.putIfAbsent(value, value);
+        return racingValue != null ? racingValue : value;
+    }
+}
@@ -3,6 +3,7 @@ package com.unulearner.backend.storage.properties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.Locale;
 import java.util.UUID;
 
 @Component
@@ -29,6 +30,57 @@ public class StorageProperties {
         this.controllerPrintExceptionStackTrace = controllerPrintExceptionStackTrace;
     }
 
+    /**
+     * Controller: seconds the clients are asked to wait (Retry-After) before retrying while the storage tree is still being built
+     */
+    private Integer controllerRetryAfterInSeconds = 5;
+
+    public Integer getControllerRetryAfterInSeconds() {
+        return this.controllerRetryAfterInSeconds;
+    }
+
+    public void setControllerRetryAfterInSeconds(Integer controllerRetryAfterInSeconds) {
+        if (controllerRetryAfterInSeconds == null || controllerRetryAfterInSeconds <= 0) {
+            throw new RuntimeException("StorageProperties: invalid controller retry after interval!");
+        }
+
+        this.controllerRetryAfterInSeconds = controllerRetryAfterInSeconds;
+    }
+
+    /**
+     * Controller: most URLs listed (by prefix) in one response, the rest is to be asked for page by page
+     */
+    private Integer controllerListingPageSize = 1000;
+
+    public Integer getControllerListingPageSize() {
+        return this.controllerListingPageSize;
+    }
+
+    public void setControllerListingPageSize(Integer controllerListingPageSize) {
+        if (controllerListingPageSize == null || controllerListingPageSize <= 0) {
+            throw new RuntimeException("StorageProperties: invalid controller listing page size!");
+        }
+
+        this.controllerListingPageSize = controllerListingPageSize;
+    }
+
+    /**
+     * Controller: most children looked at for one page of a filtered directory listing, a page can come back short (but with a cursor) past that
+     */
+    private Integer controllerListingScanLimit = 10000;
+
+    public Integer getControllerListingScanLimit() {
+        return this.controllerListingScanLimit;
+    }
+
+    public void setControllerListingScanLimit(Integer controllerListingScanLimit) {
+        if (controllerListingScanLimit == null || controllerListingScanLimit <= 0) {
+            throw new RuntimeException("StorageProperties: invalid controller listing scan limit!");
+        }
+
+        this.controllerListingScanLimit = controllerListingScanLimit;
+    }
+
     //**********************************************************//
     //*                                                        *//
     //*                         Task flow                      *//
@@ -86,6 +138,321 @@ public class StorageProperties {
         this.taskTimeOutGracePeriodInSeconds = taskTimeOutGracePeriodInSeconds;
     }
 
+    //**********************************************************//
+    //*                                                        *//
+    //*                       Storage tree                     *//
+    //*                                                        *//
+    //**********************************************************//
+
+    /**
+     * Load the whole storage table into memory (in pages) before walking the disk instead of querying it once per path
+     */
+    private Boolean treeBulkLoadEnabled = true;
+
+    public Boolean getTreeBulkLoadEnabled() {
+        return this.treeBulkLoadEnabled;
+    }
+
+    public void setTreeBulkLoadEnabled(Boolean treeBulkLoadEnabled) {
+        this.treeBulkLoadEnabled = treeBulkLoadEnabled != null ? treeBulkLoadEnabled : false;
+    }
+
+    /**
+     * Amount of storage entries fetched per (keyset-paged) query while bulk loading the storage table
+     */
+    private Integer treeBulkLoadPageSize = 10000;
+
+    public Integer getTreeBulkLoadPageSize() {
+        return this.treeBulkLoadPageSize;
+    }
+
+    public void setTreeBulkLoadPageSize(Integer treeBulkLoadPageSize) {
+        if (treeBulkLoadPageSize == null || treeBulkLoadPageSize <= 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree bulk load page size!");
+        }
+
+        this.treeBulkLoadPageSize = treeBulkLoadPageSize;
+    }
+
+    /**
+     * Amount of worker threads scanning the storage root on startup (1 walks it sequentially, 0 uses every available core)
+     */
+    private Integer treeScanParallelism = 1;
+
+    public Integer getTreeScanParallelism() {
+        return this.treeScanParallelism;
+    }
+
+    public void setTreeScanParallelism(Integer treeScanParallelism) {
+        if (treeScanParallelism == null || treeScanParallelism < 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree scan parallelism!");
+        }
+
+        this.treeScanParallelism = treeScanParallelism;
+    }
+
+    /**
+     * Write a binary snapshot of the storage tree (on shutdown and periodically) and warm-start from it on startup
+     */
+    private Boolean treeSnapshotEnabled = false;
+
+    public Boolean getTreeSnapshotEnabled() {
+        return this.treeSnapshotEnabled;
+    }
+
+    public void setTreeSnapshotEnabled(Boolean treeSnapshotEnabled) {
+        this.treeSnapshotEnabled = treeSnapshotEnabled != null ? treeSnapshotEnabled : false;
+    }
+
+    /**
+     * Location of the storage tree snapshot file (must not be within the root directory of the permanent storage)
+     */
+    private String treeSnapshotUrl = "storage.snapshot";
+
+    public String getTreeSnapshotUrl() {
+        return this.treeSnapshotUrl;
+    }
+
+    public void setTreeSnapshotUrl(String treeSnapshotUrl) {
+        if (treeSnapshotUrl == null || (treeSnapshotUrl = treeSnapshotUrl.trim()).isBlank()) {
+            throw new RuntimeException("StorageProperties: storage tree snapshot url cannot be NULL!");
+        }
+
+        this.treeSnapshotUrl = treeSnapshotUrl;
+    }
+
+    /**
+     * Interval (in seconds) between the periodic storage tree snapshots (0 only writes it on shutdown)
+     */
+    private Integer treeSnapshotInterval = 300;
+
+    public Integer getTreeSnapshotInterval() {
+        return this.treeSnapshotInterval;
+    }
+
+    public void setTreeSnapshotInterval(Integer treeSnapshotInterval) {
+        if (treeSnapshotInterval == null || treeSnapshotInterval < 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree snapshot interval!");
+        }
+
+        this.treeSnapshotInterval = treeSnapshotInterval;
+    }
+
+    /**
+     * Skip the startup scan and load the children of a directory (from the database and the disk) only once it is first accessed
+     */
+    private Boolean treeLazyLoadingEnabled = false;
+
+    public Boolean getTreeLazyLoadingEnabled() {
+        return this.treeLazyLoadingEnabled;
+    }
+
+    public void setTreeLazyLoadingEnabled(Boolean treeLazyLoadingEnabled) {
+        this.treeLazyLoadingEnabled = treeLazyLoadingEnabled != null ? treeLazyLoadingEnabled : false;
+    }
+
+    /**
+     * Amount of entries kept in memory (lazy loading only) before the least recently used directories are unloaded (0 means no limit)
+     */
+    private Integer treeCacheEntryBudget = 100000;
+
+    public Integer getTreeCacheEntryBudget() {
+        return this.treeCacheEntryBudget;
+    }
+
+    public void setTreeCacheEntryBudget(Integer treeCacheEntryBudget) {
+        if (treeCacheEntryBudget == null || treeCacheEntryBudget < 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree cache entry budget!");
+        }
+
+        this.treeCacheEntryBudget = treeCacheEntryBudget;
+    }
+
+    /**
+     * Milliseconds the attributes of the files/directories (existence, type, access) are trusted for once read from disk (0 means they are read every time)
+     */
+    private Integer treeAttributeCacheTtlInMillis = 5000;
+
+    public Integer getTreeAttributeCacheTtlInMillis() {
+        return this.treeAttributeCacheTtlInMillis;
+    }
+
+    public void setTreeAttributeCacheTtlInMillis(Integer treeAttributeCacheTtlInMillis) {
+        if (treeAttributeCacheTtlInMillis == null || treeAttributeCacheTtlInMillis < 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree attribute cache TTL!");
+        }
+
+        this.treeAttributeCacheTtlInMillis = treeAttributeCacheTtlInMillis;
+    }
+
+    /**
+     * Locale (as a language tag) the names of the entries are ordered by within their directories
+     */
+    private String treeSortLocale = "en";
+
+    public String getTreeSortLocale() {
+        return this.treeSortLocale;
+    }
+
+    public void setTreeSortLocale(String treeSortLocale) {
+        if (treeSortLocale == null || (treeSortLocale = treeSortLocale.trim()).isBlank() || Locale.forLanguageTag(treeSortLocale).getLanguage().isEmpty()) {
+            throw new RuntimeException("StorageProperties: invalid storage tree sort locale!");
+        }
+
+        this.treeSortLocale = treeSortLocale;
+    }
+
+    /**
+     * Keep the storage tree in sync with the changes made on disk (outside of the API) once it has been built (not available with lazy loading)
+     */
+    private Boolean treeWatchEnabled = false;
+
+    public Boolean getTreeWatchEnabled() {
+        return this.treeWatchEnabled;
+    }
+
+    public void setTreeWatchEnabled(Boolean treeWatchEnabled) {
+        this.treeWatchEnabled = treeWatchEnabled != null ? treeWatchEnabled : false;
+    }
+
+    /**
+     * Amount of time (in milliseconds) a directory has to stay quiet before the changes made to it on disk are applied to the storage tree
+     */
+    private Integer treeWatchDebounceInMillis = 500;
+
+    public Integer getTreeWatchDebounceInMillis() {
+        return this.treeWatchDebounceInMillis;
+    }
+
+    public void setTreeWatchDebounceInMillis(Integer treeWatchDebounceInMillis) {
+        if (treeWatchDebounceInMillis == null || treeWatchDebounceInMillis < 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree watch debounce!");
+        }
+
+        this.treeWatchDebounceInMillis = treeWatchDebounceInMillis;
+    }
+
+    /**
+     * Interval (in seconds) between the background passes checking the storage table against the disk (0 means no background passes)
+     */
+    private Integer treeReconcileInterval = 0;
+
+    public Integer getTreeReconcileInterval() {
+        return this.treeReconcileInterval;
+    }
+
+    public void setTreeReconcileInterval(Integer treeReconcileInterval) {
+        if (treeReconcileInterval == null || treeReconcileInterval < 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree reconciliation interval!");
+        }
+
+        this.treeReconcileInterval = treeReconcileInterval;
+    }
+
+    /**
+     * Amount of entries checked (and checkpointed) at a time by the reconciliation pass
+     */
+    private Integer treeReconcileSliceSize = 1000;
+
+    public Integer getTreeReconcileSliceSize() {
+        return this.treeReconcileSliceSize;
+    }
+
+    public void setTreeReconcileSliceSize(Integer treeReconcileSliceSize) {
+        if (treeReconcileSliceSize == null || treeReconcileSliceSize <= 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree reconciliation slice size!");
+        }
+
+        this.treeReconcileSliceSize = treeReconcileSliceSize;
+    }
+
+    /**
+     * Amount of file system operations per second the reconciliation pass is allowed to make (0 means no limit)
+     */
+    private Integer treeReconcileIoBudget = 1000;
+
+    public Integer getTreeReconcileIoBudget() {
+        return this.treeReconcileIoBudget;
+    }
+
+    public void setTreeReconcileIoBudget(Integer treeReconcileIoBudget) {
+        if (treeReconcileIoBudget == null || treeReconcileIoBudget < 0) {
+            throw new RuntimeException("StorageProperties: invalid storage tree reconciliation I/O budget!");
+        }
+
+        this.treeReconcileIoBudget = treeReconcileIoBudget;
+    }
+
+    /**
+     * URL of the reconciliation report (its checkpoint is kept right next to it), must be outside of the root directory
+     */
+    private String treeReconcileReportUrl = "storage.report";
+
+    public String getTreeReconcileReportUrl() {
+        return this.treeReconcileReportUrl;
+    }
+
+    public void setTreeReconcileReportUrl(String treeReconcileReportUrl) {
+        if (treeReconcileReportUrl == null || (treeReconcileReportUrl = treeReconcileReportUrl.trim()).isBlank()) {
+            throw new RuntimeException("StorageProperties: storage tree reconciliation report url cannot be NULL!");
+        }
+
+        this.treeReconcileReportUrl = treeReconcileReportUrl;
+    }
+
+    /**
+     * Don't build the storage tree at all, the application is only started to run a reconciliation pass (see the "fsck" command)
+     */
+    private Boolean treeReconcileOffline = false;
+
+    public Boolean getTreeReconcileOffline() {
+        return this.treeReconcileOffline;
+    }
+
+    public void setTreeReconcileOffline(Boolean treeReconcileOffline) {
+        this.treeReconcileOffline = treeReconcileOffline != null ? treeReconcileOffline : false;
+    }
+
+    //**********************************************************//
+    //*                                                        *//
+    //*                          Quotas                        *//
+    //*                                                        *//
+    //**********************************************************//
+
+    /**
+     * Most bytes the entries owned by any one user can take up altogether (0 means there is no limit)
+     */
+    private Long quotaUserLimitInBytes = 0L;
+
+    public Long getQuotaUserLimitInBytes() {
+        return this.quotaUserLimitInBytes;
+    }
+
+    public void setQuotaUserLimitInBytes(Long quotaUserLimitInBytes) {
+        if (quotaUserLimitInBytes == null || quotaUserLimitInBytes < 0) {
+            throw new RuntimeException("StorageProperties: invalid user quota limit!");
+        }
+
+        this.quotaUserLimitInBytes = quotaUserLimitInBytes;
+    }
+
+    /**
+     * Most bytes the entries owned by any one group can take up altogether (0 means there is no limit)
+     */
+    private Long quotaGroupLimitInBytes = 0L;
+
+    public Long getQuotaGroupLimitInBytes() {
+        return this.quotaGroupLimitInBytes;
+    }
+
+    public void setQuotaGroupLimitInBytes(Long quotaGroupLimitInBytes) {
+        if (quotaGroupLimitInBytes == null || quotaGroupLimitInBytes < 0) {
+            throw new RuntimeException("StorageProperties: invalid group quota limit!");
+        }
+
+        this.quotaGroupLimitInBytes = quotaGroupLimitInBytes;
+    }
+
     //**********************************************************//
     //*                                                        *//
     //*                       Root directory                   *//
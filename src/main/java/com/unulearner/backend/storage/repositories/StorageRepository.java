@@ -3,14 +3,41 @@ package com.unulearner.backend.storage.repositories;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.List;
+import java.util.Date;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.repository.query.Param;
+import org.springframework.data.jpa.repository.Query;
 
 import com.unulearner.backend.storage.models.Entry;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 
 public interface StorageRepository extends JpaRepository<Entry, UUID>  {
+    @Query("SELECT e FROM Entry e WHERE e.persistedUrl = :url")
     Optional<Entry> findByUrl(@Param("url") String url);
     List<Entry> findAllByParent(@Param("parent") Entry parent);
+    List<Entry> findAllByOrderByIdAsc(Pageable pageable);
+    List<Entry> findAllByIdGreaterThanOrderByIdAsc(@Param("id") UUID id, Pageable pageable);
+
+    @Query("SELECT MAX(e.updated) FROM Entry e")
+    Date findLatestUpdate();
+
+    @Query("SELECT e.persistedUrl, e.id FROM Entry e WHERE e.user = :user ORDER BY e.persistedUrl")
+    List<Object[]> findUrlsByUser(@Param("user") UUID user, Pageable pageable);
+
+    @Query("SELECT e.persistedUrl, e.id FROM Entry e WHERE e.user = :user AND e.persistedUrl > :after ORDER BY e.persistedUrl")
+    List<Object[]> findUrlsByUserAfter(@Param("user") UUID user, @Param("after") String after, Pageable pageable);
+
+    @Query("SELECT e.persistedUrl, e.id FROM Entry e WHERE e.group = :group ORDER BY e.persistedUrl")
+    List<Object[]> findUrlsByGroup(@Param("group") UUID group, Pageable pageable);
+
+    @Query("SELECT e.persistedUrl, e.id FROM Entry e WHERE e.group = :group AND e.persistedUrl > :after ORDER BY e.persistedUrl")
+    List<Object[]> findUrlsByGroupAfter(@Param("group") UUID group, @Param("after") String after, Pageable pageable);
+
+    @Query("SELECT e.user, SUM(e.size) FROM Entry e GROUP BY e.user")
+    List<Object[]> sumSizeGroupByUser();
+
+    @Query("SELECT e.group, SUM(e.size) FROM Entry e GROUP BY e.group")
+    List<Object[]> sumSizeGroupByGroup();
 }
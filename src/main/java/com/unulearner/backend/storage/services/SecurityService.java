@@ -23,8 +23,7 @@ public class SecurityService implements SecurityInterface {
     @Override
     public Boolean userHasRequiredPermissions(Entry targetStorageNode, boolean readRequired, boolean writeRequired, boolean executeRequired) {
         final UUID userUUID = this.credentials.getUser();
-        final String fullPermissions = targetStorageNode.getPermissions();
-        final Integer intPermissions = Integer.parseInt(fullPermissions, 8);
+        final Integer intPermissions = targetStorageNode.getPermissionBits(); /* Mode bits, 3 per class (owner, group, other) - not decimal digits! */
         final Collection<UUID> userGroups = this.credentials.getUserGroups();
 
         if (userUUID.equals(this.storageProperties.getRootUserUUID())) {
@@ -32,7 +31,7 @@ public class SecurityService implements SecurityInterface {
         }
 
         if (userUUID.equals(targetStorageNode.getUser())) {
-            final Integer ownerPermissions = (intPermissions / 100) % 10;
+            final Integer ownerPermissions = (intPermissions >> 6) & 07;
             final Boolean readBitSet = (ownerPermissions & 4) != 0;
             final Boolean writeBitSet = (ownerPermissions & 2) != 0;
             final Boolean executeBitSet = (ownerPermissions & 1) != 0;
@@ -43,7 +42,7 @@ public class SecurityService implements SecurityInterface {
 
             return true;
         } else if (userGroups.contains(targetStorageNode.getGroup())) {
-            final Integer groupPermissions = (intPermissions / 10) % 10;
+            final Integer groupPermissions = (intPermissions >> 3) & 07;
             final Boolean readBitSet = (groupPermissions & 4) != 0;
             final Boolean writeBitSet = (groupPermissions & 2) != 0;
             final Boolean executeBitSet = (groupPermissions & 1) != 0;
@@ -54,7 +53,7 @@ public class SecurityService implements SecurityInterface {
 
             return true;
         } else {
-            final Integer otherPermissions = intPermissions % 10;
+            final Integer otherPermissions = intPermissions & 07;
             final Boolean readBitSet = (otherPermissions & 4) != 0;
             final Boolean writeBitSet = (otherPermissions & 2) != 0;
             final Boolean executeBitSet = (otherPermissions & 1) != 0;
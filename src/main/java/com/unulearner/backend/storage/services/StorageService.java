@@ -1,18 +1,25 @@
 package com.unulearner.backend.storage.services;
 
 import java.util.Comparator;
-import java.util.ArrayList;
 import java.nio.file.Files;
 import java.util.Optional;
+import java.util.LinkedHashMap;
+import java.util.HashMap;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.UUID;
+import java.util.Date;
+import java.util.Map;
+import java.io.IOException;
 
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import jakarta.transaction.Transactional;
 
 import com.unulearner.backend.storage.models.Entry;
 import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
+import com.unulearner.backend.storage.models.utility.EntryOrder;
 import com.unulearner.backend.storage.interfaces.StorageInterface;
 import com.unulearner.backend.storage.properties.StorageProperties;
 import com.unulearner.backend.storage.repositories.StorageRepository;
@@ -40,14 +47,14 @@ public class StorageService implements StorageInterface {
 
         final Entry newStorageNode = new Entry()
             .setParent(parent)
-            .setChildren(children)
+            .setChildren(children != null ? new EntryChildren(this.getStorageComparator(), children) : null)
             .setEntryPath(entryPath)
             .setPermissions(permissions)
             .setUser(user != null ? user : storageProperties.getDefaultUserUUID())
             .setGroup(group != null ? group : storageProperties.getDefaultGroupUUID())
             .setDescription(children != null ? storageProperties.getRecoveredDirectoryDescription() : storageProperties.getRecoveredFileDescription());
 
-        return newStorageNode;
+        return this.captureFileAttributes(newStorageNode);
     }
 
     @Override
@@ -61,12 +68,24 @@ public class StorageService implements StorageInterface {
             .setParent(null)
             .setEntryPath(entryPath)
             .setPermissions(permissions)
-            .setChildren(new ArrayList<>())
+            .setChildren(new EntryChildren(this.getStorageComparator()))
             .setUser(storageProperties.getRootUserUUID())
             .setGroup(storageProperties.getRootUserUUID())
             .setDescription(storageProperties.getRootDirectoryDescription());
 
-        return newStorageNode;
+        return this.captureFileAttributes(newStorageNode);
+    }
+
+    private Entry captureFileAttributes(Entry storageNode) {
+        if (storageNode.getEntryPath() != null) {
+            try {
+                storageNode.captureFileAttributes(storageNode.getEntryPath().readFileAttributes());
+            } catch (IOException exception) {
+                /* Unreadable files won't make it past the pre-commit checks anyway */
+            }
+        }
+
+        return storageNode;
     }
 
     @Override
@@ -74,15 +93,104 @@ public class StorageService implements StorageInterface {
         return this.storageRepository.findByUrl(relativePath);
     }
 
+    @Override
+    public Optional<Entry> searchEntryByUUID(UUID entryUUID) {
+        return this.storageRepository.findById(entryUUID);
+    }
+
     @Override
     public List<Entry> retrieveChildEntries(Entry storageNode) {
         return storageRepository.findAllByParent(storageNode);
     }
 
+    @Override
+    public List<Entry> retrieveEntriesAfter(UUID lastEntryUUID, Integer pageSize) {
+        if (lastEntryUUID == null) {
+            return storageRepository.findAllByOrderByIdAsc(PageRequest.of(0, pageSize));
+        }
+
+        return storageRepository.findAllByIdGreaterThanOrderByIdAsc(lastEntryUUID, PageRequest.of(0, pageSize));
+    }
+
+    @Override
+    public Date retrieveLatestUpdate() {
+        return storageRepository.findLatestUpdate();
+    }
+
+    @Override
+    public Long countEntries() {
+        return storageRepository.count();
+    }
+
+    @Override
+    public Map<String, UUID> retrieveEntryUrlsByOwner(UUID owner, Boolean isGroup, String afterUrl, Integer pageSize) {
+        final PageRequest pageRequest = PageRequest.of(0, pageSize);
+        final List<Object[]> entryRows;
+        if (afterUrl == null) {
+            entryRows = isGroup ? storageRepository.findUrlsByGroup(owner, pageRequest) : storageRepository.findUrlsByUser(owner, pageRequest);
+        } else {
+            final String persistedAfterUrl = afterUrl.startsWith("/") ? afterUrl.substring(1) : afterUrl; /* Compared in the persisted form, the "C" collation keeps the order the same */
+            entryRows = isGroup ? storageRepository.findUrlsByGroupAfter(owner, persistedAfterUrl, pageRequest) : storageRepository.findUrlsByUserAfter(owner, persistedAfterUrl, pageRequest);
+        }
+
+        final Map<String, UUID> entryUrls = new LinkedHashMap<String, UUID>();
+        for (Object[] entryRow : entryRows) {
+            if (entryRow[0] != null) { /* Persisted without the leading slash */
+                entryUrls.put(((String) entryRow[0]).startsWith("/") ? (String) entryRow[0] : "/" + entryRow[0], (UUID) entryRow[1]);
+            }
+        }
+
+        return entryUrls;
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveUsageByUser() {
+        return this.collectUsage(storageRepository.sumSizeGroupByUser());
+    }
+
+    @Override
+    public Map<UUID, Long> retrieveUsageByGroup() {
+        return this.collectUsage(storageRepository.sumSizeGroupByGroup());
+    }
+
+    private Map<UUID, Long> collectUsage(List<Object[]> usageRows) {
+        final Map<UUID, Long> usage = new HashMap<UUID, Long>();
+        for (Object[] usageRow : usageRows) {
+            if (usageRow[0] != null && usageRow[1] != null) {
+                usage.put((UUID) usageRow[0], ((Number) usageRow[1]).longValue());
+            }
+        }
+
+        return usage;
+    }
+
+    /**
+     * Updates are compare-and-set: they only go through if the entry is still of the version it was read at,
+     * otherwise {@code ObjectOptimisticLockingFailureException} is thrown (and nothing is written).
+     * It is flushed right away so that the conflict is thrown from here rather than from somewhere down the line.
+     */
     @Override
     @Transactional
     public Entry persistEntry(Entry storageNode) {
-        return storageRepository.save(storageNode).setEntryPath(storageNode.getEntryPath()).setChildren(storageNode.getChildren()).setParent(storageNode.getParent());
+        return storageRepository.saveAndFlush(storageNode).setEntryPath(storageNode.getEntryPath()).setChildren(storageNode.getChildren()).setParent(storageNode.getParent());
+    }
+
+    /**
+     * Updates the entries all at once, compare-and-set same as {@link #persistEntry(Entry)} (if any one of them is stale, none of them is written).
+     * The persisted copies are brought in with a single query first, so that merging the entries doesn't take a query per entry,
+     * and the updates go out in JDBC batches (see {@code hibernate.jdbc.batch_size}).
+     *
+     * @return The persisted entries, in the order they were given in.
+     */
+    @Override
+    @Transactional
+    public List<Entry> persistEntries(List<Entry> storageNodes) {
+        storageRepository.findAllById(storageNodes.stream().map(Entry::getId).toList());
+
+        final List<Entry> persistedNodes = storageRepository.saveAll(storageNodes);
+        storageRepository.flush();
+
+        return persistedNodes;
     }
 
     @Override
@@ -93,7 +201,7 @@ public class StorageService implements StorageInterface {
 
     @Override
     public Comparator<Entry> getStorageComparator() {
-        return Comparator.comparing((Entry iNode) -> iNode.getIsDirectory() ? 0 : 1).thenComparing(Entry::getName);
+        return EntryOrder.COMPARATOR;
     }
 
     @Override
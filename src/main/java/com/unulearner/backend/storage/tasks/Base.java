@@ -16,14 +16,20 @@ import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.annotation.PostConstruct;
 
 import com.unulearner.backend.storage.Storage;
+import com.unulearner.backend.storage.models.Entry;
 import com.unulearner.backend.storage.tasks.exception.Handler;
 import com.unulearner.backend.storage.tasks.response.Response;
 import com.unulearner.backend.storage.tasks.constant.TaskState;
 import com.unulearner.backend.storage.exceptions.StorageUtilException;
+import com.unulearner.backend.storage.exceptions.entry.EntryNotFoundException;
+import com.unulearner.backend.storage.exceptions.entry.EntryVersionConflictException;
 
 @Component
 @Scope("prototype")
 public class Base {
+    /* Attempts at publishing a modification before giving in to the concurrent ones */
+    private static final Integer PUBLISHING_ATTEMPTS = 3;
+
     private Handler exceptionHandler;
     private TaskState currentState;
     private Action currentAction;
@@ -102,6 +108,37 @@ public class Base {
         return this.storageTree;
     }
 
+    /**
+     * Publishes the modified entry. If someone else has published the entry in the meantime, the modification is made anew
+     * on the latest version of the entry and published again (a few times over at most) rather than failing the task outright.
+     *
+     * @param modifiedEntry The entry, already modified.
+     * @param entryModification The modification, to be made anew on the latest version of the entry.
+     * @return The published entry.
+     * @throws EntryVersionConflictException If the entry keeps being modified concurrently.
+     * @throws EntryNotFoundException If the entry has been removed in the meantime.
+     * @throws Exception If an unexpected error occurs.
+     */
+    protected Entry publishModifiedEntry(Entry modifiedEntry, EntryModification entryModification) throws Exception {
+        Entry publishableEntry = modifiedEntry;
+        for (int iAttempt = 1; ; iAttempt++) {
+            try {
+                return this.storageTree.publishEntry(publishableEntry);
+            } catch (EntryVersionConflictException exception) {
+                if (iAttempt >= PUBLISHING_ATTEMPTS) {
+                    throw exception;
+                }
+
+                final Entry latestEntry = this.storageTree.retrieveEntry(publishableEntry.getId());
+                if (latestEntry == null) {
+                    throw new EntryNotFoundException("%s '%s' has been removed in the meantime".formatted(publishableEntry.getIsDirectory() ? "Directory" : "File", publishableEntry.getUrl()));
+                }
+
+                publishableEntry = entryModification.apply(latestEntry);
+            }
+        }
+    }
+
     public List<String> getLog() {
         return this.log;
     }
@@ -114,6 +151,12 @@ public class Base {
         return;
     }
 
+    /* Whatever the task does to an entry, in a form that can be done over (on the latest version of the entry) */
+    @FunctionalInterface
+    protected interface EntryModification {
+        Entry apply(Entry latestEntry) throws Exception;
+    }
+
     /* Without actions taken where will the tasks ever go? */
     public class Action {
         private String message;
@@ -180,7 +180,7 @@ public class Delete extends Base {
             this.deletionSuccessful = false;
 
             if (this.targetEntry.getIsDirectory()) {
-                for (Entry childNode : targetEntry.getChildren()) {
+                for (Entry childNode : storageExecutor().retrieveChildEntries(targetEntry)) {
                     this.getChildActions().add(new DeleteAction(this, childNode));
                 }
             }
@@ -113,7 +113,7 @@ public class ModifyOwnership extends Base {
                 }
                 
                 if (storageTaskCurrentAction.getUpdateCommitted() != true) {
-                    this.storageExecutor().publishEntry(storageTaskCurrentAction.getTargetEntry());
+                    storageTaskCurrentAction.setTargetEntry(this.publishModifiedEntry(storageTaskCurrentAction.getTargetEntry(), latestEntry -> this.storageExecutor().modifyEntryOwnership(latestEntry, storageTaskCurrentAction.getPairedOwners())));
                     storageTaskCurrentAction.setUpdateCommitted(true);
                 }
 
@@ -179,7 +179,7 @@ public class ModifyOwnership extends Base {
             this.targetEntry = targetEntry;
 
             if (taskIsRecursive == true && this.targetEntry.getIsDirectory()) {
-                for (Entry childNode : targetEntry.getChildren()) {
+                for (Entry childNode : storageExecutor().retrieveChildEntries(targetEntry)) {
                     this.getChildActions().add(new ModifyOwnershipAction(this, childNode, pairedOwners, taskIsRecursive));
                     this.getChildActions().previous(); /* Required because iterator pushes forward on .add() which is an expected but unwanted behavior */
                 }
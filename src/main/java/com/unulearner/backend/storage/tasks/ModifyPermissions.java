@@ -113,7 +113,7 @@ public class ModifyPermissions extends Base {
                 }
 
                 if (storageTaskCurrentAction.getUpdateCommitted() != true) {
-                    this.storageExecutor().publishEntry(storageTaskCurrentAction.getTargetEntry());
+                    storageTaskCurrentAction.setTargetEntry(this.publishModifiedEntry(storageTaskCurrentAction.getTargetEntry(), latestEntry -> this.storageExecutor().modifyEntryPermissions(latestEntry, storageTaskCurrentAction.getPermissionsOptions())));
                     storageTaskCurrentAction.setUpdateCommitted(true);
                 }
 
@@ -180,7 +180,7 @@ public class ModifyPermissions extends Base {
             this.permissionsOptions = permissionsOptions;
 
             if (taskIsRecursive == true && this.targetEntry.getIsDirectory()) {
-                for (Entry childNode : this.targetEntry.getChildren()) {
+                for (Entry childNode : storageExecutor().retrieveChildEntries(this.targetEntry)) {
                     this.getChildActions().add(new ModifyPermissionsAction(this, childNode, permissionsOptions, taskIsRecursive));
                     this.getChildActions().previous(); /* Required because iterator pushes forward on .add() which is an expected but unwanted behavior */
                 }
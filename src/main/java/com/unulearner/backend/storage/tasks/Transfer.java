@@ -293,11 +293,18 @@ public class Transfer extends Base {
 
                 if (storageTaskCurrentAction.getNewEntry().getId() == null) {
                     if (storageTaskCurrentAction.getPersistNode() == false && storageTaskCurrentAction.getTargetEntry().getId() != null) {
-                        storageTaskCurrentAction.getNewEntry().setId(storageTaskCurrentAction.getTargetEntry().getId());
+                        storageTaskCurrentAction.getNewEntry().setId(storageTaskCurrentAction.getTargetEntry().getId()).restoreVersion(storageTaskCurrentAction.getTargetEntry().getVersion());
                         storageTaskCurrentAction.getTargetEntry().setId(null);
                     }
 
-                    storageTaskCurrentAction.setNewEntry(this.storageExecutor().publishEntry(storageTaskCurrentAction.getNewEntry()));
+                    /* Should the original be modified in the meantime, the moved entry takes over its latest attributes (and version) */
+                    storageTaskCurrentAction.setNewEntry(this.publishModifiedEntry(storageTaskCurrentAction.getNewEntry(), latestEntry -> storageTaskCurrentAction.getNewEntry()
+                        .setUser(latestEntry.getUser())
+                        .setGroup(latestEntry.getGroup())
+                        .setPermissionBits(latestEntry.getPermissionBits())
+                        .setDescription(latestEntry.getDescription())
+                        .restoreVersion(latestEntry.getVersion())
+                    ));
                 }
 
                 if (storageTaskCurrentAction.getPersistNode() == false && storageTaskCurrentAction.getChildActions().hasNext() != true && storageTaskCurrentAction.getTargetEntry().getIsAccessible() != false) {
@@ -411,7 +418,7 @@ public class Transfer extends Base {
             this.destinationEntry = destinationEntry;
 
             if (this.targetEntry.getIsDirectory()) {
-                for (Entry childNode : this.targetEntry.getChildren()) {
+                for (Entry childNode : storageExecutor().retrieveChildEntries(this.targetEntry)) {
                     this.getChildActions().add(new TransferAction(this, childNode, null, null, persistOriginal));
                     this.getChildActions().previous(); /* Required because iterator pushes forward on .add() which is an expected but unwanted behavior */
                 }
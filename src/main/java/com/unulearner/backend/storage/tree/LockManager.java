@@ -0,0 +1,148 @@
+package com.unulearner.backend.storage.tree;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.Map;
+
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * Hands out read/write locks on directories, so that storage mutations touching the same directories take turns
+ * while the ones touching unrelated directories go ahead in parallel.
+ *
+ * Whatever is locked together is locked in one global order and everything is acquired before anything else is done,
+ * so no two holders can ever end up waiting for each other. The order goes by ID: depth (or path) would've been just as
+ * good if it wasn't for moves, which leave two entries of the same ID at different depths for a while. The locks are
+ * reentrant, although a read lock can't be upgraded to a write one: whoever might write is to ask for writing up front.
+ * Locks of the directories nobody holds are let go of, so there is only ever as many as there are directories in use.
+ */
+public class LockManager {
+    private final ConcurrentHashMap<UUID, DirectoryLock> directoryLocks;
+
+    public LockManager() {
+        this.directoryLocks = new ConcurrentHashMap<UUID, DirectoryLock>();
+    }
+
+    /**
+     * @param writtenDirectories Directories to be locked for writing (whose children are going to change), {@code null}s are skipped.
+     * @return The held locks, to be released once done (in a {@code finally} block, or by try-with-resources).
+     */
+    public Locks lockForWriting(Entry... writtenDirectories) {
+        return this.lock(Arrays.asList(writtenDirectories), List.of());
+    }
+
+    /**
+     * Locks the directories in the global locking order. Directories that are in both collections are locked for writing,
+     * {@code null}s and entries that haven't been persisted (and therefore can't be shared) are skipped.
+     *
+     * @param writtenDirectories Directories to be locked for writing (whose children are going to change).
+     * @param readDirectories Directories to be locked for reading (whose children are only going to be looked at).
+     * @return The held locks, to be released once done (in a {@code finally} block, or by try-with-resources).
+     */
+    public Locks lock(Collection<Entry> writtenDirectories, Collection<Entry> readDirectories) {
+        final Map<UUID, LockedDirectory> lockedDirectories = new HashMap<UUID, LockedDirectory>();
+        for (Entry directoryEntry : readDirectories) {
+            if (directoryEntry != null && directoryEntry.getId() != null) {
+                lockedDirectories.putIfAbsent(directoryEntry.getId(), new LockedDirectory(directoryEntry, false));
+            }
+        }
+
+        for (Entry directoryEntry : writtenDirectories) {
+            if (directoryEntry != null && directoryEntry.getId() != null) {
+                lockedDirectories.put(directoryEntry.getId(), new LockedDirectory(directoryEntry, true));
+            }
+        }
+
+        final List<LockedDirectory> orderedDirectories = new ArrayList<LockedDirectory>(lockedDirectories.values());
+        orderedDirectories.sort(Comparator.comparing(lockedDirectory -> lockedDirectory.id));
+
+        final Locks locks = new Locks();
+        try {
+            for (LockedDirectory lockedDirectory : orderedDirectories) {
+                final DirectoryLock directoryLock = this.retain(lockedDirectory.id);
+                final Lock lock = lockedDirectory.forWriting ? directoryLock.writeLock() : directoryLock.readLock();
+
+                try {
+                    lock.lock();
+                } catch (RuntimeException | Error exception) {
+                    this.release(lockedDirectory.id);
+                    throw exception;
+                }
+
+                locks.heldLocks.add(new HeldLock(lockedDirectory.id, lock));
+            }
+        } catch (RuntimeException | Error exception) {
+            locks.close();
+            throw exception;
+        }
+
+        return locks;
+    }
+
+    private DirectoryLock retain(UUID directoryUUID) {
+        return this.directoryLocks.compute(directoryUUID, (uuid, directoryLock) -> {
+            final DirectoryLock retainedLock = directoryLock != null ? directoryLock : new DirectoryLock();
+            retainedLock.holders++;
+            return retainedLock;
+        });
+    }
+
+    private void release(UUID directoryUUID) {
+        this.directoryLocks.computeIfPresent(directoryUUID, (uuid, directoryLock) -> --directoryLock.holders > 0 ? directoryLock : null);
+    }
+
+    /**
+     * Locks held together, released all at once (in the reverse order).
+     */
+    public class Locks implements AutoCloseable {
+        private final List<HeldLock> heldLocks;
+
+        private Locks() {
+            this.heldLocks = new ArrayList<HeldLock>();
+        }
+
+        @Override
+        public void close() {
+            for (int iLock = this.heldLocks.size() - 1; iLock >= 0; iLock--) {
+                final HeldLock heldLock = this.heldLocks.get(iLock);
+                heldLock.lock.unlock();
+                LockManager.this.release(heldLock.directoryUUID);
+            }
+
+            this.heldLocks.clear();
+        }
+    }
+
+    /* Holders are only ever counted within compute(), which is atomic per directory */
+    private static class DirectoryLock extends ReentrantReadWriteLock {
+        private int holders = 0;
+    }
+
+    private static class HeldLock {
+        private final UUID directoryUUID;
+        private final Lock lock;
+
+        private HeldLock(UUID directoryUUID, Lock lock) {
+            this.directoryUUID = directoryUUID;
+            this.lock = lock;
+        }
+    }
+
+    private static class LockedDirectory {
+        private final Boolean forWriting;
+        private final UUID id;
+
+        private LockedDirectory(Entry directoryEntry, Boolean forWriting) {
+            this.forWriting = forWriting;
+            this.id = directoryEntry.getId();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.unulearner.backend.storage.tree;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.LinkOption;
+import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
+import com.unulearner.backend.storage.interfaces.StorageInterface;
+import com.unulearner.backend.storage.properties.StorageProperties;
+
+import java.io.IOException;
+
+/**
+ * Lazily materializes the storage tree one directory at a time instead of scanning all of it up front.
+ *
+ * A directory entry whose children are {@code null} has not been loaded yet. Its children are loaded
+ * (from the database, matched against the disk) the first time the directory is accessed and are
+ * published into the storage caches. Once the caches hold more entries than the configured budget,
+ * the least recently used directories are unloaded again (children dropped from the caches and set
+ * back to {@code null}).
+ *
+ * Accessing a directory also counts as accessing all of its ancestors, so a directory is always at
+ * least as "hot" as anything below it and unloading never pulls a hot subtree out with a cold parent.
+ * Directories accessed within the task time-out are never unloaded, so the entries held by pending
+ * tasks are not pulled from under them (which makes the budget a soft one).
+ *
+ * Directories are loaded independently of one another: whoever gets to a directory first loads it,
+ * whoever comes for the same directory in the meantime waits for that load rather than starting another.
+ * Only the bookkeeping (publishing the children, keeping track of what was used when and unloading)
+ * takes turns, no database query and no directory listing is ever held up behind another one.
+ */
+public class Materializer {
+    private final Logger logger = LoggerFactory.getLogger(Materializer.class);
+    private final ConcurrentHashMap<Entry, CompletableFuture<List<Entry>>> pendingLoads;
+    private final LinkedHashMap<UUID, Long> residentDirectories;
+    private final UrlIndex urlIndex;
+    private final ConcurrentHashMap<UUID, Entry> entryCache;
+    private final StorageInterface storageInterface;
+    private final EntryPath rootEntryPath;
+    private final Long minimumIdleMillis;
+    private final Integer entryBudget;
+    private volatile Entry rootEntry;
+
+    public Materializer(StorageInterface storageInterface, StorageProperties storageProperties, EntryPath rootEntryPath, ConcurrentHashMap<UUID, Entry> entryCache, UrlIndex urlIndex) {
+        this.minimumIdleMillis = (storageProperties.getTaskTimeOutInSeconds() + storageProperties.getTaskTimeOutGracePeriodInSeconds()) * 1000L;
+        this.residentDirectories = new LinkedHashMap<UUID, Long>(16, 0.75f, true);
+        this.pendingLoads = new ConcurrentHashMap<Entry, CompletableFuture<List<Entry>>>();
+        this.entryBudget = storageProperties.getTreeCacheEntryBudget();
+        this.storageInterface = storageInterface;
+        this.rootEntryPath = rootEntryPath;
+        this.entryCache = entryCache;
+        this.urlIndex = urlIndex;
+        this.rootEntry = null;
+    }
+
+    /**
+     * Resolves (or creates) the root entry and loads its children.
+     *
+     * @return The root entry of the storage tree.
+     */
+    public Entry materializeRoot() {
+        synchronized (this) {
+            if (this.rootEntry != null) {
+                throw new RuntimeException("Storage root '%s' has already been materialized".formatted(this.rootEntryPath.getPath().toString()));
+            }
+
+            if (!this.rootEntryPath.isValidDirectory()) {
+                throw new RuntimeException("Directory '%s' is inaccessible".formatted(this.rootEntryPath.getPath().toString()));
+            }
+
+            Entry entry = this.storageInterface.searchEntryByURL(this.rootEntryPath.getRelativePath().toString()).orElse(null);
+            if (entry == null) {
+                logger.info("Database entry for the root directory not found. Creating root directory database entry...".formatted());
+                entry = this.storageInterface.persistEntry(this.storageInterface.createRootEntry(this.rootEntryPath));
+            }
+
+            this.rootEntry = entry.setEntryPath(this.rootEntryPath).setChildren(null);
+            this.entryCache.put(this.rootEntry.getId(), this.rootEntry);
+            this.urlIndex.put(this.rootEntry.getUrl(), this.rootEntry);
+        }
+
+        this.materializeChildren(this.rootEntry);
+
+        logger.info("Storage root has been successfully initialized at %s".formatted(this.rootEntryPath.getPath().toString()));
+        return this.rootEntry;
+    }
+
+    /**
+     * Retrieves an entry by its UUID, materializing the path leading up to it if it isn't resident.
+     * If the entry is a directory its children are loaded as well.
+     *
+     * @param entryUUID The UUID of the entry.
+     * @return The materialized entry or {@code null} if there is no such (accessible) entry.
+     */
+    public Entry materializeEntry(UUID entryUUID) {
+        Entry entry = this.entryCache.get(entryUUID);
+
+        if (entry == null) {
+            final Entry persistedEntry = this.storageInterface.searchEntryByUUID(entryUUID).orElse(null);
+            if (persistedEntry == null) {
+                return null;
+            }
+
+            entry = this.materializeUrl(persistedEntry.getUrl());
+            if (entry == null || !entry.getId().equals(entryUUID)) {
+                return null;
+            }
+        }
+
+        if (entry.getIsDirectory()) {
+            this.materializeChildren(entry);
+        } else {
+            this.touch(entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Retrieves an entry by its URL (as in {@code Entry.getUrl()}), loading every directory on the way down.
+     *
+     * @param url The URL of the entry.
+     * @return The materialized entry or {@code null} if there is no such (accessible) entry.
+     */
+    public Entry materializeUrl(String url) {
+        Entry entry = this.urlIndex.get(url);
+
+        if (entry == null) {
+            entry = this.rootEntry;
+
+            for (Path name : Path.of(url.startsWith("/") ? url.substring(1) : url)) {
+                if (name.toString().isEmpty()) {
+                    continue;
+                }
+
+                if (!entry.getIsDirectory()) {
+                    return null;
+                }
+
+                this.materializeChildren(entry);
+                entry = entry.retrieveChild(name.toString()); /* Hashed by name once loaded */
+                if (entry == null) {
+                    return null;
+                }
+            }
+        }
+
+        if (entry.getIsDirectory()) {
+            this.materializeChildren(entry);
+        } else {
+            this.touch(entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Loads the children of a directory if they aren't loaded yet and marks the directory as recently used.
+     * If the directory is being loaded already, it waits for that load instead (other directories are loaded all the while).
+     *
+     * @param dirEntry The directory entry.
+     * @return The (loaded) children of the directory.
+     */
+    public List<Entry> materializeChildren(Entry dirEntry) {
+        final List<Entry> children = dirEntry.getChildren();
+        if (children != null) {
+            this.touch(dirEntry);
+            return children;
+        }
+
+        final CompletableFuture<List<Entry>> load = new CompletableFuture<List<Entry>>();
+        final CompletableFuture<List<Entry>> pendingLoad = this.pendingLoads.putIfAbsent(dirEntry, load);
+        if (pendingLoad != null) {
+            try {
+                return pendingLoad.join();
+            } catch (CompletionException exception) {
+                throw exception.getCause() instanceof RuntimeException runtimeException ? runtimeException : exception;
+            }
+        }
+
+        try {
+            final List<Entry> loadedChildren = dirEntry.getChildren() != null ? dirEntry.getChildren() : this.publishChildren(dirEntry, this.loadChildren(dirEntry)); /* Could've been loaded right before this load was put in */
+            load.complete(loadedChildren);
+            return loadedChildren;
+        } catch (RuntimeException exception) {
+            load.completeExceptionally(exception);
+            throw exception;
+        } finally {
+            this.pendingLoads.remove(dirEntry, load);
+        }
+    }
+
+    /* A directory whose parent has been unloaded while it was being loaded is no longer part of the tree, it gets its children but is left out of the caches */
+    private synchronized List<Entry> publishChildren(Entry dirEntry, EntryChildren children) {
+        dirEntry.setChildren(children);
+        if (dirEntry.getParent() != null && dirEntry.getParent().getChildren() == null) {
+            return children;
+        }
+
+        for (Entry childEntry : children) {
+            this.entryCache.put(childEntry.getId(), childEntry);
+            this.urlIndex.put(childEntry.getUrl(), childEntry);
+        }
+
+        this.residentDirectories.put(dirEntry.getId(), System.currentTimeMillis());
+        this.touch(dirEntry);
+        this.evictColdDirectories();
+        return children;
+    }
+
+    /* Leaf first, root last, so that the ancestors always end up more recent than their descendants */
+    private synchronized void touch(Entry entry) {
+        final Long now = System.currentTimeMillis();
+
+        for (Entry dirEntry = entry.getIsDirectory() ? entry : entry.getParent(); dirEntry != null; dirEntry = dirEntry.getParent()) {
+            if (this.residentDirectories.containsKey(dirEntry.getId())) {
+                this.residentDirectories.put(dirEntry.getId(), now);
+            }
+        }
+    }
+
+    private void evictColdDirectories() {
+        if (this.entryBudget <= 0) {
+            return;
+        }
+
+        final Long now = System.currentTimeMillis();
+        while (this.entryCache.size() > this.entryBudget && !this.residentDirectories.isEmpty()) {
+            final Map.Entry<UUID, Long> residentDirectory = this.residentDirectories.entrySet().iterator().next(); /* least recently used */
+            if (now - residentDirectory.getValue() < this.minimumIdleMillis) {
+                logger.debug("Storage tree cache is over its budget (%d/%d) but no directory is idle enough to be unloaded".formatted(this.entryCache.size(), this.entryBudget));
+                return;
+            }
+
+            final Entry dirEntry = this.entryCache.get(residentDirectory.getKey());
+            this.residentDirectories.remove(residentDirectory.getKey());
+
+            if (dirEntry != null && dirEntry.getChildren() != null) {
+                this.unloadChildren(dirEntry);
+            }
+        }
+    }
+
+    private void unloadChildren(Entry dirEntry) {
+        for (Entry childEntry : dirEntry.getChildren()) {
+            if (childEntry.getIsDirectory() && childEntry.getChildren() != null) {
+                this.residentDirectories.remove(childEntry.getId());
+                this.unloadChildren(childEntry);
+            }
+
+            this.entryCache.remove(childEntry.getId());
+            this.urlIndex.remove(childEntry.getUrl());
+        }
+
+        dirEntry.setChildren(null);
+        logger.debug("Directory '%s' has been unloaded from the storage tree cache".formatted(dirEntry.getUrl()));
+    }
+
+    /**
+     * Matches the persisted children of a directory against its on-disk listing (creating the missing entries along the way).
+     * Subdirectories come out unloaded.
+     */
+    private EntryChildren loadChildren(Entry dirEntry) {
+        final HashMap<String, Entry> persistedChildrenMap = new HashMap<String, Entry>();
+        final Path dirPath = dirEntry.getEntryPath().getPath();
+        final ArrayList<Entry> children = new ArrayList<Entry>();
+
+        for (Entry persistedEntry : this.storageInterface.retrieveChildEntries(dirEntry)) {
+            persistedChildrenMap.put(persistedEntry.getName(), persistedEntry);
+        }
+
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dirPath)) {
+            for (Path childPath : directoryStream) {
+                final EntryPath childEntryPath = dirEntry.getEntryPath().resolve(childPath.getFileName());
+                final Boolean isDirectory = Files.isDirectory(childPath, LinkOption.NOFOLLOW_LINKS);
+
+                if (isDirectory ? !childEntryPath.isValidDirectory() : !childEntryPath.isValidFile()) {
+                    logger.warn("%s '%s' is inaccessible".formatted(isDirectory ? "Directory" : "File", childEntryPath.getRelativePath().toString()));
+                    continue;
+                }
+
+                Entry childEntry = persistedChildrenMap.remove(childPath.getFileName().toString());
+                if (childEntry != null && !childEntry.getIsDirectory().equals(isDirectory)) {
+                    logger.warn("%s '%s' type doesn't match the type persisted to the database".formatted(isDirectory ? "Directory" : "File", childEntry.getUrl()));
+                    continue;
+                }
+
+                try {
+                    if (childEntry == null) {
+                        logger.info("Database entry for %s '%s' not found. Creating new database entry...".formatted(isDirectory ? "directory" : "file", childEntryPath.getRelativePath().toString()));
+                        childEntry = this.storageInterface.persistEntry(this.storageInterface.createNewEntry(dirEntry, isDirectory ? new ArrayList<>() : null, childEntryPath, null, null, null));
+                    }
+                } catch (Exception exception) {
+                    logger.warn("Failed to add %s '%s' to the storage tree: %s".formatted(isDirectory ? "directory" : "file", childPath.toString(), exception.getMessage()));
+                    continue;
+                }
+
+                children.add(childEntry.setParent(dirEntry).setEntryPath(childEntryPath).setChildren(null));
+            }
+        } catch (IOException exception) {
+            logger.warn("Failed to traverse the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
+        }
+
+        logger.debug("Directory '%s' has been loaded into the storage tree cache. Total entries: %d".formatted(dirEntry.getUrl(), children.size()));
+        return new EntryChildren(this.storageInterface.getStorageComparator(), children);
+    }
+}
@@ -0,0 +1,89 @@
+package com.unulearner.backend.storage.tree;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.NavigableMap;
+import java.util.Collections;
+import java.util.UUID;
+
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * Entries of the tree by their owners (the user and the group), so that finding whatever a user (or a group) owns
+ * costs as much as there is to be found rather than a walk through every entry there is. Every owner's entries are kept
+ * sorted by their URLs (same as the {@code UrlIndex}), so that they can be paged through from any URL on without being sorted first.
+ * Kept up to date by whoever adds or removes the entries (or hands them over), right alongside the entry cache.
+ * It is only of any use if the whole tree is there to be indexed, a disabled index keeps nothing (and finds nothing).
+ */
+public class OwnerIndex {
+    private final ConcurrentHashMap<UUID, ConcurrentSkipListMap<String, Entry>> userEntries;
+    private final ConcurrentHashMap<UUID, ConcurrentSkipListMap<String, Entry>> groupEntries;
+    private final Boolean enabled;
+
+    public OwnerIndex(Boolean enabled) {
+        this.userEntries = new ConcurrentHashMap<UUID, ConcurrentSkipListMap<String, Entry>>();
+        this.groupEntries = new ConcurrentHashMap<UUID, ConcurrentSkipListMap<String, Entry>>();
+        this.enabled = enabled;
+    }
+
+    public Boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * To be called whenever an entry joins the tree (and after its owners have changed). Its URL must stay the same for as long as it is indexed.
+     */
+    public void add(Entry entry) {
+        if (!this.enabled) {
+            return;
+        }
+
+        add(this.userEntries, entry.getUser(), entry);
+        add(this.groupEntries, entry.getGroup(), entry);
+    }
+
+    /**
+     * To be called whenever an entry leaves the tree (and before its owners change).
+     */
+    public void remove(Entry entry) {
+        if (!this.enabled) {
+            return;
+        }
+
+        remove(this.userEntries, entry.getUser(), entry);
+        remove(this.groupEntries, entry.getGroup(), entry);
+    }
+
+    /**
+     * @return The entries owned by the user by their URLs (sorted), as they are right now (and as they change).
+     */
+    public NavigableMap<String, Entry> getUserEntries(UUID user) {
+        final NavigableMap<String, Entry> ownedEntries = this.userEntries.get(user);
+        return ownedEntries != null ? ownedEntries : Collections.emptyNavigableMap();
+    }
+
+    /**
+     * @return The entries owned by the group by their URLs (sorted), as they are right now (and as they change).
+     */
+    public NavigableMap<String, Entry> getGroupEntries(UUID group) {
+        final NavigableMap<String, Entry> ownedEntries = this.groupEntries.get(group);
+        return ownedEntries != null ? ownedEntries : Collections.emptyNavigableMap();
+    }
+
+    /* Whichever entry was put last under a URL is the one kept there, and only that very entry (entries have no equality of their own) takes it out again */
+    private static void add(ConcurrentHashMap<UUID, ConcurrentSkipListMap<String, Entry>> ownerEntries, UUID owner, Entry entry) {
+        if (owner != null) {
+            ownerEntries.compute(owner, (key, entries) -> {
+                final ConcurrentSkipListMap<String, Entry> ownedEntries = entries != null ? entries : new ConcurrentSkipListMap<String, Entry>();
+                ownedEntries.put(entry.getUrl(), entry);
+                return ownedEntries;
+            });
+        }
+    }
+
+    private static void remove(ConcurrentHashMap<UUID, ConcurrentSkipListMap<String, Entry>> ownerEntries, UUID owner, Entry entry) {
+        if (owner != null) {
+            ownerEntries.computeIfPresent(owner, (key, entries) -> entries.remove(entry.getUrl(), entry) && entries.isEmpty() ? null : entries);
+        }
+    }
+}
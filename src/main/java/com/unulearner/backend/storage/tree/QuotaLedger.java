@@ -0,0 +1,197 @@
+package com.unulearner.backend.storage.tree;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.exceptions.entry.EntryQuotaExceededException;
+
+/**
+ * Bytes taken up by the entries of every user and every group (going by the owners of the entries), kept up to date by
+ * whoever adds, removes, resizes or hands over the entries. Checking a quota is therefore a single lookup, whatever the
+ * size of the tree. It mirrors the entries in the tree as they are in memory, the database only ever seeds it.
+ *
+ * Bytes on their way into the tree (written to disk but not published yet) are reserved up front, checked and added to
+ * the usage in one compare-and-add, so no two writers can both squeeze into the room that is left for one of them. The
+ * reservation is held by the entry it was made for and released once the entry is accounted for, or once it is given up
+ * on (whatever is never published runs out along with the task that wrote it).
+ */
+public class QuotaLedger {
+    private final ConcurrentHashMap<Entry, Reservation> heldReservations;
+    private final ConcurrentHashMap<UUID, AtomicLong> userUsage;
+    private final ConcurrentHashMap<UUID, AtomicLong> groupUsage;
+    private final Long reservationTimeOutMillis;
+    private final Long userLimit;
+    private final Long groupLimit;
+
+    /**
+     * @param userLimit Most bytes any one user can take up (0 for no limit).
+     * @param groupLimit Most bytes any one group can take up (0 for no limit).
+     * @param reservationTimeOutMillis How long a held reservation outlives the entry that never got published.
+     */
+    public QuotaLedger(Long userLimit, Long groupLimit, Long reservationTimeOutMillis) {
+        this.heldReservations = new ConcurrentHashMap<Entry, Reservation>();
+        this.userUsage = new ConcurrentHashMap<UUID, AtomicLong>();
+        this.groupUsage = new ConcurrentHashMap<UUID, AtomicLong>();
+        this.reservationTimeOutMillis = reservationTimeOutMillis;
+        this.userLimit = userLimit;
+        this.groupLimit = groupLimit;
+    }
+
+    /**
+     * Adds the bytes of the entry (itself only, not whatever is below it) to its owners, or takes them away if {@code added} is false.
+     * To be called whenever an entry joins or leaves the tree, and around any change of its size or owners (taking the old ones away first).
+     */
+    public void account(Entry entry, Boolean added) {
+        final long size = entry.getIsDirectory() ? 0L : entry.getSize();
+        if (size == 0L) {
+            return;
+        }
+
+        if (entry.getUser() != null) {
+            this.userUsage.computeIfAbsent(entry.getUser(), user -> new AtomicLong()).addAndGet(added ? size : -size);
+        }
+
+        if (entry.getGroup() != null) {
+            this.groupUsage.computeIfAbsent(entry.getGroup(), group -> new AtomicLong()).addAndGet(added ? size : -size);
+        }
+    }
+
+    /**
+     * Adds whatever has been added up elsewhere (the database) in one go.
+     */
+    public void seed(Map<UUID, Long> userUsage, Map<UUID, Long> groupUsage) {
+        userUsage.forEach((user, size) -> this.userUsage.computeIfAbsent(user, key -> new AtomicLong()).addAndGet(size));
+        groupUsage.forEach((group, size) -> this.groupUsage.computeIfAbsent(group, key -> new AtomicLong()).addAndGet(size));
+    }
+
+    public Long getUserUsage(UUID user) {
+        final AtomicLong usage = this.userUsage.get(user);
+        return usage != null ? usage.get() : 0L;
+    }
+
+    public Long getGroupUsage(UUID group) {
+        final AtomicLong usage = this.groupUsage.get(group);
+        return usage != null ? usage.get() : 0L;
+    }
+
+    public Long getUserLimit() {
+        return this.userLimit;
+    }
+
+    public Long getGroupLimit() {
+        return this.groupLimit;
+    }
+
+    /**
+     * Sets the bytes aside for the user and the group (either can be {@code null} for an owner not to be charged), or for neither of them.
+     *
+     * @return The reservation, to be held by the entry it was made for or released if there's never going to be one.
+     * @throws EntryQuotaExceededException If either of the owners doesn't have that many more bytes left in its quota.
+     */
+    public Reservation reserve(UUID user, UUID group, Long size) throws EntryQuotaExceededException {
+        this.releaseExpiredReservations();
+
+        if (user != null && !this.tryCharge(this.userUsage, user, size, this.userLimit)) {
+            throw new EntryQuotaExceededException("User '%s' doesn't have %d more bytes left in its quota".formatted(user.toString(), size));
+        }
+
+        if (group != null && !this.tryCharge(this.groupUsage, group, size, this.groupLimit)) {
+            if (user != null) {
+                this.userUsage.get(user).addAndGet(-size);
+            }
+
+            throw new EntryQuotaExceededException("Group '%s' doesn't have %d more bytes left in its quota".formatted(group.toString(), size));
+        }
+
+        return new Reservation(user, group, size);
+    }
+
+    /**
+     * Leaves the reservation with the entry it was made for, until the entry is published (see {@code settle}) or given up on.
+     */
+    public void hold(Entry entry, Reservation reservation) {
+        if (reservation != null) {
+            this.heldReservations.put(entry, reservation);
+        }
+    }
+
+    /**
+     * Releases whatever is held for the entry. To be called once the entry has been accounted for (its bytes are charged for real by then)
+     * or once it is gone for good.
+     */
+    public void settle(Entry entry) {
+        this.release(this.heldReservations.remove(entry));
+    }
+
+    /**
+     * Gives the reserved bytes back to their owners (only ever once, whoever gets to it first).
+     */
+    public void release(Reservation reservation) {
+        if (reservation == null || !reservation.released.compareAndSet(false, true)) {
+            return;
+        }
+
+        if (reservation.user != null) {
+            this.userUsage.get(reservation.user).addAndGet(-reservation.size);
+        }
+
+        if (reservation.group != null) {
+            this.groupUsage.get(reservation.group).addAndGet(-reservation.size);
+        }
+    }
+
+    /* Checked and added in one go, so whatever is reserved concurrently is always counted in */
+    private Boolean tryCharge(ConcurrentHashMap<UUID, AtomicLong> usage, UUID owner, Long size, Long limit) {
+        final AtomicLong ownerUsage = usage.computeIfAbsent(owner, key -> new AtomicLong());
+        if (limit <= 0) {
+            ownerUsage.addAndGet(size);
+            return true;
+        }
+
+        long currentUsage;
+        do {
+            currentUsage = ownerUsage.get();
+            if (currentUsage + size > limit) {
+                return false;
+            }
+        } while (!ownerUsage.compareAndSet(currentUsage, currentUsage + size));
+
+        return true;
+    }
+
+    private void releaseExpiredReservations() {
+        if (this.heldReservations.isEmpty()) {
+            return;
+        }
+
+        final Long now = System.currentTimeMillis();
+        this.heldReservations.forEach((entry, reservation) -> {
+            if (now - reservation.reservedAt > this.reservationTimeOutMillis && this.heldReservations.remove(entry, reservation)) {
+                this.release(reservation);
+            }
+        });
+    }
+
+    /**
+     * Bytes set aside for an entry that is yet to be published.
+     */
+    public static class Reservation {
+        private final AtomicBoolean released;
+        private final Long reservedAt;
+        private final UUID user;
+        private final UUID group;
+        private final Long size;
+
+        private Reservation(UUID user, UUID group, Long size) {
+            this.reservedAt = System.currentTimeMillis();
+            this.released = new AtomicBoolean(false);
+            this.group = group;
+            this.user = user;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.unulearner.backend.storage.tree;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.DirectoryStream;
+import java.io.BufferedWriter;
+import java.nio.file.LinkOption;
+import java.util.LinkedHashMap;
+import java.util.Properties;
+import java.io.OutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Date;
+import java.util.UUID;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.interfaces.StorageInterface;
+import com.unulearner.backend.storage.properties.StorageProperties;
+
+import java.io.IOException;
+
+/**
+ * Checks the storage table against the disk (fsck) without touching either of them.
+ *
+ * The storage table is walked in slices (pages of rows ordered by their ID). Every row is looked up on disk
+ * and every directory row is listed, which turns up:
+ *  - orphan rows: rows whose parent row is missing (or isn't the row of the parent directory);
+ *  - missing files: rows without a file/directory on disk;
+ *  - type mismatches: rows persisted as a directory that are a file on disk (and vice versa);
+ *  - untracked files: files/directories on disk without a row.
+ *
+ * The progress is checkpointed after every slice, so an interrupted pass (shutdown, crash) picks up where it
+ * left off the next time around, and the findings are appended to the report file as they turn up. The file
+ * system operations are rate-limited by the configured I/O budget so that verifying a large volume doesn't
+ * starve everything else.
+ */
+public class Reconciler {
+    private static final String CHECKPOINT_LAST_ENTRY = "lastEntry";
+    private static final String CHECKPOINT_STARTED = "started";
+
+    private final Logger logger = LoggerFactory.getLogger(Reconciler.class);
+    private final HashMap<String, UUID> parentEntryUUIDs;
+    private final StorageInterface storageInterface;
+    private final EntryPath rootEntryPath;
+    private final Path checkpointPath;
+    private final Path reportPath;
+    private final Integer sliceSize;
+    private final Integer ioBudget;
+    private Long ioWindowStartMillis;
+    private Integer ioWindowOperations;
+
+    public Reconciler(StorageInterface storageInterface, StorageProperties storageProperties, EntryPath rootEntryPath) {
+        this.reportPath = Path.of(storageProperties.getTreeReconcileReportUrl()).toAbsolutePath().normalize();
+        this.parentEntryUUIDs = new HashMap<String, UUID>();
+        this.checkpointPath = this.reportPath.resolveSibling(this.reportPath.getFileName().toString() + ".checkpoint");
+        this.sliceSize = storageProperties.getTreeReconcileSliceSize();
+        this.ioBudget = storageProperties.getTreeReconcileIoBudget();
+        this.storageInterface = storageInterface;
+        this.rootEntryPath = rootEntryPath;
+        this.ioWindowStartMillis = 0L;
+        this.ioWindowOperations = 0;
+
+        if (this.reportPath.startsWith(this.rootEntryPath.getPath().toAbsolutePath().normalize())) {
+            throw new RuntimeException("Storage reconciliation report '%s' cannot be located within the storage root".formatted(this.reportPath.toString()));
+        }
+    }
+
+    /**
+     * Runs a reconciliation pass to completion (resuming the checkpointed one, if any).
+     *
+     * @return The report of the pass, or {@code null} if it got interrupted (the progress is kept for the next run).
+     * @throws IOException If the report or the checkpoint cannot be written.
+     */
+    public synchronized Report reconcile() throws IOException {
+        final Properties checkpoint = this.readCheckpoint();
+        final Report report = new Report();
+        UUID lastEntryUUID = null;
+
+        if (checkpoint != null) {
+            lastEntryUUID = UUID.fromString(checkpoint.getProperty(CHECKPOINT_LAST_ENTRY));
+            report.started = new Date(Long.parseLong(checkpoint.getProperty(CHECKPOINT_STARTED)));
+            for (FindingType findingType : FindingType.values()) {
+                report.counts.put(findingType, Long.parseLong(checkpoint.getProperty(findingType.name(), "0")));
+            }
+
+            logger.info("Resuming the storage reconciliation pass started at %s".formatted(report.started.toString()));
+        } else {
+            Files.createDirectories(this.reportPath.getParent());
+            Files.writeString(this.reportPath, "# Storage reconciliation pass started at %s%n".formatted(report.started.toString()), StandardCharsets.UTF_8);
+            logger.info("Starting a storage reconciliation pass".formatted());
+        }
+
+        List<Entry> slice = this.storageInterface.retrieveEntriesAfter(lastEntryUUID, this.sliceSize);
+        while (!slice.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                logger.info("Storage reconciliation pass has been interrupted. Checked entries: %d".formatted(report.checkedEntries));
+                return null;
+            }
+
+            final List<Finding> findings = new ArrayList<Finding>();
+            this.parentEntryUUIDs.clear(); /* Rows of the same directory tend to end up in the same slice, but not in the next one */
+            for (Entry entry : slice) {
+                this.reconcileEntry(entry, findings);
+            }
+
+            try (BufferedWriter writer = Files.newBufferedWriter(this.reportPath, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (Finding finding : findings) {
+                    writer.write("%s\t%s\t%s%n".formatted(finding.type.name(), finding.url, finding.detail));
+                    report.counts.merge(finding.type, 1L, Long::sum);
+                }
+            }
+
+            report.checkedEntries += slice.size();
+            lastEntryUUID = slice.get(slice.size() - 1).getId();
+            this.writeCheckpoint(lastEntryUUID, report);
+
+            if (slice.size() < this.sliceSize) {
+                break;
+            }
+
+            slice = this.storageInterface.retrieveEntriesAfter(lastEntryUUID, this.sliceSize);
+        }
+
+        Files.deleteIfExists(this.checkpointPath);
+        Files.writeString(this.reportPath, "# Storage reconciliation pass finished at %s: %s%n".formatted(new Date().toString(), report.toString()), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        logger.info("Storage reconciliation pass has been completed: %s. Report: %s".formatted(report.toString(), this.reportPath.toString()));
+        return report;
+    }
+
+    /**
+     * @return {@code true} if there is an interrupted pass to be resumed.
+     */
+    public Boolean hasCheckpoint() {
+        return Files.isRegularFile(this.checkpointPath);
+    }
+
+    private void reconcileEntry(Entry entry, List<Finding> findings) {
+        final Path relativePath = Path.of(entry.getUrl().substring(1));
+        final Path entryPath = this.rootEntryPath.getPath().resolve(relativePath);
+
+        if (!relativePath.toString().isEmpty()) { /* Everything but the root has a parent */
+            final String relativeParentUrl = relativePath.getParent() != null ? relativePath.getParent().toString() : "";
+            final UUID parentEntryUUID = this.parentEntryUUIDs.computeIfAbsent(relativeParentUrl, url -> this.storageInterface.searchEntryByURL(url).map(Entry::getId).orElse(null));
+
+            if (entry.getParent() == null || parentEntryUUID == null || !parentEntryUUID.equals(entry.getParent().getId())) {
+                findings.add(new Finding(FindingType.ORPHAN, entry.getUrl(), parentEntryUUID == null ? "parent directory has no database entry" : "parent entry doesn't match the parent directory"));
+            }
+        }
+
+        final BasicFileAttributes attributes;
+        try {
+            this.spendIoBudget(1);
+            attributes = Files.readAttributes(entryPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException exception) {
+            findings.add(new Finding(FindingType.MISSING, entry.getUrl(), "no %s on disk".formatted(entry.getIsDirectory() ? "directory" : "file")));
+            return;
+        } catch (IOException exception) {
+            findings.add(new Finding(FindingType.MISSING, entry.getUrl(), "inaccessible: %s".formatted(exception.getMessage())));
+            return;
+        }
+
+        if (!entry.getIsDirectory().equals(attributes.isDirectory()) || (!attributes.isDirectory() && !attributes.isRegularFile())) {
+            findings.add(new Finding(FindingType.TYPE_MISMATCH, entry.getUrl(), "persisted as a %s, found %s on disk".formatted(entry.getIsDirectory() ? "directory" : "file", attributes.isDirectory() ? "a directory" : attributes.isRegularFile() ? "a file" : "an unsupported file type")));
+            return;
+        }
+
+        if (!attributes.isDirectory()) {
+            if (!entry.matchesFileAttributes(attributes)) {
+                findings.add(new Finding(FindingType.STALE, entry.getUrl(), "persisted size/modification time doesn't match the file on disk"));
+            }
+
+            return;
+        }
+
+        final Set<String> persistedNames = new HashSet<String>();
+        for (Entry childEntry : this.storageInterface.retrieveChildEntries(entry)) {
+            persistedNames.add(childEntry.getName());
+        }
+
+        this.spendIoBudget(1);
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(entryPath)) {
+            for (Path childPath : directoryStream) {
+                this.spendIoBudget(1);
+                if (!persistedNames.contains(childPath.getFileName().toString())) {
+                    final Boolean isDirectory = Files.isDirectory(childPath, LinkOption.NOFOLLOW_LINKS);
+                    findings.add(new Finding(FindingType.UNTRACKED, "/%s".formatted(relativePath.resolve(childPath.getFileName()).toString()), "%s has no database entry".formatted(isDirectory ? "directory" : "file")));
+                }
+            }
+        } catch (IOException exception) {
+            logger.warn("Failed to traverse the '%s' directory: %s".formatted(entryPath.toString(), exception.getMessage()));
+        }
+    }
+
+    /* Operations are counted against one-second windows, a window that runs out of budget sleeps its remainder away */
+    private void spendIoBudget(Integer operations) {
+        if (this.ioBudget <= 0) {
+            return;
+        }
+
+        final Long now = System.currentTimeMillis();
+        if (now - this.ioWindowStartMillis >= 1000L) {
+            this.ioWindowStartMillis = now;
+            this.ioWindowOperations = 0;
+        }
+
+        this.ioWindowOperations += operations;
+        if (this.ioWindowOperations > this.ioBudget) {
+            try {
+                Thread.sleep(Math.max(1000L - (now - this.ioWindowStartMillis), 0L));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt(); /* The pass stops at the end of the slice */
+            }
+
+            this.ioWindowStartMillis = System.currentTimeMillis();
+            this.ioWindowOperations = operations;
+        }
+    }
+
+    private Properties readCheckpoint() {
+        if (!Files.isRegularFile(this.checkpointPath) || !Files.isRegularFile(this.reportPath)) {
+            return null;
+        }
+
+        try (InputStream inputStream = Files.newInputStream(this.checkpointPath)) {
+            final Properties checkpoint = new Properties();
+            checkpoint.load(inputStream);
+
+            UUID.fromString(checkpoint.getProperty(CHECKPOINT_LAST_ENTRY));
+            Long.parseLong(checkpoint.getProperty(CHECKPOINT_STARTED));
+            return checkpoint;
+        } catch (Exception exception) {
+            logger.warn("Storage reconciliation checkpoint is unusable (starting over): %s".formatted(exception.getMessage()));
+            return null;
+        }
+    }
+
+    private void writeCheckpoint(UUID lastEntryUUID, Report report) throws IOException {
+        final Path temporaryPath = this.checkpointPath.resolveSibling(this.checkpointPath.getFileName().toString() + ".tmp");
+        final Properties checkpoint = new Properties();
+
+        checkpoint.setProperty(CHECKPOINT_LAST_ENTRY, lastEntryUUID.toString());
+        checkpoint.setProperty(CHECKPOINT_STARTED, Long.toString(report.started.getTime()));
+        for (Map.Entry<FindingType, Long> count : report.counts.entrySet()) {
+            checkpoint.setProperty(count.getKey().name(), count.getValue().toString());
+        }
+
+        try (OutputStream outputStream = Files.newOutputStream(temporaryPath)) {
+            checkpoint.store(outputStream, "Storage reconciliation checkpoint");
+        }
+
+        Files.move(temporaryPath, this.checkpointPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public enum FindingType {
+        ORPHAN,
+        MISSING,
+        TYPE_MISMATCH,
+        UNTRACKED,
+        STALE
+    }
+
+    private class Finding {
+        private final FindingType type;
+        private final String detail;
+        private final String url;
+
+        private Finding(FindingType type, String url, String detail) {
+            this.detail = detail;
+            this.type = type;
+            this.url = url;
+        }
+    }
+
+    /**
+     * Outcome of a reconciliation pass. The findings themselves are in the report file.
+     */
+    public static class Report {
+        private final LinkedHashMap<FindingType, Long> counts;
+        private Long checkedEntries;
+        private Date started;
+
+        private Report() {
+            this.counts = new LinkedHashMap<FindingType, Long>();
+            for (FindingType findingType : FindingType.values()) {
+                this.counts.put(findingType, 0L);
+            }
+
+            this.started = new Date();
+            this.checkedEntries = 0L;
+        }
+
+        public Long getCount(FindingType findingType) {
+            return this.counts.get(findingType);
+        }
+
+        public Boolean isClean() {
+            return this.counts.values().stream().allMatch(count -> count == 0L);
+        }
+
+        @Override
+        public String toString() {
+            return "orphans=%d, missing=%d, typeMismatches=%d, untracked=%d, stale=%d".formatted(this.counts.get(FindingType.ORPHAN), this.counts.get(FindingType.MISSING), this.counts.get(FindingType.TYPE_MISMATCH), this.counts.get(FindingType.UNTRACKED), this.counts.get(FindingType.STALE));
+        }
+    }
+}
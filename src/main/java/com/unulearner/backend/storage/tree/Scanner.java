@@ -0,0 +1,735 @@
+package com.unulearner.backend.storage.tree;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.FileVisitResult;
+import java.nio.file.DirectoryStream;
+import java.nio.file.LinkOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
+import com.unulearner.backend.storage.interfaces.StorageInterface;
+import com.unulearner.backend.storage.properties.StorageProperties;
+import com.unulearner.backend.storage.exceptions.StorageEntryException;
+import com.unulearner.backend.storage.exceptions.entry.EntryNotFoundException;
+import com.unulearner.backend.storage.exceptions.entry.EntryInaccessibleException;
+import com.unulearner.backend.storage.exceptions.entry.EntryToParentRelationException;
+import com.unulearner.backend.storage.exceptions.entry.EntryTypeInDatabaseMismatchException;
+
+import java.io.IOException;
+
+/**
+ * Builds the storage tree by walking the storage root on disk and matching every file/directory
+ * found there against its persisted counterpart (creating the missing ones along the way).
+ *
+ * The walk is either sequential ({@code Files.walkFileTree}) or parallel (fork/join over subdirectories),
+ * depending on the configured parallelism. Both produce the very same tree: each directory is resolved by
+ * exactly one worker which alone owns (and sorts) its children list, so workers only ever build detached
+ * subtrees which are stitched together by the fork/join itself.
+ *
+ * If a usable {@code Snapshot} is available the tree is restored from it instead, and only the directories
+ * modified since the snapshot was written are listed again (see {@code reconcileDirectory}).
+ */
+public class Scanner {
+    private final Logger logger = LoggerFactory.getLogger(Scanner.class);
+    private final HashMap<UUID, List<Entry>> persistedChildrenMap;
+    private final HashMap<String, Entry> persistedUrlMap;
+    private final StorageProperties storageProperties;
+    private final StorageInterface storageInterface;
+    private final EntryPath rootEntryPath;
+    private final ConcurrentLinkedQueue<Entry> refreshedEntries;
+    private final Consumer<Entry> subtreeConsumer;
+    private final List<Entry> scannedEntries;
+    private final Snapshot snapshot;
+    private Boolean bulkLoadEnabled;
+    private Entry rootEntry;
+
+    /**
+     * @param subtreeConsumer Notified (possibly from several workers at once) of every directory whose whole subtree has been
+     * scanned, i.e. neither the directory nor anything below it is going to be touched by the scan anymore.
+     */
+    public Scanner(StorageInterface storageInterface, StorageProperties storageProperties, EntryPath rootEntryPath, Snapshot snapshot, Consumer<Entry> subtreeConsumer) {
+        this.persistedChildrenMap = new HashMap<UUID, List<Entry>>();
+        this.persistedUrlMap = new HashMap<String, Entry>();
+        this.refreshedEntries = new ConcurrentLinkedQueue<Entry>();
+        this.storageProperties = storageProperties;
+        this.storageInterface = storageInterface;
+        this.rootEntryPath = rootEntryPath;
+        this.scannedEntries = new ArrayList<Entry>();
+        this.subtreeConsumer = subtreeConsumer;
+        this.bulkLoadEnabled = false;
+        this.snapshot = snapshot;
+        this.rootEntry = null;
+    }
+
+    /**
+     * Every entry of the scanned tree (root included), in no particular order.
+     *
+     * @return The entries that are to be merged into the storage caches.
+     */
+    public List<Entry> getScannedEntries() {
+        return this.scannedEntries;
+    }
+
+    /**
+     * Scans the storage root and builds the storage tree.
+     *
+     * A {@code RuntimeException} thrown out of here is fatal: the tree could not be built at all.
+     * Anything less than that is logged and the offending file/directory (subtree) is skipped.
+     *
+     * @return The root entry of the freshly built storage tree.
+     * @throws Exception If the walk itself fails.
+     */
+    public Entry scan() throws Exception {
+        if (this.rootEntry != null) {
+            throw new RuntimeException("Storage root '%s' has already been scanned".formatted(this.rootEntryPath.getPath().toString()));
+        }
+
+        final Entry snapshotRootEntry = this.snapshot != null ? this.snapshot.restore() : null;
+        if (snapshotRootEntry != null) { /* Only the directories that changed since the snapshot are listed (and looked up one by one) */
+            this.scanFromSnapshot(snapshotRootEntry);
+            this.persistRefreshedEntries();
+            return this.rootEntry;
+        }
+
+        this.bulkLoadEnabled = this.storageProperties.getTreeBulkLoadEnabled();
+        if (this.bulkLoadEnabled) { /* One pass over the table now saves a query (or two) per path later on */
+            this.preloadPersistedEntries();
+        }
+
+        final Integer parallelism = this.storageProperties.getTreeScanParallelism() > 0 ? this.storageProperties.getTreeScanParallelism() : Runtime.getRuntime().availableProcessors();
+        if (parallelism > 1) {
+            this.scanInParallel(parallelism);
+        } else {
+            this.scanSequentially();
+        }
+
+        if (this.rootEntry == null) {
+            throw new RuntimeException("No discernable root entry was detected".formatted());
+        }
+
+        if (this.bulkLoadEnabled) {
+            final HashSet<String> scannedUrls = new HashSet<String>(this.scannedEntries.size());
+            for (Entry entry : this.scannedEntries) {
+                scannedUrls.add(entry.getUrl());
+            }
+
+            final long orphanCount = this.persistedUrlMap.keySet().stream().filter(url -> !scannedUrls.contains(url)).count();
+            if (orphanCount > 0) {
+                logger.warn("%d persisted entries have no accessible on-disk counterpart".formatted(orphanCount));
+            }
+        }
+
+        this.persistRefreshedEntries();
+        return this.rootEntry;
+    }
+
+    private void scanSequentially() throws Exception {
+        this.scanSubtree(this.resolveRootEntry(this.rootEntryPath.getPath()));
+    }
+
+    /**
+     * Walks the subtree of an already resolved directory entry (whose children are yet to be matched against the disk).
+     */
+    private void scanSubtree(Entry subtreeRootEntry) throws Exception {
+        final Deque<Entry> directoryStackDeque = new ArrayDeque<Entry>();
+
+        Files.walkFileTree(subtreeRootEntry.getEntryPath().getPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dirPath, BasicFileAttributes attrs) {
+                final Entry stackLastEntry = directoryStackDeque.peekLast();
+
+                if (stackLastEntry == null) { /* subtree root has been resolved beforehand */
+                    directoryStackDeque.offer(subtreeRootEntry);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                try {
+                    final Entry dirEntry = resolveDirectoryEntry(stackLastEntry, dirPath, attrs);
+                    directoryStackDeque.offer(dirEntry);
+                    scannedEntries.add(dirEntry);
+                } catch (Exception exception) {
+                    if (exception instanceof RuntimeException) {
+                        throw new RuntimeException(exception.getMessage(), exception.getCause());
+                    }
+
+                    logger.warn("Failed to add directory '%s' to the storage tree: %s".formatted(dirPath.toString(), exception.getMessage()));
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+
+                logger.info("Directory '%s' was successfully added to the storage tree".formatted(dirPath.toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path filePath, BasicFileAttributes attrs) {
+                try {
+                    scannedEntries.add(resolveFileEntry(directoryStackDeque.peekLast(), filePath, attrs));
+                } catch (Exception exception) {
+                    if (exception instanceof RuntimeException) {
+                        throw new RuntimeException(exception.getMessage(), exception.getCause());
+                    }
+
+                    logger.warn("Failed to add file '%s' to the storage tree: %s".formatted(filePath.toString(), exception.getMessage()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                logger.info("File '%s' was successfully added to the storage tree".formatted(filePath.toString()));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path filePath, IOException exception) {
+                if (exception != null) {
+                    logger.warn("Failed to visit file '%s': %s".formatted(filePath.toString(), exception.getMessage()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dirPath, IOException exception) {
+                if (exception != null) { /* whatever made it into the tree before the failure stays there */
+                    logger.warn("Failed to traverse the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
+                }
+
+                pruneUnresolvedChildren(directoryStackDeque.peekLast());
+                logDirectorySummary(dirPath, directoryStackDeque.peekLast());
+                subtreeConsumer.accept(directoryStackDeque.peekLast());
+                if (directoryStackDeque.size() > 1) {
+                    directoryStackDeque.removeLast();
+                }
+
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if (directoryStackDeque.size() > 1) {
+            throw new RuntimeException("%d unhandled directories left in the deque".formatted(directoryStackDeque.size() - 1));
+        }
+    }
+
+    private void scanInParallel(Integer parallelism) throws Exception {
+        final ForkJoinPool forkJoinPool = new ForkJoinPool(parallelism);
+
+        try {
+            final Entry rootEntry = this.resolveRootEntry(this.rootEntryPath.getPath());
+            this.scannedEntries.addAll(forkJoinPool.invoke(new DirectoryScan(rootEntry)));
+        } finally {
+            forkJoinPool.shutdown();
+        }
+    }
+
+    /**
+     * Scans a single directory (whose entry has already been resolved) and forks a new scan for each of its subdirectories.
+     * Only this task ever touches the children list of its directory, so no locking is required.
+     */
+    private class DirectoryScan extends RecursiveTask<List<Entry>> {
+        private final Entry dirEntry;
+
+        private DirectoryScan(Entry dirEntry) {
+            this.dirEntry = dirEntry;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            final List<DirectoryScan> subdirectoryScans = new ArrayList<DirectoryScan>();
+            final List<Entry> subtreeEntries = new ArrayList<Entry>();
+            final Path dirPath = this.dirEntry.getEntryPath().getPath();
+
+            try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dirPath)) {
+                for (Path childPath : directoryStream) {
+                    final BasicFileAttributes attrs;
+
+                    try {
+                        attrs = Files.readAttributes(childPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException exception) {
+                        logger.warn("Failed to visit file '%s': %s".formatted(childPath.toString(), exception.getMessage()));
+                        continue;
+                    }
+
+                    if (attrs.isDirectory()) {
+                        try {
+                            final Entry childEntry = resolveDirectoryEntry(this.dirEntry, childPath, attrs);
+                            subdirectoryScans.add(new DirectoryScan(childEntry));
+                            subtreeEntries.add(childEntry);
+                        } catch (Exception exception) {
+                            if (exception instanceof RuntimeException) {
+                                throw new RuntimeException(exception.getMessage(), exception.getCause());
+                            }
+
+                            logger.warn("Failed to add directory '%s' to the storage tree: %s".formatted(childPath.toString(), exception.getMessage()));
+                            continue;
+                        }
+
+                        logger.info("Directory '%s' was successfully added to the storage tree".formatted(childPath.toString()));
+                    } else {
+                        try {
+                            subtreeEntries.add(resolveFileEntry(this.dirEntry, childPath, attrs));
+                        } catch (Exception exception) {
+                            if (exception instanceof RuntimeException) {
+                                throw new RuntimeException(exception.getMessage(), exception.getCause());
+                            }
+
+                            logger.warn("Failed to add file '%s' to the storage tree: %s".formatted(childPath.toString(), exception.getMessage()));
+                            continue;
+                        }
+
+                        logger.info("File '%s' was successfully added to the storage tree".formatted(childPath.toString()));
+                    }
+                }
+            } catch (IOException exception) {
+                logger.warn("Failed to traverse the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
+            }
+
+            for (DirectoryScan subdirectoryScan : invokeAll(subdirectoryScans)) {
+                subtreeEntries.addAll(subdirectoryScan.join());
+            }
+
+            pruneUnresolvedChildren(this.dirEntry);
+            logDirectorySummary(dirPath, this.dirEntry);
+            subtreeConsumer.accept(this.dirEntry);
+            return subtreeEntries;
+        }
+    }
+
+    //**********************************************************//
+    //*                                                        *//
+    //*                     Snapshot restoration               *//
+    //*                                                        *//
+    //**********************************************************//
+
+    private void scanFromSnapshot(Entry snapshotRootEntry) throws Exception {
+        if (!this.rootEntryPath.isValidDirectory()) {
+            throw new RuntimeException("Directory '%s' is inaccessible".formatted(this.rootEntryPath.getPath().toString()));
+        }
+
+        this.rootEntry = snapshotRootEntry;
+        this.scannedEntries.add(snapshotRootEntry);
+        this.reconcileDirectory(snapshotRootEntry);
+
+        logger.info("Storage root has been successfully restored at %s".formatted(this.rootEntryPath.getPath().toString()));
+    }
+
+    /**
+     * Adopts the restored children of a directory as they are if the directory hasn't been modified since the snapshot
+     * (any file/directory created, removed or renamed within it would have changed its modification time). Otherwise the
+     * directory is listed again: restored children that are still there are kept, new ones are resolved as usual.
+     * Either way, restored children that are no longer on disk are dropped, so the tree comes out the same as a cold scan's.
+     * Every restored child is stat'ed regardless (no database access involved), as editing a file in place doesn't change
+     * the modification time of its directory and its size/modification time would otherwise be as old as the snapshot.
+     */
+    private void reconcileDirectory(Entry dirEntry) throws Exception {
+        final Path dirPath = dirEntry.getEntryPath().getPath();
+        final Long snapshotModificationTime = this.snapshot.retrieveModificationTime(dirEntry);
+        final FileTime modificationTime;
+
+        try {
+            modificationTime = Files.getLastModifiedTime(dirPath, LinkOption.NOFOLLOW_LINKS);
+        } catch (IOException exception) {
+            logger.warn("Failed to traverse the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
+            dirEntry.getChildren().clear();
+            this.subtreeConsumer.accept(dirEntry);
+            return;
+        }
+
+        this.snapshot.recordModificationTime(dirEntry, modificationTime);
+        if (snapshotModificationTime != null && snapshotModificationTime.equals(modificationTime.toMillis())) {
+            final List<Entry> missingEntries = new ArrayList<Entry>();
+            for (Entry childEntry : dirEntry.getChildren()) {
+                final BasicFileAttributes attrs;
+
+                try {
+                    attrs = Files.readAttributes(childEntry.getEntryPath().getPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException exception) {
+                    missingEntries.add(childEntry);
+                    continue;
+                }
+
+                if (childEntry.getIsDirectory() != attrs.isDirectory()) {
+                    missingEntries.add(childEntry);
+                    continue;
+                }
+
+                this.refreshFileAttributes(childEntry, attrs);
+                this.scannedEntries.add(childEntry);
+                if (childEntry.getIsDirectory()) {
+                    this.reconcileDirectory(childEntry);
+                }
+            }
+
+            /* Whatever the snapshot holds that isn't on disk is dropped, just like a listing (or a cold scan) would've dropped it */
+            for (Entry missingEntry : missingEntries) {
+                dirEntry.getChildren().remove(missingEntry);
+            }
+
+            if (!missingEntries.isEmpty()) {
+                logger.warn("%d entries of the '%s' directory snapshot have no accessible on-disk counterpart".formatted(missingEntries.size(), dirPath.toString()));
+            }
+
+            this.subtreeConsumer.accept(dirEntry);
+            return;
+        }
+
+        final HashMap<String, Entry> restoredChildrenMap = new HashMap<String, Entry>();
+        for (Entry childEntry : dirEntry.getChildren()) {
+            restoredChildrenMap.put(childEntry.getName(), childEntry);
+        }
+
+        dirEntry.getChildren().clear();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dirPath)) {
+            for (Path childPath : directoryStream) {
+                final Entry restoredEntry = restoredChildrenMap.remove(childPath.getFileName().toString());
+                final BasicFileAttributes attrs;
+
+                try {
+                    attrs = Files.readAttributes(childPath, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException exception) {
+                    logger.warn("Failed to visit file '%s': %s".formatted(childPath.toString(), exception.getMessage()));
+                    continue;
+                }
+
+                if (restoredEntry != null && restoredEntry.getIsDirectory() == attrs.isDirectory()) {
+                    this.refreshFileAttributes(restoredEntry, attrs);
+                    this.attachChildEntry(dirEntry, restoredEntry);
+                    this.scannedEntries.add(restoredEntry);
+
+                    if (restoredEntry.getIsDirectory()) {
+                        this.reconcileDirectory(restoredEntry);
+                    }
+
+                    continue;
+                }
+
+                try {
+                    if (attrs.isDirectory()) {
+                        final Entry childEntry = this.resolveDirectoryEntry(dirEntry, childPath, attrs);
+                        this.scannedEntries.add(childEntry);
+                        this.scanSubtree(childEntry);
+                    } else {
+                        this.scannedEntries.add(this.resolveFileEntry(dirEntry, childPath, attrs));
+                    }
+                } catch (Exception exception) {
+                    if (exception instanceof RuntimeException) {
+                        throw new RuntimeException(exception.getMessage(), exception.getCause());
+                    }
+
+                    logger.warn("Failed to add %s '%s' to the storage tree: %s".formatted(attrs.isDirectory() ? "directory" : "file", childPath.toString(), exception.getMessage()));
+                    continue;
+                }
+
+                logger.info("%s '%s' was successfully added to the storage tree".formatted(attrs.isDirectory() ? "Directory" : "File", childPath.toString()));
+            }
+        } catch (IOException exception) {
+            logger.warn("Failed to traverse the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
+        }
+
+        if (!restoredChildrenMap.isEmpty()) {
+            logger.warn("%d entries of the '%s' directory snapshot have no accessible on-disk counterpart".formatted(restoredChildrenMap.size(), dirPath.toString()));
+        }
+
+        this.logDirectorySummary(dirPath, dirEntry);
+        this.subtreeConsumer.accept(dirEntry);
+    }
+
+    //**********************************************************//
+    //*                                                        *//
+    //*                 Entry resolution (shared)              *//
+    //*                                                        *//
+    //**********************************************************//
+
+    private Entry resolveRootEntry(Path dirPath) {
+        try {
+            final EntryPath dirEntryPath = this.rootEntryPath.resolveFromRoot(dirPath);
+            /* Fuck Java, this is final! */ Entry entry = null;
+
+            if (!dirEntryPath.isValidDirectory()) {
+                throw new EntryInaccessibleException("Directory '%s' is inaccessible".formatted(dirEntryPath.getRelativePath().toString()));
+            }
+
+            if (this.rootEntry != null) {
+                throw new RuntimeException("Directory '%s' cannot be root as the root already exists".formatted(dirEntryPath.getPath().toString()));
+            }
+
+            if (!this.rootEntryPath.equals(dirEntryPath)) {
+                throw new RuntimeException("Directory '%s' cannot be root as it doesn't match the provided root path".formatted(dirEntryPath.getPath().toString()));
+            }
+
+            try {
+                entry = this.searchPersistedEntry(dirEntryPath).orElseThrow(() -> new EntryNotFoundException("Root entry not found".formatted())).setEntryPath(dirEntryPath);
+            } catch (EntryNotFoundException exception) {
+                logger.info("Database entry for the root directory not found. Creating root directory database entry...".formatted());
+                entry = this.storageInterface.persistEntry(this.storageInterface.createRootEntry(this.rootEntryPath));
+            }
+
+            if (entry.getChildren() == null) {
+                entry.setChildren(new EntryChildren(this.storageInterface.getStorageComparator(), this.retrievePersistedChildren(entry)));
+            }
+
+            this.recordModificationTime(entry);
+
+            this.rootEntry = entry;
+            this.scannedEntries.add(entry);
+            logger.info("Storage root has been successfully initialized at %s".formatted(dirPath.toString()));
+            return entry;
+        } catch (Exception exception) {
+            throw new RuntimeException(exception.getMessage(), exception.getCause());
+        }
+    }
+
+    private Entry resolveDirectoryEntry(Entry parentEntry, Path dirPath, BasicFileAttributes attrs) throws Exception {
+        final EntryPath dirEntryPath = parentEntry.getEntryPath().resolve(dirPath.getFileName());
+        /* Fuck Java, this is final! */ Entry entry = null;
+
+        if (!dirEntryPath.isValidDirectory()) {
+            throw new EntryInaccessibleException("Directory '%s' is inaccessible".formatted(dirEntryPath.getRelativePath().toString()));
+        }
+
+        try {
+            entry = this.searchPersistedEntry(dirEntryPath).orElseThrow(() -> new EntryNotFoundException("Database entry for directory '%s' not found".formatted(dirPath.toString()))).setEntryPath(dirEntryPath);
+
+            if (!parentEntry.getId().equals(entry.getParent().getId())) {
+                throw new EntryToParentRelationException("Directory is supposedly a child of directory '%s' but the relationship is not mirrored on the persistent level".formatted(parentEntry.getUrl()));
+            }
+
+            if (entry.getIsDirectory() == null || entry.getIsDirectory() != true) {
+                throw new EntryTypeInDatabaseMismatchException("Directory '%s' type doesn't match the type persisted to the database".formatted(entry.getUrl()));
+            }
+
+            /* Sorting at this stage and then inserting accordingly seems like a better idea than throwing it all in together and sorting on postDirectoryVisit */
+            entry.setChildren(new EntryChildren(this.storageInterface.getStorageComparator(), this.retrievePersistedChildren(entry)));
+            this.refreshFileAttributes(entry, attrs);
+        } catch (StorageEntryException exception) {
+            if (entry != null && exception instanceof EntryTypeInDatabaseMismatchException) {
+                //TODO: do something with the old entry...
+            }
+
+            logger.info("%s: %s. Creating new database entry...".formatted(exception.getClass().getSimpleName(), exception.getMessage()));
+            entry = this.storageInterface.persistEntry(this.storageInterface.createNewEntry(parentEntry, new ArrayList<>(), dirEntryPath, null, null, null));
+        } catch (Exception exception) {
+            throw new Exception(exception.getMessage(), exception.getCause());
+        }
+
+        this.recordModificationTime(entry);
+        this.attachChildEntry(parentEntry, entry);
+        return entry;
+    }
+
+    private Entry resolveFileEntry(Entry parentEntry, Path filePath, BasicFileAttributes attrs) throws Exception {
+        final EntryPath fileEntryPath = parentEntry.getEntryPath().resolve(filePath.getFileName());
+        /* Fuck Java, this is final! */ Entry entry = null;
+
+        if (!fileEntryPath.isValidFile()) {
+            throw new EntryInaccessibleException("File '%s' is inaccessible".formatted(fileEntryPath.getRelativePath().toString()));
+        }
+
+        try {
+            entry = this.searchPersistedEntry(fileEntryPath).orElseThrow(() -> new EntryNotFoundException("Database entry for file '%s' not found".formatted(filePath.toString()))).setEntryPath(fileEntryPath);
+
+            if (!parentEntry.getId().equals(entry.getParent().getId())) {
+                throw new EntryToParentRelationException("File is supposedly a child of directory '%s' but the relationship is not mirrored on the persistent level".formatted(parentEntry.getUrl()));
+            }
+
+            if (entry.getIsDirectory() == null || entry.getIsDirectory() != false) {
+                throw new EntryTypeInDatabaseMismatchException("File '%s' type doesn't match the type persisted to the database".formatted(entry.getUrl()));
+            }
+
+            this.refreshFileAttributes(entry, attrs);
+        } catch (StorageEntryException exception) {
+            if (entry != null && exception instanceof EntryTypeInDatabaseMismatchException) {
+                //TODO: do something with the old entry...
+            }
+
+            logger.info("%s: %s. Creating new database entry...".formatted(exception.getClass().getSimpleName(), exception.getMessage()));
+            entry = this.storageInterface.persistEntry(this.storageInterface.createNewEntry(parentEntry, null, fileEntryPath, null, null, null));
+        } catch (Exception exception) {
+            throw new Exception(exception.getMessage(), exception.getCause());
+        }
+
+        this.attachChildEntry(parentEntry, entry);
+        return entry;
+    }
+
+    /* Updated in place (rather than replaced by the persisted copy), so that whatever refers to the entry already keeps referring to the latest one. Persisted once the walk is over (see persistRefreshedEntries) */
+    private void refreshFileAttributes(Entry entry, BasicFileAttributes attrs) {
+        if (!entry.matchesFileAttributes(attrs)) {
+            this.refreshedEntries.add(entry.captureFileAttributes(attrs));
+        }
+    }
+
+    private void attachChildEntry(Entry parentEntry, Entry entry) {
+        ((EntryChildren) parentEntry.getChildren()).insert(entry.setParent(parentEntry)); /* The parent (rather than whatever was loaded along with the entry) is what the totals go up through */
+    }
+
+    /**
+     * Drops the persisted children that haven't been matched against the on-disk listing of their directory (no path was
+     * resolved for them), so that rows whose file/directory is gone never make it into the tree, the caches or the totals.
+     * The rows themselves are left alone, they are what the reconciliation pass reports as missing.
+     */
+    private void pruneUnresolvedChildren(Entry dirEntry) {
+        final List<Entry> unresolvedEntries = new ArrayList<Entry>();
+        for (Entry childEntry : dirEntry.getChildren()) {
+            if (childEntry.getEntryPath() == null) {
+                unresolvedEntries.add(childEntry);
+            }
+        }
+
+        for (Entry unresolvedEntry : unresolvedEntries) {
+            dirEntry.getChildren().remove(unresolvedEntry);
+        }
+
+        if (!unresolvedEntries.isEmpty()) {
+            logger.warn("%d persisted entries of the '%s' directory have no accessible on-disk counterpart".formatted(unresolvedEntries.size(), dirEntry.getUrl()));
+        }
+    }
+
+    /* Read before the directory gets listed, so that nothing that happens during the listing goes unnoticed next time around */
+    private void recordModificationTime(Entry dirEntry) {
+        if (this.snapshot == null) {
+            return;
+        }
+
+        try {
+            this.snapshot.recordModificationTime(dirEntry, Files.getLastModifiedTime(dirEntry.getEntryPath().getPath(), LinkOption.NOFOLLOW_LINKS));
+        } catch (IOException exception) {
+            logger.warn("Failed to read the modification time of the '%s' directory: %s".formatted(dirEntry.getUrl(), exception.getMessage()));
+        }
+    }
+
+    private void logDirectorySummary(Path dirPath, Entry dirEntry) {
+        long fileCount = 0, directoryCount = 0, visitedCount = 0, accessibleCount = 0;
+        for (Entry entry : dirEntry.getChildren()) {
+            visitedCount++;
+
+            if (entry.getIsAccessible()) {
+                accessibleCount++;
+            }
+
+            if (entry.getIsDirectory()) {
+                directoryCount++;
+            } else {
+                fileCount++;
+            }
+        }
+
+        logger.info("Directory '%s' visited successfully. Total entries: %d. Directory entries: %d. File entries: %d. Accessible entries: %d".formatted(dirPath.toString(), visitedCount, directoryCount, fileCount, accessibleCount));
+    }
+
+    //**********************************************************//
+    //*                                                        *//
+    //*                    Persisted entries                   *//
+    //*                                                        *//
+    //**********************************************************//
+
+    private Optional<Entry> searchPersistedEntry(EntryPath entryPath) {
+        if (this.bulkLoadEnabled) {
+            return Optional.ofNullable(this.persistedUrlMap.get("/%s".formatted(entryPath.getRelativePath().toString())));
+        }
+
+        return this.storageInterface.searchEntryByURL(entryPath.getRelativePath().toString());
+    }
+
+    private List<Entry> retrievePersistedChildren(Entry entry) {
+        if (this.bulkLoadEnabled) {
+            return new ArrayList<>(this.persistedChildrenMap.getOrDefault(entry.getId(), List.of()));
+        }
+
+        return this.storageInterface.retrieveChildEntries(entry);
+    }
+
+    /**
+     * Writes the entries whose file attributes changed on disk back to the database in batches (of the bulk load page size),
+     * rather than one update (and one lookup) per entry from within the walk. A batch that fails as a whole (e.g. one of its
+     * entries has been updated in the meantime) is retried entry by entry, so that only the offending entries are left out.
+     */
+    private void persistRefreshedEntries() {
+        final Integer batchSize = this.storageProperties.getTreeBulkLoadPageSize();
+        final List<Entry> refreshedEntries = new ArrayList<Entry>(this.refreshedEntries);
+        long failedCount = 0;
+
+        for (int iBatch = 0; iBatch < refreshedEntries.size(); iBatch += batchSize) {
+            final List<Entry> entryBatch = refreshedEntries.subList(iBatch, Math.min(iBatch + batchSize, refreshedEntries.size()));
+
+            try {
+                final List<Entry> persistedEntries = this.storageInterface.persistEntries(entryBatch);
+                for (int iEntry = 0; iEntry < entryBatch.size(); iEntry++) {
+                    entryBatch.get(iEntry).restoreVersion(persistedEntries.get(iEntry).getVersion());
+                }
+            } catch (Exception batchException) {
+                for (Entry entry : entryBatch) {
+                    try {
+                        entry.restoreVersion(this.storageInterface.persistEntry(entry).getVersion());
+                    } catch (Exception exception) {
+                        logger.warn("Failed to persist the file attributes of '%s': %s".formatted(entry.getUrl(), exception.getMessage()));
+                        failedCount++;
+                    }
+                }
+            }
+        }
+
+        this.refreshedEntries.clear();
+        if (!refreshedEntries.isEmpty()) {
+            logger.info("Persisted the file attributes of %d entries (%d failed)".formatted(refreshedEntries.size() - failedCount, failedCount));
+        }
+    }
+
+    /**
+     * Loads the whole storage table into memory using keyset-paged queries (ordered by UUID)
+     * and links every persisted entry to its persisted parent, so that the ensuing disk walk
+     * can be matched against the maps without a single per-entry database lookup.
+     */
+    private void preloadPersistedEntries() {
+        final HashMap<UUID, Entry> persistedEntryMap = new HashMap<UUID, Entry>();
+        final Integer pageSize = this.storageProperties.getTreeBulkLoadPageSize();
+        UUID lastEntryUUID = null;
+        List<Entry> entryPage;
+        long pageCount = 0;
+
+        do {
+            entryPage = this.storageInterface.retrieveEntriesAfter(lastEntryUUID, pageSize);
+            for (Entry entry : entryPage) {
+                persistedEntryMap.put(entry.getId(), entry);
+                this.persistedUrlMap.put(entry.getUrl(), entry);
+                lastEntryUUID = entry.getId();
+            }
+
+            pageCount++;
+        } while (entryPage.size() >= pageSize);
+
+        for (Entry entry : persistedEntryMap.values()) {
+            if (entry.getParent() == null) {
+                continue; /* root (or something pretending to be one) */
+            }
+
+            /* Parent is a lazy proxy at this point and only its ID can be trusted */
+            final Entry parentEntry = persistedEntryMap.get(entry.getParent().getId());
+            if (parentEntry == null) {
+                continue;
+            }
+
+            this.persistedChildrenMap.computeIfAbsent(parentEntry.getId(), (parentUUID) -> new ArrayList<>()).add(entry.setParent(parentEntry));
+        }
+
+        logger.info("Preloaded %d persisted entries in %d queries".formatted(persistedEntryMap.size(), pageCount));
+    }
+}
@@ -0,0 +1,297 @@
+package com.unulearner.backend.storage.tree;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
+import java.io.DataOutputStream;
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Deque;
+import java.util.List;
+import java.util.Date;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
+import com.unulearner.backend.storage.interfaces.StorageInterface;
+import com.unulearner.backend.storage.properties.StorageProperties;
+
+import java.io.IOException;
+
+/**
+ * Compact binary image of the storage tree, written on shutdown (and periodically) and read back on startup
+ * so that the tree doesn't have to be rebuilt from scratch (disk walk plus database) on every restart.
+ *
+ * Entries are written in pre-order with their parent referenced by position, owners are written once and
+ * referenced by position after that and every directory carries the modification time it had when its
+ * listing was last matched against the disk. On startup only the directories whose modification time
+ * differs have to be listed again (see {@code Scanner}).
+ *
+ * The snapshot is stamped with the entry count and the latest update time of the storage table, so any
+ * change made to the database behind the snapshot's back (e.g. a crash before the next snapshot) simply
+ * invalidates it.
+ */
+public class Snapshot {
+    private static final Integer SNAPSHOT_MAGIC = 0x554E5354; /* "UNST" */
+    private static final Integer SNAPSHOT_VERSION = 4;
+
+    /* Modification times this close to the moment they were read may still change within the same timestamp tick */
+    private static final Long RACY_MODIFICATION_WINDOW = 2000L;
+    private static final Long UNKNOWN_MODIFICATION_TIME = -1L;
+
+    private final Logger logger = LoggerFactory.getLogger(Snapshot.class);
+    private final ConcurrentHashMap<UUID, Long> modificationTimes;
+    private final StorageInterface storageInterface;
+    private final EntryPath rootEntryPath;
+    private final Path snapshotPath;
+
+    public Snapshot(StorageInterface storageInterface, StorageProperties storageProperties, EntryPath rootEntryPath) {
+        this.snapshotPath = Path.of(storageProperties.getTreeSnapshotUrl()).toAbsolutePath().normalize();
+        this.modificationTimes = new ConcurrentHashMap<UUID, Long>();
+        this.storageInterface = storageInterface;
+        this.rootEntryPath = rootEntryPath;
+
+        if (this.snapshotPath.startsWith(this.rootEntryPath.getPath().toAbsolutePath().normalize())) {
+            throw new RuntimeException("Storage tree snapshot '%s' cannot be located within the storage root".formatted(this.snapshotPath.toString()));
+        }
+    }
+
+    /**
+     * Remembers the modification time a directory had when its listing was (about to be) matched against the disk.
+     *
+     * @param directoryEntry The directory entry that has been listed.
+     * @param modificationTime Modification time of the directory read right before listing it.
+     */
+    public void recordModificationTime(Entry directoryEntry, FileTime modificationTime) {
+        final Long modificationMillis = modificationTime.toMillis();
+
+        if (System.currentTimeMillis() - modificationMillis < RACY_MODIFICATION_WINDOW) {
+            this.modificationTimes.put(directoryEntry.getId(), UNKNOWN_MODIFICATION_TIME);
+            return;
+        }
+
+        this.modificationTimes.put(directoryEntry.getId(), modificationMillis);
+    }
+
+    /**
+     * @param directoryEntry The directory entry in question.
+     * @return The modification time recorded for the directory, or {@code null} if it has to be listed again regardless.
+     */
+    public Long retrieveModificationTime(Entry directoryEntry) {
+        final Long modificationMillis = this.modificationTimes.get(directoryEntry.getId());
+        return modificationMillis == null || modificationMillis.equals(UNKNOWN_MODIFICATION_TIME) ? null : modificationMillis;
+    }
+
+    /**
+     * Writes the snapshot of the given tree (to a temporary file first, which then atomically replaces the old snapshot).
+     *
+     * @param rootEntry The root entry of the storage tree.
+     * @throws IOException If the snapshot couldn't be written.
+     */
+    public synchronized void save(Entry rootEntry) throws IOException {
+        /* The stamp is read before the tree so that anything committed in the meantime invalidates the snapshot */
+        final Long entryCount = this.storageInterface.countEntries();
+        final Date latestUpdate = this.storageInterface.retrieveLatestUpdate();
+        final Path temporaryPath = this.snapshotPath.resolveSibling("%s.tmp".formatted(this.snapshotPath.getFileName().toString()));
+        final HashMap<UUID, Integer> ownerIndexMap = new HashMap<UUID, Integer>();
+        final Deque<Integer> parentIndexDeque = new ArrayDeque<Integer>();
+        final Deque<Entry> entryDeque = new ArrayDeque<Entry>();
+        Integer entryIndex = 0;
+
+        Files.createDirectories(this.snapshotPath.getParent());
+        try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryPath)))) {
+            outputStream.writeInt(SNAPSHOT_MAGIC);
+            outputStream.writeInt(SNAPSHOT_VERSION);
+            this.writeString(outputStream, this.rootEntryPath.getPath().toAbsolutePath().normalize().toString());
+            outputStream.writeLong(entryCount);
+            outputStream.writeLong(latestUpdate != null ? latestUpdate.getTime() : UNKNOWN_MODIFICATION_TIME);
+
+            entryDeque.push(rootEntry);
+            parentIndexDeque.push(-1);
+            while (!entryDeque.isEmpty()) {
+                final Entry entry = entryDeque.pop();
+                final Integer parentIndex = parentIndexDeque.pop();
+
+                outputStream.writeBoolean(true); /* one more entry to go */
+                outputStream.writeLong(entry.getId().getMostSignificantBits());
+                outputStream.writeLong(entry.getId().getLeastSignificantBits());
+                outputStream.writeInt(parentIndex);
+                outputStream.writeBoolean(entry.getIsDirectory());
+                this.writeString(outputStream, entry.getName());
+                this.writeOwner(outputStream, entry.getUser(), ownerIndexMap);
+                this.writeOwner(outputStream, entry.getGroup(), ownerIndexMap);
+                outputStream.writeShort(entry.getPermissionBits());
+                outputStream.writeLong(entry.getVersion());
+                outputStream.writeLong(entry.getSize());
+                outputStream.writeLong(entry.getModified() != null ? entry.getModified().getTime() : UNKNOWN_MODIFICATION_TIME);
+                this.writeString(outputStream, entry.getContentType());
+                outputStream.writeLong(entry.getCreated() != null ? entry.getCreated().getTime() : UNKNOWN_MODIFICATION_TIME);
+                outputStream.writeLong(entry.getUpdated() != null ? entry.getUpdated().getTime() : UNKNOWN_MODIFICATION_TIME);
+                this.writeString(outputStream, entry.getDescription());
+
+                if (entry.getIsDirectory()) {
+                    outputStream.writeLong(this.modificationTimes.getOrDefault(entry.getId(), UNKNOWN_MODIFICATION_TIME));
+
+                    /* Pushed in reverse so that the children come out (and are read back) in their sorted order */
+                    final List<Entry> children = ((EntryChildren) entry.getChildren()).snapshot();
+                    for (int iEntry = children.size() - 1; iEntry >= 0; iEntry--) {
+                        entryDeque.push(children.get(iEntry));
+                        parentIndexDeque.push(entryIndex);
+                    }
+                }
+
+                entryIndex++;
+            }
+
+            outputStream.writeBoolean(false);
+        } catch (Exception exception) {
+            Files.deleteIfExists(temporaryPath);
+            throw new IOException(exception.getMessage(), exception.getCause());
+        }
+
+        Files.move(temporaryPath, this.snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("Storage tree snapshot of %d entries has been written to '%s'".formatted(entryIndex, this.snapshotPath.toString()));
+    }
+
+    /**
+     * Reads the snapshot back into a detached storage tree (and the recorded directory modification times).
+     *
+     * Nothing is thrown out of here: if the snapshot is missing, unreadable, written for another root or outdated
+     * in regards to the database, the reason is logged and {@code null} is returned so that the tree is built from scratch.
+     *
+     * @return The root entry of the restored storage tree or {@code null} if the snapshot cannot be used.
+     */
+    public Entry restore() {
+        if (!Files.isRegularFile(this.snapshotPath)) {
+            logger.info("No storage tree snapshot found at '%s'".formatted(this.snapshotPath.toString()));
+            return null;
+        }
+
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.snapshotPath)))) {
+            if (inputStream.readInt() != SNAPSHOT_MAGIC || inputStream.readInt() != SNAPSHOT_VERSION) {
+                throw new IOException("Unrecognized snapshot format".formatted());
+            }
+
+            if (!this.rootEntryPath.getPath().toAbsolutePath().normalize().toString().equals(this.readString(inputStream))) {
+                throw new IOException("Snapshot was written for a different storage root".formatted());
+            }
+
+            final Long entryCount = inputStream.readLong();
+            final Long latestUpdate = inputStream.readLong();
+            final Date persistedLatestUpdate = this.storageInterface.retrieveLatestUpdate();
+            if (!entryCount.equals(this.storageInterface.countEntries()) || !latestUpdate.equals(persistedLatestUpdate != null ? persistedLatestUpdate.getTime() : UNKNOWN_MODIFICATION_TIME)) {
+                throw new IOException("Snapshot is outdated in regards to the storage table".formatted());
+            }
+
+            final ArrayList<Entry> restoredEntries = new ArrayList<Entry>(entryCount.intValue());
+            final List<UUID> ownerList = new ArrayList<UUID>();
+            while (inputStream.readBoolean()) {
+                final UUID entryUUID = new UUID(inputStream.readLong(), inputStream.readLong());
+                final Integer parentIndex = inputStream.readInt();
+                final Boolean isDirectory = inputStream.readBoolean();
+                final String name = this.readString(inputStream);
+                final UUID user = this.readOwner(inputStream, ownerList);
+                final UUID group = this.readOwner(inputStream, ownerList);
+                final Integer permissions = (int) inputStream.readShort();
+                final Long version = inputStream.readLong();
+                final Long size = inputStream.readLong();
+                final Long modified = inputStream.readLong();
+                final String contentType = this.readString(inputStream);
+                final Long created = inputStream.readLong();
+                final Long updated = inputStream.readLong();
+                final String description = this.readString(inputStream);
+
+                final Entry parentEntry = parentIndex >= 0 ? restoredEntries.get(parentIndex) : null;
+                final Entry entry = new Entry()
+                    .setId(entryUUID)
+                    .setParent(parentEntry)
+                    .setChildren(isDirectory ? new EntryChildren(this.storageInterface.getStorageComparator()) : null)
+                    .setEntryPath(parentEntry != null ? parentEntry.getEntryPath().resolve(name) : this.rootEntryPath)
+                    .setPermissionBits(permissions)
+                    .setDescription(description)
+                    .setGroup(group)
+                    .setUser(user)
+                    .restoreVersion(version)
+                    .restoreFileAttributes(size, !modified.equals(UNKNOWN_MODIFICATION_TIME) ? new Date(modified) : null, contentType)
+                    .restoreCreated(!created.equals(UNKNOWN_MODIFICATION_TIME) ? new Date(created) : null)
+                    .restoreUpdated(!updated.equals(UNKNOWN_MODIFICATION_TIME) ? new Date(updated) : null);
+
+                if (isDirectory) {
+                    this.modificationTimes.put(entryUUID, inputStream.readLong());
+                }
+
+                if (parentEntry != null) { /* Written in order, although not necessarily in this one (the locale might've changed since) */
+                    ((EntryChildren) parentEntry.getChildren()).insert(entry);
+                }
+
+                restoredEntries.add(entry);
+            }
+
+            if (restoredEntries.isEmpty() || restoredEntries.get(0).getParent() != null) {
+                throw new IOException("Snapshot contains no root entry".formatted());
+            }
+
+            logger.info("Restored %d entries from the storage tree snapshot at '%s'".formatted(restoredEntries.size(), this.snapshotPath.toString()));
+            return restoredEntries.get(0);
+        } catch (Exception exception) {
+            logger.warn("Storage tree snapshot at '%s' cannot be used: %s".formatted(this.snapshotPath.toString(), exception.getMessage()));
+            this.modificationTimes.clear();
+            return null;
+        }
+    }
+
+    private void writeString(DataOutputStream outputStream, String string) throws IOException {
+        if (string == null) {
+            outputStream.writeInt(-1);
+            return;
+        }
+
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        outputStream.writeInt(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    private String readString(DataInputStream inputStream) throws IOException {
+        final Integer length = inputStream.readInt();
+        if (length < 0) {
+            return null;
+        }
+
+        return new String(inputStream.readNBytes(length), StandardCharsets.UTF_8);
+    }
+
+    /* Owners repeat a lot, so each one is written out in full only the first time around */
+    private void writeOwner(DataOutputStream outputStream, UUID owner, HashMap<UUID, Integer> ownerIndexMap) throws IOException {
+        final Integer ownerIndex = ownerIndexMap.get(owner);
+        if (ownerIndex != null) {
+            outputStream.writeInt(ownerIndex);
+            return;
+        }
+
+        outputStream.writeInt(ownerIndexMap.size());
+        outputStream.writeLong(owner.getMostSignificantBits());
+        outputStream.writeLong(owner.getLeastSignificantBits());
+        ownerIndexMap.put(owner, ownerIndexMap.size());
+    }
+
+    private UUID readOwner(DataInputStream inputStream, List<UUID> ownerList) throws IOException {
+        final Integer ownerIndex = inputStream.readInt();
+        if (ownerIndex < ownerList.size()) {
+            return ownerList.get(ownerIndex);
+        }
+
+        ownerList.add(new UUID(inputStream.readLong(), inputStream.readLong()));
+        return ownerList.get(ownerIndex);
+    }
+}
@@ -0,0 +1,69 @@
+package com.unulearner.backend.storage.tree;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.NavigableMap;
+
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * Entries of the storage tree by their URLs (as in {@code Entry.getUrl()}). Lookups go through a hash map,
+ * while a sorted copy of it is kept on the side so that everything under a given URL can be listed as a range,
+ * without walking the tree. Lookups and listings are lock-free, changes take turns so that both stay in step.
+ */
+public class UrlIndex {
+    private final ConcurrentSkipListMap<String, Entry> sortedEntries;
+    private final ConcurrentHashMap<String, Entry> entries;
+
+    public UrlIndex() {
+        this.sortedEntries = new ConcurrentSkipListMap<String, Entry>();
+        this.entries = new ConcurrentHashMap<String, Entry>();
+    }
+
+    public Entry get(String url) {
+        return this.entries.get(url);
+    }
+
+    public synchronized Entry put(String url, Entry entry) {
+        this.sortedEntries.put(url, entry);
+        return this.entries.put(url, entry);
+    }
+
+    public synchronized Entry putIfAbsent(String url, Entry entry) {
+        final Entry presentEntry = this.entries.putIfAbsent(url, entry);
+        if (presentEntry == null) {
+            this.sortedEntries.put(url, entry);
+        }
+
+        return presentEntry;
+    }
+
+    public synchronized Entry remove(String url) {
+        this.sortedEntries.remove(url);
+        return this.entries.remove(url);
+    }
+
+    public synchronized Boolean remove(String url, Entry entry) {
+        if (!this.entries.remove(url, entry)) {
+            return false;
+        }
+
+        this.sortedEntries.remove(url);
+        return true;
+    }
+
+    public Integer size() {
+        return this.entries.size();
+    }
+
+    /**
+     * @param prefixUrl URL of the directory (with or without the trailing slash).
+     * @return Live, sorted view of everything indexed under the directory (not including the directory itself).
+     */
+    public NavigableMap<String, Entry> under(String prefixUrl) {
+        final String prefix = prefixUrl.endsWith("/") ? prefixUrl.substring(0, prefixUrl.length() - 1) : prefixUrl;
+
+        /* Whatever starts with "prefix/" sorts between "prefix/" and "prefix0" ('0' comes right after '/') */
+        return this.sortedEntries.subMap(prefix + "/", false, prefix + "0", false);
+    }
+}
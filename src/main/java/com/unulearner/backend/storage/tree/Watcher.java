@@ -0,0 +1,501 @@
+package com.unulearner.backend.storage.tree;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.concurrent.TimeUnit;
+import java.nio.file.DirectoryStream;
+import java.nio.file.WatchService;
+import java.nio.file.WatchEvent;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.WatchKey;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
+import com.unulearner.backend.storage.interfaces.StorageInterface;
+import com.unulearner.backend.storage.properties.StorageProperties;
+
+import java.io.IOException;
+
+/**
+ * Keeps the storage tree in sync with the changes made on disk outside of the API.
+ *
+ * Every directory of the tree is registered with a {@code WatchService} (inotify on Linux). Events are
+ * coalesced per directory and only applied once the directory has been quiet for the debounce period
+ * (or has been busy for too long), so a burst of changes costs a single reconciliation:
+ *  - created/deleted entries get the directory listed again and matched against its children, the
+ *    differences are persisted to (or deleted from) the database and published into the storage caches;
+ *  - modified entries are only checked one by one (a type change escalates to a listing);
+ *  - an overflow (lost events) gets the whole subtree listed again.
+ *
+ * Changes made through the API show up here as well. The paths the API is about to touch are announced
+ * beforehand ({@code expectChange}) and are left alone for the task time-out, after which the directory
+ * is checked again (whatever was left behind by a failed task is then picked up like any other change).
+ *
+ * Children lists are only modified while holding their monitor, which is what {@code Storage} does too.
+ */
+public class Watcher {
+    private final Logger logger = LoggerFactory.getLogger(Watcher.class);
+    private final ConcurrentHashMap<WatchKey, Path> watchedDirectories;
+    private final HashMap<Path, PendingDirectory> pendingDirectories;
+    private final ConcurrentHashMap<Path, Long> expectedChanges;
+    private final UrlIndex urlIndex;
+    private final ConcurrentHashMap<UUID, Entry> entryCache;
+    private final StorageInterface storageInterface;
+    private final WatchService watchService;
+    private final LockManager lockManager;
+    private final QuotaLedger quotaLedger;
+    private final OwnerIndex ownerIndex;
+    private final EntryPath rootEntryPath;
+    private final Long expectationMillis;
+    private final Long debounceMillis;
+    private final Long maximumDelayMillis;
+    private volatile Boolean watchLimitReached;
+    private Thread thread;
+
+    public Watcher(StorageInterface storageInterface, StorageProperties storageProperties, EntryPath rootEntryPath, LockManager lockManager, QuotaLedger quotaLedger, OwnerIndex ownerIndex, ConcurrentHashMap<UUID, Entry> entryCache, UrlIndex urlIndex) throws IOException {
+        this.expectationMillis = (storageProperties.getTaskTimeOutInSeconds() + storageProperties.getTaskTimeOutGracePeriodInSeconds()) * 1000L;
+        this.watchService = rootEntryPath.getPath().getFileSystem().newWatchService();
+        this.debounceMillis = storageProperties.getTreeWatchDebounceInMillis().longValue();
+        this.watchedDirectories = new ConcurrentHashMap<WatchKey, Path>();
+        this.pendingDirectories = new HashMap<Path, PendingDirectory>();
+        this.expectedChanges = new ConcurrentHashMap<Path, Long>();
+        this.maximumDelayMillis = Math.max(this.debounceMillis * 10, 1000L);
+        this.storageInterface = storageInterface;
+        this.rootEntryPath = rootEntryPath;
+        this.watchLimitReached = false;
+        this.entryCache = entryCache;
+        this.lockManager = lockManager;
+        this.quotaLedger = quotaLedger;
+        this.ownerIndex = ownerIndex;
+        this.urlIndex = urlIndex;
+        this.thread = null;
+    }
+
+    /**
+     * Starts watching a directory. Events are collected right away but only applied once the watcher has been started.
+     *
+     * @param dirEntry The directory entry (its children should already be listed).
+     */
+    public void register(Entry dirEntry) {
+        this.register(dirEntry.getEntryPath().getPath());
+    }
+
+    private void register(Path dirPath) {
+        if (this.watchLimitReached) {
+            return;
+        }
+
+        try {
+            this.watchedDirectories.put(dirPath.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), dirPath);
+        } catch (ClosedWatchServiceException exception) {
+            return;
+        } catch (IOException exception) {
+            if (exception.getMessage() != null && exception.getMessage().contains("limit")) {
+                logger.warn("Failed to watch the '%s' directory: %s. Directories registered from now on are not watched!".formatted(dirPath.toString(), exception.getMessage()));
+                this.watchLimitReached = true;
+                return;
+            }
+
+            logger.warn("Failed to watch the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
+        }
+    }
+
+    /**
+     * Starts applying the collected (and all the upcoming) changes to the storage tree.
+     */
+    public synchronized void start() {
+        if (this.thread != null) {
+            throw new RuntimeException("Storage tree watcher has already been started".formatted());
+        }
+
+        this.thread = new Thread(this::watch, "storage-watcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+
+        logger.info("Storage tree watcher has been started. Watched directories: %d".formatted(this.watchedDirectories.size()));
+    }
+
+    /**
+     * Stops watching (for good).
+     */
+    public synchronized void stop() {
+        try {
+            this.watchService.close();
+        } catch (IOException exception) {
+            logger.warn("Failed to close the storage tree watch service: %s".formatted(exception.getMessage()));
+        }
+
+        if (this.thread != null) {
+            this.thread.interrupt();
+        }
+    }
+
+    /**
+     * Announces a change that is about to be made on disk through the API, so that it isn't mistaken for an outside one.
+     *
+     * @param path The path that is about to be created, moved or removed.
+     */
+    public void expectChange(Path path) {
+        this.expectedChanges.put(path, System.currentTimeMillis());
+    }
+
+    private Long expectedUntil(Path path) {
+        final Long expectedAt = this.expectedChanges.get(path);
+        if (expectedAt == null) {
+            return null;
+        }
+
+        if (System.currentTimeMillis() - expectedAt >= this.expectationMillis) {
+            this.expectedChanges.remove(path, expectedAt);
+            return null;
+        }
+
+        return expectedAt + this.expectationMillis;
+    }
+
+    private void watch() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                final Long waitMillis = this.pendingDirectories.values().stream().map(pendingDirectory -> pendingDirectory.dueMillis).min(Long::compare).map(dueMillis -> dueMillis - System.currentTimeMillis()).orElse(null);
+
+                WatchKey watchKey = waitMillis == null ? this.watchService.take() : this.watchService.poll(Math.max(waitMillis, 0L), TimeUnit.MILLISECONDS);
+                while (watchKey != null) {
+                    this.collectEvents(watchKey);
+                    watchKey = this.watchService.poll();
+                }
+
+                this.reconcileDueDirectories();
+            } catch (InterruptedException | ClosedWatchServiceException exception) {
+                break;
+            } catch (Exception exception) {
+                logger.error("Storage tree watcher failed to apply the changes: %s".formatted(exception.getMessage()));
+            }
+        }
+
+        logger.info("Storage tree watcher has been stopped".formatted());
+    }
+
+    private void collectEvents(WatchKey watchKey) {
+        final Path dirPath = this.watchedDirectories.get(watchKey);
+
+        for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+            if (dirPath == null) {
+                continue;
+            }
+
+            final PendingDirectory pendingDirectory = this.pendingDirectories.computeIfAbsent(dirPath, path -> new PendingDirectory());
+            final Long now = System.currentTimeMillis();
+
+            pendingDirectory.dueMillis = Math.min(now + this.debounceMillis, pendingDirectory.firstEventMillis + this.maximumDelayMillis);
+            if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW) {
+                pendingDirectory.recursive = true;
+                pendingDirectory.relist = true;
+            } else if (watchEvent.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                pendingDirectory.modifiedNames.add(watchEvent.context().toString());
+            } else {
+                pendingDirectory.relist = true;
+            }
+        }
+
+        if (!watchKey.reset()) { /* The directory is gone (or no longer accessible) */
+            this.watchedDirectories.remove(watchKey);
+        }
+    }
+
+    private void reconcileDueDirectories() {
+        final List<Path> dueDirectories = new ArrayList<Path>();
+        final Long now = System.currentTimeMillis();
+
+        for (Path dirPath : this.pendingDirectories.keySet()) {
+            if (this.pendingDirectories.get(dirPath).dueMillis <= now) {
+                dueDirectories.add(dirPath);
+            }
+        }
+
+        /* Parents first, whatever they pick up in their subdirectories along the way doesn't have to be done twice */
+        Collections.sort(dueDirectories, Comparator.comparing(Path::getNameCount));
+        for (Path dirPath : dueDirectories) {
+            final PendingDirectory pendingDirectory = this.pendingDirectories.remove(dirPath);
+
+            try {
+                final Long deferredUntil = this.reconcileDirectory(dirPath, pendingDirectory);
+                if (deferredUntil != null) { /* Checked again once the API is done with it (or should have been) */
+                    final PendingDirectory deferredDirectory = this.pendingDirectories.computeIfAbsent(dirPath, path -> new PendingDirectory());
+                    deferredDirectory.dueMillis = Math.max(deferredDirectory.dueMillis, deferredUntil);
+                    deferredDirectory.relist = true;
+                }
+            } catch (Exception exception) {
+                logger.warn("Failed to apply the changes made to the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
+            }
+        }
+
+        this.expectedChanges.entrySet().removeIf(expectedChange -> now - expectedChange.getValue() >= this.expectationMillis);
+    }
+
+    /**
+     * @return The time until which (some of) the changes have been deferred, or {@code null} if nothing has.
+     */
+    private Long reconcileDirectory(Path dirPath, PendingDirectory pendingDirectory) {
+        final Entry dirEntry = this.urlIndex.get("/%s".formatted(this.rootEntryPath.getPath().relativize(dirPath).toString()));
+        if (dirEntry == null || !dirEntry.getIsDirectory() || dirEntry.getChildren() == null) {
+            return null; /* Not (or no longer) in the tree, whatever happened to it is up to its parent */
+        }
+
+        if (!Files.isDirectory(dirPath, LinkOption.NOFOLLOW_LINKS)) {
+            return null; /* Same goes for it being gone */
+        }
+
+        if (!pendingDirectory.relist) {
+            synchronized (dirEntry.getChildren()) {
+                for (String modifiedName : pendingDirectory.modifiedNames) {
+                    final Entry childEntry = dirEntry.retrieveChild(modifiedName);
+                    final Path childPath = dirPath.resolve(modifiedName);
+                    if (childEntry != null) { /* Whatever changed, its attributes are to be read anew */
+                        childEntry.getEntryPath().invalidateAttributes();
+                    }
+
+                    /* Modifications that (should) come with a create/delete event of their own, the listing takes care of them */
+                    if (childEntry == null || !Files.exists(childPath, LinkOption.NOFOLLOW_LINKS) || !childEntry.getIsDirectory().equals(Files.isDirectory(childPath, LinkOption.NOFOLLOW_LINKS))) {
+                        pendingDirectory.relist = true;
+                        break;
+                    }
+                }
+            }
+
+        }
+
+        final Long deferredUntil = pendingDirectory.relist ? this.reconcileSubtree(dirEntry, pendingDirectory.recursive) : null;
+        this.refreshModifiedEntries(dirEntry, pendingDirectory.modifiedNames);
+        return deferredUntil;
+    }
+
+    /**
+     * Files modified in place keep their entries, only the persisted size/modification time are brought up to date.
+     * The entries are updated in place (rather than replaced by the persisted copy), so they stay wherever they are referred from.
+     */
+    private void refreshModifiedEntries(Entry dirEntry, Set<String> modifiedNames) {
+        try (LockManager.Locks locks = this.lockManager.lockForWriting(dirEntry)) { /* Takes turns with the storage mutations */
+            for (String modifiedName : modifiedNames) {
+                final Entry childEntry = dirEntry.retrieveChild(modifiedName);
+                if (childEntry == null || childEntry.getIsDirectory()) {
+                    continue;
+                }
+
+                try {
+                    final BasicFileAttributes fileAttributes = childEntry.getEntryPath().readFileAttributes();
+                    if (!childEntry.matchesFileAttributes(fileAttributes)) {
+                        childEntry.aggregateUpwards(false); /* The old size goes out of the totals and the new one comes in */
+                        this.quotaLedger.account(childEntry, false);
+                        try {
+                            childEntry.restoreVersion(this.storageInterface.persistEntry(childEntry.captureFileAttributes(fileAttributes)).getVersion());
+                        } finally {
+                            childEntry.aggregateUpwards(true);
+                            this.quotaLedger.account(childEntry, true);
+                            ((EntryChildren) dirEntry.getChildren()).reindex(childEntry);
+                        }
+                    }
+                } catch (Exception exception) {
+                    logger.warn("Failed to update the '%s' file attributes: %s".formatted(childEntry.getUrl(), exception.getMessage()));
+                }
+            }
+        }
+    }
+
+    private Long reconcileSubtree(Entry dirEntry, Boolean recursive) {
+        final List<Entry> listedDirectories = new ArrayList<Entry>();
+        final Long deferredUntil = this.relistDirectory(dirEntry, listedDirectories, recursive);
+
+        for (Entry childEntry : listedDirectories) {
+            final Long childDeferredUntil = this.reconcileSubtree(childEntry, recursive);
+            if (childDeferredUntil != null) { /* The deferred subdirectory is going to be checked by itself */
+                final PendingDirectory deferredDirectory = this.pendingDirectories.computeIfAbsent(childEntry.getEntryPath().getPath(), path -> new PendingDirectory());
+                deferredDirectory.dueMillis = Math.max(deferredDirectory.dueMillis, childDeferredUntil);
+                deferredDirectory.relist = true;
+            }
+        }
+
+        return deferredUntil;
+    }
+
+    /**
+     * Matches the children of a directory against its on-disk listing.
+     *
+     * @param listedDirectories Collects the subdirectories to be listed next (the new ones, or all of them if {@code recursive}).
+     */
+    private Long relistDirectory(Entry dirEntry, List<Entry> listedDirectories, Boolean recursive) {
+        final Path dirPath = dirEntry.getEntryPath().getPath();
+        Long deferredUntil = null;
+
+        try (LockManager.Locks locks = this.lockManager.lockForWriting(dirEntry)) { /* Takes turns with the storage mutations */
+            synchronized (dirEntry.getChildren()) {
+                final HashMap<String, Entry> childEntryMap = new HashMap<String, Entry>();
+                for (Entry childEntry : dirEntry.getChildren()) {
+                    childEntryMap.put(childEntry.getName(), childEntry);
+                }
+
+                try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(dirPath)) {
+                    for (Path childPath : directoryStream) {
+                        final EntryPath childEntryPath = dirEntry.getEntryPath().resolve(childPath.getFileName());
+                        final Boolean isDirectory = Files.isDirectory(childPath, LinkOption.NOFOLLOW_LINKS);
+                        final Entry childEntry = childEntryMap.remove(childPath.getFileName().toString());
+
+                        if (isDirectory ? !childEntryPath.isValidDirectory() : !childEntryPath.isValidFile()) {
+                            continue; /* Inaccessible entries (if known) are kept as they are, their metadata is still worth something */
+                        }
+
+                        if (childEntry != null && childEntry.getIsDirectory().equals(isDirectory)) {
+                            if (recursive && isDirectory) {
+                                listedDirectories.add(childEntry);
+                            }
+
+                            continue;
+                        }
+
+                        final Long childExpectedUntil = this.expectedUntil(childPath);
+                        if (childExpectedUntil != null) {
+                            deferredUntil = deferredUntil == null ? childExpectedUntil : Math.max(deferredUntil, childExpectedUntil);
+                            continue;
+                        }
+
+                        if (childEntry != null) {
+                            logger.info("%s '%s' has been replaced on disk by a %s".formatted(childEntry.getIsDirectory() ? "Directory" : "File", childEntry.getUrl(), isDirectory ? "directory" : "file"));
+                            this.detachChildEntry(dirEntry, childEntry);
+                        }
+
+                        final Entry newEntry = this.resolveChildEntry(dirEntry, childEntryPath, isDirectory);
+                        if (newEntry != null && isDirectory) {
+                            listedDirectories.add(newEntry);
+                        }
+                    }
+                } catch (IOException exception) {
+                    logger.warn("Failed to traverse the '%s' directory: %s".formatted(dirPath.toString(), exception.getMessage()));
+                    return null;
+                }
+
+                for (Entry childEntry : childEntryMap.values()) {
+                    final Long childExpectedUntil = this.expectedUntil(childEntry.getEntryPath().getPath());
+                    if (childExpectedUntil != null) {
+                        deferredUntil = deferredUntil == null ? childExpectedUntil : Math.max(deferredUntil, childExpectedUntil);
+                        continue;
+                    }
+
+                    logger.info("%s '%s' has been removed from disk".formatted(childEntry.getIsDirectory() ? "Directory" : "File", childEntry.getUrl()));
+                    this.detachChildEntry(dirEntry, childEntry);
+                }
+            }
+        }
+
+        return deferredUntil;
+    }
+
+    /* Persisted entries left behind at the very same url (orphans) are adopted rather than duplicated */
+    private Entry resolveChildEntry(Entry dirEntry, EntryPath childEntryPath, Boolean isDirectory) {
+        Entry entry = this.storageInterface.searchEntryByURL(childEntryPath.getRelativePath().toString()).orElse(null);
+
+        try {
+            if (entry != null && !isDirectory.equals(entry.getIsDirectory())) {
+                logger.info("%s '%s' type doesn't match the type persisted to the database. Replacing the database entry...".formatted(isDirectory ? "Directory" : "File", entry.getUrl()));
+                this.storageInterface.deleteEntry(entry);
+                entry = null;
+            }
+
+            if (entry == null) {
+                logger.info("%s '%s' has been added on disk. Creating new database entry...".formatted(isDirectory ? "Directory" : "File", childEntryPath.getRelativePath().toString()));
+                entry = this.storageInterface.persistEntry(this.storageInterface.createNewEntry(dirEntry, isDirectory ? new ArrayList<>() : null, childEntryPath, null, null, null));
+            } else {
+                logger.info("%s '%s' has been added on disk. Database entry found, adopting it...".formatted(isDirectory ? "Directory" : "File", entry.getUrl()));
+            }
+        } catch (Exception exception) {
+            logger.warn("Failed to add %s '%s' to the storage tree: %s".formatted(isDirectory ? "directory" : "file", childEntryPath.getRelativePath().toString(), exception.getMessage()));
+            return null;
+        }
+
+        entry.setParent(dirEntry).setEntryPath(childEntryPath).setChildren(isDirectory ? new EntryChildren(this.storageInterface.getStorageComparator()) : null);
+        if (isDirectory) { /* Before it gets listed, so that nothing that happens in the meantime goes unnoticed */
+            this.register(childEntryPath.getPath());
+        }
+
+        final Entry replacedEntry = ((EntryChildren) dirEntry.getChildren()).insert(entry);
+        if (replacedEntry != null) {
+            replacedEntry.aggregateUpwards(false);
+            this.quotaLedger.account(replacedEntry, false);
+            this.ownerIndex.remove(replacedEntry);
+        }
+
+        entry.aggregateUpwards(true);
+        this.quotaLedger.account(entry, true);
+        this.ownerIndex.add(entry);
+        dirEntry.indexChild(entry);
+
+        this.entryCache.put(entry.getId(), entry);
+        this.urlIndex.put(entry.getUrl(), entry);
+        return entry;
+    }
+
+    /* Children go before their parents (database-wise), the entries that fail to be deleted stay behind as orphans */
+    private void detachChildEntry(Entry dirEntry, Entry entry) {
+        final List<Entry> subtreeEntries = new ArrayList<Entry>();
+        this.collectSubtree(entry, subtreeEntries);
+        if (dirEntry.getChildren().remove(entry)) {
+            dirEntry.unindexChild(entry);
+            entry.aggregateUpwards(false); /* The whole subtree goes along with it */
+        }
+
+        for (Entry subtreeEntry : subtreeEntries) {
+            this.entryCache.remove(subtreeEntry.getId(), subtreeEntry);
+            this.urlIndex.remove(subtreeEntry.getUrl(), subtreeEntry);
+            this.quotaLedger.account(subtreeEntry, false);
+            this.ownerIndex.remove(subtreeEntry);
+
+            try {
+                this.storageInterface.deleteEntry(subtreeEntry);
+            } catch (Exception exception) {
+                logger.warn("Failed to delete the database entry of %s '%s': %s".formatted(subtreeEntry.getIsDirectory() ? "directory" : "file", subtreeEntry.getUrl(), exception.getMessage()));
+            }
+        }
+    }
+
+    private void collectSubtree(Entry entry, List<Entry> subtreeEntries) {
+        if (entry.getChildren() != null) {
+            synchronized (entry.getChildren()) {
+                for (Entry childEntry : entry.getChildren()) {
+                    this.collectSubtree(childEntry, subtreeEntries);
+                }
+            }
+        }
+
+        subtreeEntries.add(entry);
+    }
+
+    private class PendingDirectory {
+        private final Set<String> modifiedNames;
+        private final Long firstEventMillis;
+        private Boolean recursive;
+        private Boolean relist;
+        private Long dueMillis;
+
+        private PendingDirectory() {
+            this.firstEventMillis = System.currentTimeMillis();
+            this.dueMillis = this.firstEventMillis;
+            this.modifiedNames = new HashSet<String>();
+            this.recursive = false;
+            this.relist = false;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.unulearner.backend.configuration.serialization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.unulearner.backend.dictionary.models.Word;
+import com.unulearner.backend.dictionary.models.Language;
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryOrder;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
+import com.unulearner.backend.storage.tasks.exception.Option;
+import com.unulearner.backend.storage.tasks.response.Response;
+
+/**
+ * Payload size and serialization time of the responses in JSON, Smile and CBOR (the mappers are built the same way the
+ * application builds them). Not part of the regular test run: {@code mvn test -Dtest=BinaryFormatBenchmark -Dbenchmark=true}
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class BinaryFormatBenchmark {
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 15;
+
+	private final ObjectMapper jsonObjectMapper = Jackson2ObjectMapperBuilder.json().build();
+	private final ObjectMapper smileObjectMapper = new BinaryFormatConfig().smileHttpMessageConverter(Jackson2ObjectMapperBuilder.json()).getObjectMapper();
+	private final ObjectMapper cborObjectMapper = new BinaryFormatConfig().cborHttpMessageConverter(Jackson2ObjectMapperBuilder.json()).getObjectMapper();
+
+	@Test
+	void entryTree() throws Exception {
+		final Entry rootEntry = directory("storage");
+		for (int iDirectory = 0; iDirectory < 20; iDirectory++) {
+			final Entry dirEntry = directory("directory %d".formatted(iDirectory));
+			for (int iFile = 0; iFile < 1000; iFile++) {
+				final Entry fileEntry = entry("file %d.txt".formatted(iFile)).restoreFileAttributes((long) iFile * 1024L, new Date(), "text/plain");
+				((EntryChildren) dirEntry.getChildren()).insert(fileEntry.setParent(dirEntry));
+			}
+
+			((EntryChildren) rootEntry.getChildren()).insert(dirEntry.setParent(rootEntry));
+		}
+
+		this.compare("Entry tree (20 directories, 20000 files)", rootEntry);
+	}
+
+	@Test
+	void wordList() throws Exception {
+		final Language language = new Language().setId(UUID.randomUUID()).setName("English").setCode("en");
+		final List<Word> words = new ArrayList<Word>();
+		for (int iWord = 0; iWord < 50000; iWord++) {
+			words.add(new Word().setId(UUID.randomUUID()).setWord("word%d".formatted(iWord)).setLanguage(language));
+		}
+
+		this.compare("Word list (50000 words)", words);
+	}
+
+	@Test
+	void taskResponses() throws Exception {
+		final List<Response> responses = new ArrayList<Response>();
+		for (int iResponse = 0; iResponse < 10000; iResponse++) {
+			final ArrayList<Option> options = new ArrayList<Option>(Arrays.asList(
+				new Option("keep", "Keep both", new Option.Parameter("newName", "New name", "String")),
+				new Option("skip", "Skip"),
+				new Option("overwrite", "Overwrite")
+			));
+
+			responses.add(new Response(UUID.randomUUID(), "EXECUTING", null, options));
+		}
+
+		this.compare("Task responses (10000)", responses);
+	}
+
+	private void compare(String payloadName, Object payload) throws Exception {
+		final byte[] json = this.jsonObjectMapper.writeValueAsBytes(payload);
+		final byte[] smile = this.smileObjectMapper.writeValueAsBytes(payload);
+		final byte[] cbor = this.cborObjectMapper.writeValueAsBytes(payload);
+
+		final double jsonTime = time(this.jsonObjectMapper, payload);
+		final double smileTime = time(this.smileObjectMapper, payload);
+		final double cborTime = time(this.cborObjectMapper, payload);
+
+		System.out.println(payloadName);
+		System.out.println("  %-6s %12s %8s %12s".formatted("format", "bytes", "size", "median ms"));
+		System.out.println("  %-6s %12d %7.1f%% %12.2f".formatted("JSON", json.length, 100.0, jsonTime));
+		System.out.println("  %-6s %12d %7.1f%% %12.2f".formatted("Smile", smile.length, 100.0 * smile.length / json.length, smileTime));
+		System.out.println("  %-6s %12d %7.1f%% %12.2f".formatted("CBOR", cbor.length, 100.0 * cbor.length / json.length, cborTime));
+
+		assertTrue(smile.length < json.length, "Smile payload is expected to be smaller than the JSON one");
+		assertTrue(cbor.length < json.length, "CBOR payload is expected to be smaller than the JSON one");
+	}
+
+	private static double time(ObjectMapper objectMapper, Object payload) throws Exception {
+		for (int iRound = 0; iRound < WARMUP_ROUNDS; iRound++) {
+			objectMapper.writeValueAsBytes(payload);
+		}
+
+		final long[] times = new long[MEASURED_ROUNDS];
+		for (int iRound = 0; iRound < MEASURED_ROUNDS; iRound++) {
+			final long startTime = System.nanoTime();
+			objectMapper.writeValueAsBytes(payload);
+			times[iRound] = System.nanoTime() - startTime;
+		}
+
+		Arrays.sort(times);
+		return times[MEASURED_ROUNDS / 2] / 1e6;
+	}
+
+	private static Entry entry(String name) {
+		final Entry entry = new Entry().setId(UUID.randomUUID()).setName(name).setUser(UUID.randomUUID()).setGroup(UUID.randomUUID());
+		entry.setDescription("Uploaded by a member").setPermissions("0644");
+		return entry.restoreCreated(new Date()).restoreUpdated(new Date());
+	}
+
+	private static Entry directory(String name) {
+		return entry(name).setChildren(new EntryChildren(EntryOrder.COMPARATOR));
+	}
+}
@@ -0,0 +1,205 @@
+package com.unulearner.backend.storage;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryPage;
+import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryOrder;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
+import com.unulearner.backend.storage.interfaces.StorageInterface;
+import com.unulearner.backend.storage.interfaces.SecurityInterface;
+import com.unulearner.backend.storage.properties.StorageProperties;
+
+/**
+ * Paged directory listings (see {@code Storage.retrieveChildEntries} with a cursor), walked page by page and checked
+ * against the children sorted up front. The storage is kept offline, nothing but the listing itself is exercised.
+ */
+class StorageListingTest {
+	private static final UUID ALICE = UUID.fromString("00000000-0000-4000-8000-00000000000a");
+	private static final UUID BOB = UUID.fromString("00000000-0000-4000-8000-00000000000b");
+
+	@TempDir
+	Path rootPath;
+
+	private Storage storage;
+	private Entry dirEntry;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		final StorageProperties storageProperties = new StorageProperties();
+		storageProperties.setTreeReconcileOffline(true);
+		storageProperties.setTreeReconcileReportUrl(this.rootPath.resolveSibling(this.rootPath.getFileName() + ".report").toString()); /* Never written, the storage is offline */
+
+		final StorageInterface storageInterface = mock(StorageInterface.class);
+		when(storageInterface.getRootDirectoryPath()).thenReturn(new EntryPath(this.rootPath));
+		this.storage = new Storage(mock(SecurityInterface.class), storageInterface, storageProperties, null);
+
+		/* Few distinct update times, sizes and owners, so that most of the entries tie with some other ones */
+		final List<Entry> childEntries = new ArrayList<Entry>();
+		for (int iEntry = 0; iEntry < 57; iEntry++) {
+			childEntries.add(file("file %d.txt".formatted(iEntry), (long) (iEntry % 4) * 100L, 1700000000000L + (iEntry % 3) * 1000L, iEntry % 2 == 0 ? ALICE : BOB));
+		}
+
+		for (int iEntry = 0; iEntry < 5; iEntry++) {
+			childEntries.add(new Entry().setName("directory %d".formatted(iEntry)).setUser(ALICE).restoreUpdated(new Date(1700000000000L)).setChildren(new ArrayList<Entry>()));
+		}
+
+		this.dirEntry = new Entry().setName("listed").setChildren(new EntryChildren(EntryOrder.COMPARATOR, childEntries));
+	}
+
+	@Test
+	void pagesFollowEveryOrderingBothWays() {
+		for (EntryChildren.Ordering ordering : EntryChildren.Ordering.values()) {
+			for (Boolean descending : new Boolean[] { false, true }) {
+				assertEquals(expected(ordering, descending, null), this.listAll(ordering, descending, null, 10, 1000), "%s %s".formatted(ordering, descending ? "desc" : "asc"));
+			}
+		}
+	}
+
+	@Test
+	void tiesAreBrokenByName() {
+		for (EntryChildren.Ordering ordering : new EntryChildren.Ordering[] { EntryChildren.Ordering.UPDATED, EntryChildren.Ordering.SIZE, EntryChildren.Ordering.OWNER }) {
+			final List<Entry> listedEntries = this.listAll(ordering, false, null, 7, 1000);
+			for (int iEntry = 1; iEntry < listedEntries.size(); iEntry++) {
+				final Entry previousEntry = listedEntries.get(iEntry - 1), entry = listedEntries.get(iEntry);
+				if (key(ordering).compare(previousEntry, entry) == 0) {
+					assertTrue(EntryOrder.COMPARATOR.compare(previousEntry, entry) < 0, "%s: '%s' listed before '%s'".formatted(ordering, previousEntry.getName(), entry.getName()));
+				}
+			}
+		}
+	}
+
+	@Test
+	void lastPageHasNoCursor() {
+		final EntryPage entryPage = this.storage.retrieveChildEntries(this.dirEntry, EntryChildren.Ordering.NAME, false, null, null, 62, 1000);
+
+		assertEquals(62, entryPage.getChildren().size());
+		assertNull(entryPage.getCursor());
+	}
+
+	@Test
+	void listingPicksUpAfterTheLastEntryIsRemoved() throws Exception {
+		for (EntryChildren.Ordering ordering : EntryChildren.Ordering.values()) {
+			for (Boolean descending : new Boolean[] { false, true }) {
+				this.setUp();
+
+				final EntryPage firstPage = this.storage.retrieveChildEntries(this.dirEntry, ordering, descending, null, null, 10, 1000);
+				final Entry lastEntry = firstPage.getChildren().get(9);
+				assertTrue(this.dirEntry.getChildren().remove(lastEntry));
+
+				final EntryPage secondPage = this.storage.retrieveChildEntries(this.dirEntry, ordering, descending, firstPage.getCursor(), null, 10, 1000);
+				assertEquals(expected(ordering, descending, null).subList(9, 19), secondPage.getChildren(), "%s %s".formatted(ordering, descending ? "desc" : "asc"));
+			}
+		}
+	}
+
+	@Test
+	void listingPicksUpAfterTheLastEntryIsChanged() {
+		final EntryPage firstPage = this.storage.retrieveChildEntries(this.dirEntry, EntryChildren.Ordering.SIZE, false, null, null, 10, 1000);
+		final Entry lastEntry = firstPage.getChildren().get(9);
+		synchronized (this.dirEntry.getChildren()) {
+			lastEntry.restoreFileAttributes(1000000L, null, "text/plain");
+			((EntryChildren) this.dirEntry.getChildren()).reindex(lastEntry);
+		}
+
+		final EntryPage secondPage = this.storage.retrieveChildEntries(this.dirEntry, EntryChildren.Ordering.SIZE, false, firstPage.getCursor(), null, 10, 1000);
+		assertEquals(expected(EntryChildren.Ordering.SIZE, false, null).subList(9, 19), secondPage.getChildren());
+	}
+
+	@Test
+	void filteredPagesComeBackShortWithACursor() {
+		final Predicate<Entry> filter = entry -> entry.getName().endsWith("7.txt");
+		final EntryPage firstPage = this.storage.retrieveChildEntries(this.dirEntry, EntryChildren.Ordering.NAME, false, null, filter, 10, 5);
+
+		assertTrue(firstPage.getChildren().size() < 10);
+		assertNotNull(firstPage.getCursor());
+		assertEquals(expected(EntryChildren.Ordering.NAME, false, filter), this.listAll(EntryChildren.Ordering.NAME, false, filter, 10, 5));
+		assertEquals(expected(EntryChildren.Ordering.OWNER, true, filter), this.listAll(EntryChildren.Ordering.OWNER, true, filter, 2, 5));
+	}
+
+	@Test
+	void cursorOfAnotherListingIsRejected() {
+		final String cursor = this.storage.retrieveChildEntries(this.dirEntry, EntryChildren.Ordering.SIZE, false, null, null, 10, 1000).getCursor();
+
+		assertThrows(IllegalArgumentException.class, () -> this.storage.retrieveChildEntries(this.dirEntry, EntryChildren.Ordering.NAME, false, cursor, null, 10, 1000));
+		assertThrows(IllegalArgumentException.class, () -> this.storage.retrieveChildEntries(this.dirEntry, EntryChildren.Ordering.SIZE, true, cursor, null, 10, 1000));
+	}
+
+	@Test
+	void filesHaveNothingToList() {
+		final Entry fileEntry = this.dirEntry.getChildren().get(10);
+		final EntryPage entryPage = this.storage.retrieveChildEntries(fileEntry, EntryChildren.Ordering.NAME, false, null, null, 10, 1000);
+
+		assertTrue(entryPage.getChildren().isEmpty());
+		assertNull(entryPage.getCursor());
+	}
+
+	private List<Entry> listAll(EntryChildren.Ordering ordering, Boolean descending, Predicate<Entry> filter, Integer pageSize, Integer scanLimit) {
+		final List<Entry> listedEntries = new ArrayList<Entry>();
+		String cursor = null;
+		int pageCount = 0;
+
+		do {
+			final EntryPage entryPage = this.storage.retrieveChildEntries(this.dirEntry, ordering, descending, cursor, filter, pageSize, scanLimit);
+			assertTrue(entryPage.getChildren().size() <= pageSize);
+			listedEntries.addAll(entryPage.getChildren());
+			cursor = entryPage.getCursor();
+			assertTrue(++pageCount <= this.dirEntry.getChildren().size() + 1, "The listing never ends");
+		} while (cursor != null);
+
+		return listedEntries;
+	}
+
+	private List<Entry> expected(EntryChildren.Ordering ordering, Boolean descending, Predicate<Entry> filter) {
+		final List<Entry> expectedEntries = new ArrayList<Entry>();
+		for (Entry childEntry : this.dirEntry.getChildren()) {
+			if (filter == null || filter.test(childEntry)) {
+				expectedEntries.add(childEntry);
+			}
+		}
+
+		expectedEntries.sort(key(ordering).thenComparing(EntryOrder.COMPARATOR));
+		if (descending) {
+			Collections.reverse(expectedEntries);
+		}
+
+		return expectedEntries;
+	}
+
+	private static Comparator<Entry> key(EntryChildren.Ordering ordering) {
+		switch (ordering) {
+			case UPDATED:
+				return Comparator.comparing(Entry::getUpdated);
+			case SIZE:
+				return Comparator.comparing(Entry::getSize);
+			case OWNER:
+				return Comparator.comparing(Entry::getUser);
+			default:
+				return (entry, otherEntry) -> 0;
+		}
+	}
+
+	private static Entry file(String name, Long size, Long updated, UUID user) {
+		return new Entry().setName(name).setUser(user).restoreUpdated(new Date(updated)).restoreFileAttributes(size, null, "text/plain");
+	}
+}
@@ -0,0 +1,438 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.unulearner.backend.storage.models.Entry;
+
+/**
+ * The children B+tree checked against a plain sorted {@code ArrayList} going through the very same changes. Sizes are picked
+ * so that the leaves (64 entries) and the branches (32 children) get split and merged again, with the tree three levels deep.
+ */
+class EntryChildrenTest {
+	private static final Comparator<Entry> COMPARATOR = EntryOrder.COMPARATOR;
+	private static final int NAME_SPACE = 12000;
+
+	@Test
+	void randomInsertsRemovesAndReplacesMatchTheModel() {
+		final Random random = new Random(7);
+		final EntryChildren children = new EntryChildren(COMPARATOR);
+		final List<Entry> model = new ArrayList<Entry>();
+
+		for (int iStep = 0; iStep < 40000; iStep++) {
+			final int operation = random.nextInt(10);
+			final int growth = iStep < 20000 ? 7 : 3; /* Growing past three levels first, then shrinking back down */
+
+			if (operation < growth) {
+				final Entry entry = file(random.nextInt(NAME_SPACE));
+				final int index = Collections.binarySearch(model, entry, COMPARATOR);
+				final Entry replacedEntry = children.insert(entry);
+				if (index >= 0) {
+					assertSame(model.set(index, entry), replacedEntry);
+				} else {
+					assertNull(replacedEntry);
+					model.add(-index - 1, entry);
+				}
+			} else if (!model.isEmpty()) {
+				final int index = random.nextInt(model.size());
+				if (operation == 9) {
+					assertTrue(children.remove(model.get(index)));
+				} else {
+					assertSame(model.get(index), children.remove(index));
+				}
+
+				model.remove(index);
+			}
+
+			assertEquals(model.size(), children.size());
+			if (!model.isEmpty()) {
+				final int index = random.nextInt(model.size());
+				assertSame(model.get(index), children.get(index));
+				assertEquals(index, children.indexOf(model.get(index)));
+				assertEquals(index, children.rank(model.get(index)));
+			}
+
+			if (iStep % 997 == 0) {
+				assertMatches(model, children);
+			}
+		}
+
+		assertMatches(model, children);
+	}
+
+	@Test
+	void positionalChangesMatchTheModel() {
+		final EntryChildren children = new EntryChildren(COMPARATOR);
+		final List<Entry> model = new ArrayList<Entry>();
+
+		for (int iEntry = 0; iEntry < 5000; iEntry++) { /* Appended, the way a directory listed in order fills up */
+			final Entry entry = file(iEntry);
+			children.add(children.size(), entry);
+			model.add(entry);
+		}
+
+		assertMatches(model, children);
+
+		for (int iEntry = 0; iEntry < 5000; iEntry += 3) {
+			final Entry entry = file(iEntry).setDescription("replacement");
+			assertSame(model.set(iEntry, entry), children.set(iEntry, entry));
+		}
+
+		assertMatches(model, children);
+
+		while (model.size() > 10) { /* Taken from the front, so that every leaf (and branch) on the left runs dry in turn */
+			assertSame(model.remove(0), children.remove(0));
+		}
+
+		assertMatches(model, children);
+		assertThrows(IndexOutOfBoundsException.class, () -> children.get(10));
+		assertThrows(IndexOutOfBoundsException.class, () -> children.add(12, file(0)));
+	}
+
+	@Test
+	void bulkBuiltChildrenMatchTheModel() {
+		final Random random = new Random(11);
+		final List<Entry> model = new ArrayList<Entry>();
+		for (int iEntry = 0; iEntry < 9000; iEntry++) {
+			model.add(file(iEntry));
+		}
+
+		Collections.shuffle(model, random);
+		final EntryChildren children = new EntryChildren(COMPARATOR, model);
+		model.sort(COMPARATOR);
+
+		assertMatches(model, children);
+		for (int iEntry = 0; iEntry < 200; iEntry++) {
+			final int index = random.nextInt(model.size());
+			assertSame(model.get(index), children.iterator(index).next());
+		}
+	}
+
+	@Test
+	void changedEntriesAreStillFound() {
+		final EntryChildren children = new EntryChildren(COMPARATOR);
+		final List<Entry> model = new ArrayList<Entry>();
+		for (int iEntry = 0; iEntry < 1000; iEntry++) {
+			final Entry entry = file(iEntry);
+			children.insert(entry);
+			model.add(entry);
+		}
+
+		model.sort(COMPARATOR);
+		final Entry renamedEntry = model.get(500).setName("zzz renamed.txt"); /* Out of place now, only to be found one by one */
+
+		assertEquals(500, children.indexOf(renamedEntry));
+		assertEquals(-1, children.indexOf(file(5000)));
+		assertTrue(children.remove(renamedEntry));
+		assertEquals(999, children.size());
+	}
+
+	@Test
+	void snapshotsAndIteratorsStayAsTheyWere() {
+		final Random random = new Random(13);
+		final EntryChildren children = new EntryChildren(COMPARATOR);
+		for (int iEntry = 0; iEntry < 3000; iEntry++) {
+			children.insert(file(iEntry));
+		}
+
+		final List<Entry> expectedEntries = new ArrayList<Entry>(children);
+		final List<Entry> snapshot = children.snapshot();
+		final Iterator<Entry> iterator = children.iterator();
+		for (int iEntry = 0; iEntry < 100; iEntry++) {
+			iterator.next();
+		}
+
+		for (int iStep = 0; iStep < 5000; iStep++) {
+			if (random.nextBoolean()) {
+				children.insert(file(random.nextInt(NAME_SPACE)));
+			} else {
+				children.remove(random.nextInt(children.size()));
+			}
+		}
+
+		children.clear();
+		assertEquals(expectedEntries, snapshot);
+		assertEquals(3000, snapshot.size());
+		assertThrows(UnsupportedOperationException.class, () -> snapshot.add(file(0)));
+
+		final List<Entry> iteratedEntries = new ArrayList<Entry>();
+		iterator.forEachRemaining(iteratedEntries::add);
+		assertEquals(expectedEntries.subList(100, 3000), iteratedEntries);
+	}
+
+	@Test
+	void snapshotIsStableWhileBeingWrittenTo() throws Exception {
+		final EntryChildren children = new EntryChildren(COMPARATOR);
+		for (int iEntry = 0; iEntry < 2000; iEntry++) {
+			children.insert(file(iEntry));
+		}
+
+		final Thread writer = new Thread(() -> {
+			final Random random = new Random(17);
+			for (int iStep = 0; iStep < 20000; iStep++) {
+				if (random.nextBoolean()) {
+					children.insert(file(random.nextInt(NAME_SPACE)));
+				} else if (children.size() > 0) {
+					children.remove(random.nextInt(children.size()));
+				}
+			}
+		});
+
+		writer.start();
+		while (writer.isAlive()) {
+			final List<Entry> snapshot = children.snapshot();
+			final List<Entry> copy = new ArrayList<Entry>(snapshot);
+			assertEquals(snapshot.size(), copy.size());
+			for (int iEntry = 1; iEntry < copy.size(); iEntry++) {
+				assertTrue(COMPARATOR.compare(copy.get(iEntry - 1), copy.get(iEntry)) < 0);
+			}
+
+			assertEquals(copy, new ArrayList<Entry>(snapshot));
+		}
+
+		writer.join();
+	}
+
+	@Test
+	void totalsFollowInsertsRemovesAndReplaces() {
+		final Random random = new Random(19);
+		final Entry rootEntry = directory("root");
+		final List<Entry> dirEntries = new ArrayList<Entry>();
+		for (int iDirectory = 0; iDirectory < 5; iDirectory++) {
+			final Entry dirEntry = directory("directory %d".formatted(iDirectory));
+			attach(iDirectory < 3 ? rootEntry : dirEntries.get(iDirectory - 3), dirEntry);
+			dirEntries.add(dirEntry);
+		}
+
+		for (int iStep = 0; iStep < 3000; iStep++) {
+			final Entry dirEntry = dirEntries.get(random.nextInt(dirEntries.size()));
+			final EntryChildren dirChildren = (EntryChildren) dirEntry.getChildren();
+			final Entry fileEntry = file(random.nextInt(400)).restoreFileAttributes((long) random.nextInt(100000), null, "text/plain");
+
+			if (random.nextInt(3) > 0) { /* Added, or replacing the one of the same name */
+				final Entry replacedEntry = dirChildren.insert(fileEntry.setParent(dirEntry));
+				if (replacedEntry != null) {
+					replacedEntry.aggregateUpwards(false);
+				}
+
+				fileEntry.aggregateUpwards(true);
+			} else if (dirChildren.size() > 0) {
+				final Entry removedEntry = dirChildren.get(random.nextInt(dirChildren.size()));
+				if (!removedEntry.getIsDirectory()) {
+					dirChildren.remove(removedEntry);
+					removedEntry.aggregateUpwards(false);
+				}
+			}
+
+			if (iStep % 101 == 0) {
+				assertTotals(rootEntry);
+			}
+		}
+
+		assertTotals(rootEntry);
+
+		final Entry movedEntry = dirEntries.get(3); /* A whole subtree at once */
+		movedEntry.getParent().getChildren().remove(movedEntry);
+		movedEntry.aggregateUpwards(false);
+		attach(dirEntries.get(4), movedEntry);
+		assertTotals(rootEntry);
+	}
+
+	@Test
+	void totalsAreUnknownUntilAggregated() {
+		final EntryChildren children = new EntryChildren(COMPARATOR, List.of(file(1).restoreFileAttributes(10L, null, null), file(2).restoreFileAttributes(20L, null, null)));
+		assertNull(children.getSubtreeSize());
+
+		children.aggregate(5L, 1L, 0L); /* Nothing to add to yet */
+		children.aggregate();
+		assertEquals(30L, children.getSubtreeSize());
+		assertEquals(2L, children.getSubtreeFiles());
+		assertEquals(0L, children.getSubtreeDirectories());
+		assertEquals(0L, new EntryChildren(COMPARATOR).getSubtreeSize());
+	}
+
+	@Test
+	void secondaryOrderingsFollowTheChanges() {
+		final Random random = new Random(23);
+		final EntryChildren children = new EntryChildren(COMPARATOR);
+		final List<Entry> model = new ArrayList<Entry>();
+		for (int iEntry = 0; iEntry < 500; iEntry++) {
+			final Entry entry = ordered(iEntry, random);
+			children.insert(entry);
+			model.add(entry);
+		}
+
+		for (EntryChildren.Ordering ordering : EntryChildren.Ordering.values()) { /* Indexed from here on */
+			assertOrdered(model, children, ordering);
+		}
+
+		for (int iStep = 0; iStep < 3000; iStep++) {
+			final int operation = random.nextInt(4);
+			if (operation == 0 || model.isEmpty()) {
+				final Entry entry = ordered(random.nextInt(2000), random);
+				final Entry replacedEntry = children.insert(entry);
+				if (replacedEntry != null) {
+					model.remove(replacedEntry);
+				}
+
+				model.add(entry);
+			} else if (operation == 1) {
+				final Entry entry = model.remove(random.nextInt(model.size()));
+				assertTrue(children.remove(entry));
+			} else if (operation == 2) {
+				final Entry entry = model.get(random.nextInt(model.size()));
+				synchronized (children) { /* Changed in place, the way the ownership and the attributes are */
+					entry.setUser(new UUID(0L, random.nextInt(8))).restoreUpdated(new Date(1700000000000L + random.nextInt(16) * 1000L));
+					entry.restoreFileAttributes((long) random.nextInt(16), null, "text/plain");
+					children.reindex(entry);
+				}
+			} else {
+				final int index = random.nextInt(model.size());
+				final Entry entry = ordered(random.nextInt(2000), random);
+				final Entry currentEntry = children.get(index);
+				entry.setName(currentEntry.getName());
+				assertSame(currentEntry, children.set(index, entry));
+				model.set(model.indexOf(currentEntry), entry);
+			}
+
+			if (iStep % 199 == 0) {
+				for (EntryChildren.Ordering ordering : EntryChildren.Ordering.values()) {
+					assertOrdered(model, children, ordering);
+				}
+			}
+		}
+
+		for (EntryChildren.Ordering ordering : EntryChildren.Ordering.values()) {
+			assertOrdered(model, children, ordering);
+		}
+
+		children.clear();
+		assertTrue(!children.iterator(EntryChildren.Ordering.SIZE, false, null).hasNext());
+	}
+
+	@Test
+	void secondaryOrderingsPickUpAfterAnyEntry() {
+		final Random random = new Random(29);
+		final EntryChildren children = new EntryChildren(COMPARATOR);
+		final List<Entry> model = new ArrayList<Entry>();
+		for (int iEntry = 0; iEntry < 300; iEntry++) {
+			final Entry entry = ordered(iEntry, random);
+			children.insert(entry);
+			model.add(entry);
+		}
+
+		for (EntryChildren.Ordering ordering : EntryChildren.Ordering.values()) {
+			for (Boolean descending : new Boolean[] { false, true }) {
+				final List<Entry> orderedModel = sorted(model, ordering, descending);
+				for (int iEntry = 0; iEntry < orderedModel.size(); iEntry += 37) {
+					final Iterator<Entry> iterator = children.iterator(ordering, descending, orderedModel.get(iEntry));
+					final List<Entry> remainingEntries = new ArrayList<Entry>();
+					iterator.forEachRemaining(remainingEntries::add);
+					assertEquals(orderedModel.subList(iEntry + 1, orderedModel.size()), remainingEntries, "%s %s after %d".formatted(ordering, descending ? "desc" : "asc", iEntry));
+				}
+			}
+		}
+	}
+
+	private static void assertMatches(List<Entry> model, EntryChildren children) {
+		assertEquals(model.size(), children.size());
+		assertEquals(model, new ArrayList<Entry>(children));
+		assertEquals(model, children.snapshot());
+		for (int iEntry = 0; iEntry < model.size(); iEntry += Math.max(1, model.size() / 300)) {
+			assertSame(model.get(iEntry), children.get(iEntry));
+			assertEquals(iEntry, children.indexOf(model.get(iEntry)));
+		}
+
+		final int fromIndex = model.size() / 3;
+		final List<Entry> iteratedEntries = new ArrayList<Entry>();
+		children.iterator(fromIndex).forEachRemaining(iteratedEntries::add);
+		assertEquals(model.subList(fromIndex, model.size()), iteratedEntries);
+	}
+
+	private static void assertOrdered(List<Entry> model, EntryChildren children, EntryChildren.Ordering ordering) {
+		for (Boolean descending : new Boolean[] { false, true }) {
+			final List<Entry> orderedEntries = new ArrayList<Entry>();
+			children.iterator(ordering, descending, null).forEachRemaining(orderedEntries::add);
+			assertEquals(sorted(model, ordering, descending), orderedEntries, "%s %s".formatted(ordering, descending ? "desc" : "asc"));
+		}
+	}
+
+	private static List<Entry> sorted(List<Entry> entries, EntryChildren.Ordering ordering, Boolean descending) {
+		final Comparator<Entry> key;
+		switch (ordering) {
+			case UPDATED:
+				key = Comparator.comparing(Entry::getUpdated);
+				break;
+			case SIZE:
+				key = Comparator.comparing(Entry::getSize);
+				break;
+			case OWNER:
+				key = Comparator.comparing(Entry::getUser);
+				break;
+			default:
+				key = (entry, otherEntry) -> 0;
+		}
+
+		final List<Entry> sortedEntries = new ArrayList<Entry>(entries);
+		sortedEntries.sort(key.thenComparing(COMPARATOR));
+		if (descending) {
+			Collections.reverse(sortedEntries);
+		}
+
+		return sortedEntries;
+	}
+
+	/* Added up from scratch and compared with what has been carried up along the way */
+	private static long[] assertTotals(Entry dirEntry) {
+		final long[] totals = new long[3];
+		for (Entry childEntry : dirEntry.getChildren()) {
+			if (childEntry.getIsDirectory()) {
+				final long[] childTotals = assertTotals(childEntry);
+				totals[0] += childTotals[0];
+				totals[1] += childTotals[1];
+				totals[2] += childTotals[2] + 1;
+			} else {
+				totals[0] += childEntry.getSize();
+				totals[1]++;
+			}
+		}
+
+		assertEquals(totals[0], dirEntry.getTotalSize(), "size of '%s'".formatted(dirEntry.getName()));
+		assertEquals(totals[1], dirEntry.getTotalFiles(), "files of '%s'".formatted(dirEntry.getName()));
+		assertEquals(totals[2], dirEntry.getTotalDirectories(), "directories of '%s'".formatted(dirEntry.getName()));
+		return totals;
+	}
+
+	private static void attach(Entry parentEntry, Entry entry) {
+		((EntryChildren) parentEntry.getChildren()).insert(entry.setParent(parentEntry));
+		entry.aggregateUpwards(true);
+	}
+
+	private static Entry file(int iName) {
+		return new Entry().setName("file %d.txt".formatted(iName));
+	}
+
+	private static Entry directory(String name) {
+		return new Entry().setName(name).setChildren(new EntryChildren(COMPARATOR));
+	}
+
+	/* Few distinct values of each, so that most of the entries tie with some other ones */
+	private static Entry ordered(int iName, Random random) {
+		final Entry entry = file(iName).setUser(new UUID(0L, random.nextInt(8))).restoreUpdated(new Date(1700000000000L + random.nextInt(16) * 1000L));
+		return entry.restoreFileAttributes((long) random.nextInt(16), null, "text/plain");
+	}
+}
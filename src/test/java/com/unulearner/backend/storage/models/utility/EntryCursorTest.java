@@ -0,0 +1,79 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.unulearner.backend.storage.models.Entry;
+
+class EntryCursorTest {
+
+	@Test
+	void decodedCursorStandsInForTheLastEntry() {
+		final Entry fileEntry = file("report 10.txt", 4096L, 1700000000000L, UUID.randomUUID());
+		final Entry dirEntry = new Entry().setName("reports").setUser(UUID.randomUUID()).setChildren(new ArrayList<Entry>());
+
+		for (EntryChildren.Ordering ordering : EntryChildren.Ordering.values()) {
+			for (Boolean descending : new Boolean[] { false, true }) {
+				for (Entry lastEntry : new Entry[] { fileEntry, dirEntry }) {
+					final Entry standInEntry = EntryCursor.decode(EntryCursor.encode(ordering, descending, lastEntry), ordering, descending);
+
+					assertEquals(lastEntry.getName(), standInEntry.getName());
+					assertEquals(lastEntry.getIsDirectory(), standInEntry.getIsDirectory());
+					assertEquals(lastEntry.getUpdated(), standInEntry.getUpdated());
+					assertEquals(lastEntry.getSize(), standInEntry.getSize());
+					assertEquals(lastEntry.getUser(), standInEntry.getUser());
+					assertEquals(0, EntryOrder.COMPARATOR.compare(lastEntry, standInEntry));
+				}
+			}
+		}
+	}
+
+	@Test
+	void cursorWithoutOwnerOrUpdateTimeRoundTrips() {
+		final Entry lastEntry = new Entry().setName("unowned.txt");
+		final Entry standInEntry = EntryCursor.decode(EntryCursor.encode(EntryChildren.Ordering.OWNER, false, lastEntry), EntryChildren.Ordering.OWNER, false);
+
+		assertEquals(null, standInEntry.getUser());
+		assertEquals(null, standInEntry.getUpdated());
+		assertEquals("unowned.txt", standInEntry.getName());
+	}
+
+	@Test
+	void cursorIsUrlSafe() {
+		final String cursor = EntryCursor.encode(EntryChildren.Ordering.NAME, false, file("ünïcödé ?&/+=.txt", 1L, 1L, UUID.randomUUID()));
+		assertTrue(cursor.matches("[A-Za-z0-9_-]+"), cursor);
+	}
+
+	@Test
+	void cursorOfAnotherListingIsRejected() {
+		final String cursor = EntryCursor.encode(EntryChildren.Ordering.SIZE, false, file("a.txt", 1L, 1L, UUID.randomUUID()));
+
+		assertThrows(IllegalArgumentException.class, () -> EntryCursor.decode(cursor, EntryChildren.Ordering.NAME, false));
+		assertThrows(IllegalArgumentException.class, () -> EntryCursor.decode(cursor, EntryChildren.Ordering.UPDATED, false));
+		assertThrows(IllegalArgumentException.class, () -> EntryCursor.decode(cursor, EntryChildren.Ordering.SIZE, true));
+	}
+
+	@Test
+	void malformedCursorIsRejected() {
+		final String cursor = EntryCursor.encode(EntryChildren.Ordering.NAME, false, file("a.txt", 1L, 1L, UUID.randomUUID()));
+		final byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+		final String truncatedCursor = Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(bytes, bytes.length - 3));
+
+		assertThrows(IllegalArgumentException.class, () -> EntryCursor.decode("not a cursor!", EntryChildren.Ordering.NAME, false));
+		assertThrows(IllegalArgumentException.class, () -> EntryCursor.decode("", EntryChildren.Ordering.NAME, false));
+		assertThrows(IllegalArgumentException.class, () -> EntryCursor.decode(truncatedCursor, EntryChildren.Ordering.NAME, false));
+	}
+
+	private static Entry file(String name, Long size, Long updated, UUID user) {
+		return new Entry().setName(name).setUser(user).restoreUpdated(new Date(updated)).restoreFileAttributes(size, null, "text/plain");
+	}
+}
@@ -0,0 +1,130 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.unulearner.backend.storage.models.Entry;
+
+class EntryOrderTest {
+
+	/**
+	 * Pairs of names in the order they are to be listed in ({@code /} at the end stands for a directory).
+	 */
+	private static final String[][] ORDERED_PAIRS = {
+		/* Numbers by their value */
+		{ "file9", "file10" },
+		{ "file10", "file100" },
+		{ "file2.txt", "file10.txt" },
+		{ "v1.9.2", "v1.10.0" },
+		{ "9", "10" },
+		{ "a", "a1" },
+		{ "a1", "a1b" },
+		{ "track 99", "track 100" },
+		{ "12345678901234567890", "123456789012345678901" }, /* Longer than any long */
+		/* Leading zeros */
+		{ "file007", "file8" },
+		{ "file9", "file010" },
+		{ "file007", "file7" }, /* Same value, the raw names break the tie */
+		{ "file07", "file7" },
+		{ "0", "00" },
+		{ "000", "1" },
+		/* Accents */
+		{ "eclair", "éclair" },
+		{ "éclair", "ezra" },
+		{ "résumé", "resumes" },
+		{ "cote", "côte" },
+		{ "Ångström", "Bohr" },
+		{ "e\u0301clair", "ezra" }, /* Decomposed accent */
+		/* Case */
+		{ "apple", "Banana" },
+		{ "Apple", "banana" },
+		{ "File", "file" },
+		{ "README", "readme" },
+		{ "abc9x", "ABC10" },
+		/* Directories first */
+		{ "zzz/", "aaa" },
+		{ "file10/", "file9" },
+		{ "b9/", "b10/" },
+		{ "Docs/", "docs/" },
+		{ "été/", "a.txt" },
+	};
+
+	@Test
+	void pairsAreListedInOrder() {
+		for (String[] orderedPair : ORDERED_PAIRS) {
+			final Entry entry = entry(orderedPair[0]);
+			final Entry otherEntry = entry(orderedPair[1]);
+
+			assertTrue(EntryOrder.COMPARATOR.compare(entry, otherEntry) < 0, "'%s' is to go before '%s'".formatted(orderedPair[0], orderedPair[1]));
+			assertTrue(EntryOrder.COMPARATOR.compare(otherEntry, entry) > 0, "'%s' is to go after '%s'".formatted(orderedPair[1], orderedPair[0]));
+		}
+	}
+
+	@Test
+	void sortKeysFollowTheOrder() {
+		assertTrue(EntryOrder.sortKey("file9", false).compareTo(EntryOrder.sortKey("file10", false)) < 0);
+		assertTrue(EntryOrder.sortKey("zzz", true).compareTo(EntryOrder.sortKey("aaa", false)) < 0);
+		assertEquals(EntryOrder.sortKey("file007", false), EntryOrder.sortKey("file7", false));
+		assertEquals(EntryOrder.sortKey("éclair", false), EntryOrder.sortKey("Eclair", false));
+		assertEquals(EntryOrder.sortKey("e\u0301clair", false), EntryOrder.sortKey("\u00e9clair", false));
+		assertNotEquals(EntryOrder.sortKey("same", true), EntryOrder.sortKey("same", false));
+		assertEquals(EntryOrder.sortKey(null, false), EntryOrder.sortKey(null, false));
+	}
+
+	@Test
+	void differentNamesAreNeverEqual() {
+		final List<Entry> entries = new ArrayList<Entry>();
+		for (String[] orderedPair : ORDERED_PAIRS) {
+			entries.add(entry(orderedPair[0]));
+			entries.add(entry(orderedPair[1]));
+		}
+
+		final Random random = new Random(19L);
+		final String[] pieces = { "a", "A", "á", "Á", "b", "0", "00", "1", "01", "9", "10", " ", ".", "-", "_" };
+		for (int iName = 0; iName < 500; iName++) {
+			final StringBuilder name = new StringBuilder();
+			for (int iPiece = 0, pieceCount = 1 + random.nextInt(5); iPiece < pieceCount; iPiece++) {
+				name.append(pieces[random.nextInt(pieces.length)]);
+			}
+
+			entries.add(entry(random.nextInt(4) == 0 ? name + "/" : name.toString()));
+		}
+
+		for (Entry entry : entries) {
+			for (Entry otherEntry : entries) {
+				final int comparison = EntryOrder.COMPARATOR.compare(entry, otherEntry);
+				if (entry.getName().equals(otherEntry.getName()) && entry.getIsDirectory() == otherEntry.getIsDirectory()) {
+					assertEquals(0, comparison);
+				} else if (!entry.getName().equals(otherEntry.getName())) {
+					assertNotEquals(0, comparison, "'%s' and '%s' are equal".formatted(entry.getName(), otherEntry.getName()));
+					assertEquals(-Integer.signum(comparison), Integer.signum(EntryOrder.COMPARATOR.compare(otherEntry, entry)));
+				}
+			}
+		}
+
+		/* And the order is a total one (consistent all the way through) */
+		Collections.shuffle(entries, random);
+		entries.sort(EntryOrder.COMPARATOR);
+		for (int iEntry = 0; iEntry < entries.size(); iEntry++) {
+			for (int iOtherEntry = iEntry + 1; iOtherEntry < entries.size(); iOtherEntry++) {
+				assertTrue(EntryOrder.COMPARATOR.compare(entries.get(iEntry), entries.get(iOtherEntry)) <= 0);
+			}
+		}
+	}
+
+	private static Entry entry(String name) {
+		if (name.endsWith("/")) {
+			return new Entry().setName(name.substring(0, name.length() - 1)).setChildren(new ArrayList<Entry>());
+		}
+
+		return new Entry().setName(name);
+	}
+}
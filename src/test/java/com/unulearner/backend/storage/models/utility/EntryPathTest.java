@@ -0,0 +1,187 @@
+package com.unulearner.backend.storage.models.utility;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class EntryPathTest {
+	private static final Path ROOT_PATH = Path.of("/srv/storage").toAbsolutePath();
+
+	@Test
+	void rootIsTheRootPathItself() {
+		final EntryPath rootPath = new EntryPath(ROOT_PATH);
+
+		assertEquals(ROOT_PATH, rootPath.getPath());
+		assertEquals(ROOT_PATH, rootPath.getRootPath());
+		assertEquals("storage", rootPath.getName());
+		assertEquals(Path.of("storage"), rootPath.getFileName());
+		assertEquals("", rootPath.getRelativeUrl());
+		assertEquals(Path.of(""), rootPath.getRelativePath());
+		assertEquals("", new EntryPath(ROOT_PATH.getRoot()).getName()); /* The filesystem root has no name of its own */
+	}
+
+	@Test
+	void singleSegmentPath() {
+		final EntryPath entryPath = new EntryPath(ROOT_PATH).resolve("notes.txt");
+
+		assertEquals(ROOT_PATH.resolve("notes.txt"), entryPath.getPath());
+		assertEquals("notes.txt", entryPath.getName());
+		assertEquals(Path.of("notes.txt"), entryPath.getFileName());
+		assertEquals("notes.txt", entryPath.getRelativeUrl());
+		assertEquals(Path.of("notes.txt"), entryPath.getRelativePath());
+	}
+
+	@Test
+	void multiSegmentPath() {
+		final EntryPath entryPath = new EntryPath(ROOT_PATH).resolve("a").resolve("bb/ccc").resolve("report 10.txt");
+
+		assertEquals(ROOT_PATH.resolve("a/bb/ccc/report 10.txt"), entryPath.getPath());
+		assertEquals("report 10.txt", entryPath.getName());
+		assertEquals("a/bb/ccc/report 10.txt", entryPath.getRelativeUrl());
+		assertEquals(Path.of("a", "bb", "ccc", "report 10.txt"), entryPath.getRelativePath());
+	}
+
+	@Test
+	void relativePathIsBuiltFromEveryNameInOrder() {
+		final String[][] chains = {
+			{ "x" },
+			{ "x", "y" },
+			{ "long directory name", "dots.in.name", "z" },
+			{ "1", "22", "333", "4444", "55555" },
+		};
+
+		for (String[] chain : chains) {
+			EntryPath entryPath = new EntryPath(ROOT_PATH);
+			for (String name : chain) {
+				entryPath = entryPath.resolve(name);
+			}
+
+			assertEquals(String.join("/", chain), entryPath.getRelativeUrl());
+			assertEquals(Path.of(chain[0], Arrays.copyOfRange(chain, 1, chain.length)), entryPath.getRelativePath());
+			assertEquals(ROOT_PATH.resolve(String.join("/", chain)), entryPath.getPath());
+		}
+	}
+
+	@Test
+	void relativeResolveBuildsOnThePath() {
+		final EntryPath dirPath = new EntryPath(ROOT_PATH).resolve("a/b");
+
+		assertEquals("a/b/c", dirPath.resolve("c").getRelativeUrl());
+		assertEquals("a/b/c/d", dirPath.resolve(Path.of("c", "d")).getRelativeUrl());
+		assertEquals("a/b/c", dirPath.resolve("c/").getRelativeUrl());
+		assertSame(dirPath, dirPath.resolve(""));
+	}
+
+	@Test
+	void absoluteResolveStartsOverFromTheRoot() {
+		final EntryPath dirPath = new EntryPath(ROOT_PATH).resolve("a/b");
+
+		assertEquals("x/y", dirPath.resolve(ROOT_PATH.resolve("x/y")).getRelativeUrl());
+		assertEquals("x/y", dirPath.resolve(ROOT_PATH.resolve("x/y").toString()).getRelativeUrl());
+		assertEquals("", dirPath.resolve(ROOT_PATH).getRelativeUrl());
+	}
+
+	@Test
+	void resolveSiblingSharesTheParent() {
+		final EntryPath filePath = new EntryPath(ROOT_PATH).resolve("a/b/one.txt");
+		final EntryPath siblingPath = filePath.resolveSibling("two.txt");
+
+		assertEquals("a/b/two.txt", siblingPath.getRelativeUrl());
+		assertSame(ReflectionTestUtils.getField(filePath, "parent"), ReflectionTestUtils.getField(siblingPath, "parent"));
+		assertEquals("two.txt", new EntryPath(ROOT_PATH).resolve("one.txt").resolveSibling("two.txt").getRelativeUrl());
+	}
+
+	@Test
+	void resolveSiblingOfTheRootLandsNextToTheRoot() {
+		final EntryPath siblingPath = new EntryPath(ROOT_PATH).resolveSibling("other");
+
+		assertEquals(ROOT_PATH.resolveSibling("other"), siblingPath.getPath().normalize());
+		assertEquals("../other", siblingPath.getRelativeUrl());
+	}
+
+	@Test
+	void resolveFromRootSharesTheParentWhenItIsThisPath() {
+		final EntryPath dirPath = new EntryPath(ROOT_PATH).resolve("a/b");
+		final EntryPath childPath = dirPath.resolveFromRoot(ROOT_PATH.resolve("a/b/c.txt"));
+
+		assertEquals("a/b/c.txt", childPath.getRelativeUrl());
+		assertSame(dirPath, ReflectionTestUtils.getField(childPath, "parent"));
+	}
+
+	@Test
+	void resolveFromRootBuildsTheChainAnewOtherwise() {
+		final EntryPath dirPath = new EntryPath(ROOT_PATH).resolve("a/b");
+		final EntryPath otherPath = dirPath.resolveFromRoot(ROOT_PATH.resolve("a/c/d.txt"));
+		final EntryPath grandchildPath = dirPath.resolveFromRoot(ROOT_PATH.resolve("a/b/c/d.txt"));
+
+		assertEquals("a/c/d.txt", otherPath.getRelativeUrl());
+		assertEquals("a/b/c/d.txt", grandchildPath.getRelativeUrl());
+		assertNotSame(dirPath, ReflectionTestUtils.getField(grandchildPath, "parent"));
+		assertEquals(dirPath, ReflectionTestUtils.getField(ReflectionTestUtils.getField(grandchildPath, "parent"), "parent"));
+	}
+
+	@Test
+	void resolveFromRootOfTopLevelPaths() {
+		final EntryPath rootPath = new EntryPath(ROOT_PATH);
+		final EntryPath topLevelPath = rootPath.resolveFromRoot(ROOT_PATH.resolve("top.txt"));
+
+		assertEquals("top.txt", topLevelPath.getRelativeUrl());
+		assertSame(rootPath, ReflectionTestUtils.getField(topLevelPath, "parent"));
+		assertNull(ReflectionTestUtils.getField(rootPath.resolveFromRoot(ROOT_PATH), "parent"));
+		assertEquals(rootPath, rootPath.resolveFromRoot(ROOT_PATH));
+	}
+
+	@Test
+	void resolveFromRootWorksWithARelativeRoot() {
+		final Path relativeRootPath = Path.of("storage/root");
+		final EntryPath dirPath = new EntryPath(relativeRootPath).resolve("a");
+		final EntryPath childPath = dirPath.resolveFromRoot(relativeRootPath.resolve("a/b.txt").toAbsolutePath());
+
+		assertEquals("a/b.txt", childPath.getRelativeUrl());
+		assertEquals(relativeRootPath.resolve("a/b.txt"), childPath.getPath());
+		assertSame(dirPath, ReflectionTestUtils.getField(childPath, "parent"));
+	}
+
+	@Test
+	void pathsBuiltThroughDifferentChainsAreEqual() {
+		final EntryPath rootPath = new EntryPath(ROOT_PATH);
+		final EntryPath[] samePaths = {
+			rootPath.resolve("a/b/c.txt"),
+			rootPath.resolve("a").resolve("b").resolve("c.txt"),
+			rootPath.resolve("a/b").resolve("d.txt").resolveSibling("c.txt"),
+			rootPath.resolve("x").resolve(ROOT_PATH.resolve("a/b/c.txt")),
+			rootPath.resolve("a/b").resolveFromRoot(ROOT_PATH.resolve("a/b/c.txt")),
+			new EntryPath(ROOT_PATH).resolveFromRoot(ROOT_PATH.resolve("a/b/c.txt")),
+		};
+
+		for (EntryPath entryPath : samePaths) {
+			for (EntryPath otherEntryPath : samePaths) {
+				assertEquals(entryPath, otherEntryPath);
+				assertEquals(entryPath.hashCode(), otherEntryPath.hashCode());
+			}
+		}
+
+		assertEquals(new EntryPath(ROOT_PATH), rootPath);
+		assertEquals(new EntryPath(ROOT_PATH).hashCode(), rootPath.hashCode());
+	}
+
+	@Test
+	void differentPathsAreNotEqual() {
+		final EntryPath rootPath = new EntryPath(ROOT_PATH);
+
+		assertNotEquals(rootPath.resolve("a/b"), rootPath.resolve("b/a"));
+		assertNotEquals(rootPath.resolve("a/b"), rootPath.resolve("a"));
+		assertNotEquals(rootPath.resolve("a"), rootPath.resolve("a/b"));
+		assertNotEquals(rootPath.resolve("a"), rootPath);
+		assertNotEquals(rootPath.resolve("a"), new EntryPath(ROOT_PATH.resolveSibling("elsewhere")).resolve("a"));
+		assertNotEquals(rootPath, null);
+	}
+}
@@ -0,0 +1,115 @@
+package com.unulearner.backend.storage.services;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+
+import com.unulearner.backend.security.user.Credentials;
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.properties.StorageProperties;
+
+class SecurityServiceTest {
+	private static final UUID ROOT = UUID.fromString("00000000-0000-4000-8000-000000000000");
+	private static final UUID OWNER = UUID.fromString("00000000-0000-4000-8000-000000000001");
+	private static final UUID GROUP = UUID.fromString("00000000-0000-4000-8000-000000000002");
+	private static final UUID STRANGER = UUID.fromString("00000000-0000-4000-8000-000000000003");
+
+	private enum Role { OWNER, GROUP_MEMBER, OTHER }
+
+	/**
+	 * A permission check along with what it should come to, and whether the old reading of the mode got it wrong.
+	 * The mode used to be parsed as octal and then taken apart as if it were decimal ({@code /100%10}, {@code /10%10}, {@code %10}).
+	 */
+	private record Check(String permissions, Role role, String required, Boolean granted, Boolean wrongBefore) {}
+
+	private static final Check[] CHECKS = {
+		new Check("0750", Role.OWNER, "r", true, false),
+		new Check("0750", Role.OWNER, "rwx", true, true),         /* 0750 is 488, read as 4-8-8: the owner only got to read */
+		new Check("0750", Role.GROUP_MEMBER, "rx", true, true),   /* ... and the group got nothing */
+		new Check("0750", Role.GROUP_MEMBER, "w", false, false),
+		new Check("0750", Role.OTHER, "r", false, false),
+		new Check("0644", Role.OWNER, "rw", true, true),          /* 0644 is 420, read as 4-2-0 */
+		new Check("0644", Role.GROUP_MEMBER, "r", true, true),
+		new Check("0644", Role.GROUP_MEMBER, "w", false, true),   /* Write was granted to the group */
+		new Check("0644", Role.OTHER, "r", true, true),
+		new Check("0755", Role.GROUP_MEMBER, "x", true, false),   /* 0755 is 493, read as 4-9-3 */
+		new Check("0755", Role.GROUP_MEMBER, "r", true, true),
+		new Check("0755", Role.OTHER, "w", false, true),          /* Write was granted to everyone */
+		new Check("0755", Role.OTHER, "rx", true, true),
+		new Check("0777", Role.OWNER, "w", true, true),           /* 0777 is 511, read as 5-1-1 */
+		new Check("0777", Role.OTHER, "rwx", true, true),
+		new Check("0700", Role.OWNER, "rwx", true, true),         /* 0700 is 448, read as 4-4-8 */
+		new Check("0700", Role.GROUP_MEMBER, "r", false, true),   /* Read was granted to the group */
+		new Check("0007", Role.OWNER, "r", false, false),         /* Single digit modes read the same either way */
+		new Check("0007", Role.OTHER, "rwx", true, false),
+		new Check("4755", Role.OWNER, "rwx", true, true),         /* The special bits are no part of the owner's */
+		new Check("1777", Role.OTHER, "rwx", true, true),
+	};
+
+	@Test
+	void permissionsAreReadAsOctalDigits() {
+		for (Check check : CHECKS) {
+			final Entry entry = new Entry().setName("checked").setUser(OWNER).setGroup(GROUP).setPermissions(check.permissions());
+			final SecurityService securityService = securityService(check.role());
+
+			assertEquals(check.granted(), securityService.userHasRequiredPermissions(entry, check.required().contains("r"), check.required().contains("w"), check.required().contains("x")), check.toString());
+		}
+	}
+
+	@Test
+	void checksMarkedWrongBeforeDisagreeWithTheOldReading() {
+		Integer wrongBeforeCount = 0;
+		for (Check check : CHECKS) {
+			final Boolean grantedBefore = decimalReading(Integer.parseInt(check.permissions(), 8), check.role(), check.required());
+
+			assertEquals(check.wrongBefore(), grantedBefore != check.granted(), check.toString());
+			wrongBeforeCount += check.wrongBefore() ? 1 : 0;
+		}
+
+		assertTrue(wrongBeforeCount > 0);
+	}
+
+	@Test
+	void rootBypassesThePermissions() {
+		final Entry entry = new Entry().setName("locked").setUser(OWNER).setGroup(GROUP).setPermissions("0000");
+
+		assertTrue(securityService(ROOT, List.of()).userHasRequiredPermissions(entry, true, true, true));
+	}
+
+	/* What the checks came to when the mode was taken apart by decimal digits */
+	private static Boolean decimalReading(Integer intPermissions, Role role, String required) {
+		final Integer permissions = switch (role) {
+			case OWNER -> (intPermissions / 100) % 10;
+			case GROUP_MEMBER -> (intPermissions / 10) % 10;
+			case OTHER -> intPermissions % 10;
+		};
+
+		return !((required.contains("r") && (permissions & 4) == 0) || (required.contains("w") && (permissions & 2) == 0) || (required.contains("x") && (permissions & 1) == 0));
+	}
+
+	private static SecurityService securityService(Role role) {
+		return switch (role) {
+			case OWNER -> securityService(OWNER, List.of());
+			case GROUP_MEMBER -> securityService(STRANGER, List.of(GROUP));
+			case OTHER -> securityService(STRANGER, List.of());
+		};
+	}
+
+	private static SecurityService securityService(UUID user, Collection<UUID> userGroups) {
+		final StorageProperties storageProperties = new StorageProperties();
+		storageProperties.setRootUserUUID(ROOT);
+
+		final Credentials credentials = mock(Credentials.class);
+		when(credentials.getUser()).thenReturn(user);
+		when(credentials.getUserGroups()).thenReturn(userGroups);
+
+		return new SecurityService(storageProperties, credentials);
+	}
+}
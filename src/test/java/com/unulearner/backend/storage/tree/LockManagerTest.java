@@ -0,0 +1,156 @@
+package com.unulearner.backend.storage.tree;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.unulearner.backend.storage.models.Entry;
+
+class LockManagerTest {
+	private static final Long TIME_OUT_SECONDS = 10L;
+
+	private ExecutorService executorService;
+	private LockManager lockManager;
+
+	@BeforeEach
+	void setUp() {
+		this.executorService = Executors.newCachedThreadPool();
+		this.lockManager = new LockManager();
+	}
+
+	@AfterEach
+	void tearDown() {
+		this.executorService.shutdownNow();
+	}
+
+	@Test
+	void opposingMovesFinishWithoutDeadlock() throws Exception {
+		final Entry firstDirectory = directory("a");
+		final Entry secondDirectory = directory("b");
+		final AtomicInteger holderCount = new AtomicInteger();
+		final AtomicInteger overlapCount = new AtomicInteger();
+		final CyclicBarrier startBarrier = new CyclicBarrier(2);
+
+		final List<Future<?>> moves = new ArrayList<Future<?>>();
+		for (Entry[] sourceAndTarget : new Entry[][] { { firstDirectory, secondDirectory }, { secondDirectory, firstDirectory } }) {
+			moves.add(this.executorService.submit(() -> {
+				startBarrier.await();
+				for (int iMove = 0; iMove < 2000; iMove++) {
+					/* A move writes to both, a copy only reads the source: both are locked for either, every which way */
+					try (LockManager.Locks locks = iMove % 2 == 0 ? this.lockManager.lockForWriting(sourceAndTarget[0], sourceAndTarget[1]) : this.lockManager.lock(List.of(sourceAndTarget[1]), List.of(sourceAndTarget[0]))) {
+						if (holderCount.incrementAndGet() > 1) {
+							overlapCount.incrementAndGet();
+						}
+
+						Thread.yield();
+						holderCount.decrementAndGet();
+					}
+				}
+
+				return null;
+			}));
+		}
+
+		for (Future<?> move : moves) {
+			move.get(TIME_OUT_SECONDS, TimeUnit.SECONDS); /* Times out if the two have locked each other out */
+		}
+
+		assertEquals(0, overlapCount.get());
+		assertTrue(heldDirectoryLocks().isEmpty());
+	}
+
+	@Test
+	void unrelatedDirectoriesAreLockedInParallel() throws Exception {
+		final CyclicBarrier bothHeldBarrier = new CyclicBarrier(2);
+
+		final List<Future<?>> writers = new ArrayList<Future<?>>();
+		for (Entry[] writtenDirectories : new Entry[][] { { directory("a"), directory("b") }, { directory("c"), directory("d") } }) {
+			writers.add(this.executorService.submit(() -> {
+				try (LockManager.Locks locks = this.lockManager.lockForWriting(writtenDirectories)) {
+					bothHeldBarrier.await(TIME_OUT_SECONDS, TimeUnit.SECONDS); /* Only ever reached by both if neither waits for the other */
+				}
+
+				return null;
+			}));
+		}
+
+		for (Future<?> writer : writers) {
+			writer.get(TIME_OUT_SECONDS * 2, TimeUnit.SECONDS);
+		}
+
+		assertTrue(heldDirectoryLocks().isEmpty());
+	}
+
+	@Test
+	void readersOfTheSameDirectoryGoAheadTogether() throws Exception {
+		final Entry sharedDirectory = directory("shared");
+		final CyclicBarrier bothHeldBarrier = new CyclicBarrier(2);
+
+		final List<Future<?>> readers = new ArrayList<Future<?>>();
+		for (Entry writtenDirectory : new Entry[] { directory("x"), directory("y") }) {
+			readers.add(this.executorService.submit(() -> {
+				try (LockManager.Locks locks = this.lockManager.lock(List.of(writtenDirectory), List.of(sharedDirectory))) {
+					bothHeldBarrier.await(TIME_OUT_SECONDS, TimeUnit.SECONDS);
+				}
+
+				return null;
+			}));
+		}
+
+		for (Future<?> reader : readers) {
+			reader.get(TIME_OUT_SECONDS * 2, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	void writersOfTheSameDirectoryTakeTurns() throws Exception {
+		final Entry sharedDirectory = directory("shared");
+		final CountDownLatch waitingLatch = new CountDownLatch(1);
+		final CountDownLatch acquiredLatch = new CountDownLatch(1);
+
+		final LockManager.Locks heldLocks = this.lockManager.lockForWriting(directory("source"), sharedDirectory);
+		final Future<?> writer = this.executorService.submit(() -> {
+			waitingLatch.countDown();
+			try (LockManager.Locks locks = this.lockManager.lockForWriting(sharedDirectory, directory("target"))) {
+				acquiredLatch.countDown();
+			}
+
+			return null;
+		});
+
+		assertTrue(waitingLatch.await(TIME_OUT_SECONDS, TimeUnit.SECONDS));
+		assertFalse(acquiredLatch.await(200L, TimeUnit.MILLISECONDS)); /* Still held here */
+
+		heldLocks.close();
+		assertTrue(acquiredLatch.await(TIME_OUT_SECONDS, TimeUnit.SECONDS));
+		writer.get(TIME_OUT_SECONDS, TimeUnit.SECONDS);
+		assertTrue(heldDirectoryLocks().isEmpty());
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<UUID, ?> heldDirectoryLocks() {
+		return (Map<UUID, ?>) ReflectionTestUtils.getField(this.lockManager, "directoryLocks");
+	}
+
+	/* The locks go by ID, the same name always stands for the same directory */
+	private static Entry directory(String name) {
+		return new Entry().setName(name).setId(UUID.nameUUIDFromBytes(name.getBytes())).setChildren(new ArrayList<Entry>());
+	}
+}
@@ -0,0 +1,106 @@
+package com.unulearner.backend.storage.tree;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.CountDownLatch;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.exceptions.entry.EntryQuotaExceededException;
+
+class QuotaLedgerTest {
+	private static final UUID USER = UUID.fromString("00000000-0000-4000-8000-000000000001");
+	private static final UUID GROUP = UUID.fromString("00000000-0000-4000-8000-000000000002");
+
+	@Test
+	void concurrentReservationsNeverOvershoot() throws Exception {
+		final QuotaLedger quotaLedger = new QuotaLedger(1000L, 0L, 60000L);
+		final AtomicInteger grantedCount = new AtomicInteger();
+		final CountDownLatch startLatch = new CountDownLatch(1);
+		final List<Thread> writers = new ArrayList<Thread>();
+
+		for (int iWriter = 0; iWriter < 8; iWriter++) {
+			final Thread writer = new Thread(() -> {
+				try {
+					startLatch.await();
+					for (int iUpload = 0; iUpload < 50; iUpload++) {
+						try {
+							quotaLedger.reserve(USER, GROUP, 30L);
+							grantedCount.incrementAndGet();
+						} catch (EntryQuotaExceededException exception) {
+							/* Out of room, as expected sooner or later */
+						}
+					}
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+			});
+
+			writer.start();
+			writers.add(writer);
+		}
+
+		startLatch.countDown();
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		assertEquals(1000L / 30L, grantedCount.get());
+		assertEquals(grantedCount.get() * 30L, quotaLedger.getUserUsage(USER));
+		assertEquals(grantedCount.get() * 30L, quotaLedger.getGroupUsage(GROUP));
+	}
+
+	@Test
+	void rejectedReservationTakesNothing() throws Exception {
+		final QuotaLedger quotaLedger = new QuotaLedger(1000L, 500L, 60000L);
+		quotaLedger.reserve(USER, GROUP, 400L);
+
+		assertThrows(EntryQuotaExceededException.class, () -> quotaLedger.reserve(USER, GROUP, 200L)); /* The user has room, the group doesn't */
+		assertEquals(400L, quotaLedger.getUserUsage(USER));
+		assertEquals(400L, quotaLedger.getGroupUsage(GROUP));
+	}
+
+	@Test
+	void reservationTurnsIntoTheChargeOnceSettled() throws Exception {
+		final QuotaLedger quotaLedger = new QuotaLedger(1000L, 0L, 60000L);
+		final Entry entry = new Entry().setName("upload.bin").setUser(USER).setGroup(GROUP).restoreFileAttributes(600L, null, null);
+
+		quotaLedger.hold(entry, quotaLedger.reserve(USER, GROUP, 600L));
+		assertThrows(EntryQuotaExceededException.class, () -> quotaLedger.reserve(USER, null, 600L));
+
+		quotaLedger.account(entry, true); /* Published */
+		quotaLedger.settle(entry);
+		quotaLedger.settle(entry);
+		assertEquals(600L, quotaLedger.getUserUsage(USER));
+		assertEquals(600L, quotaLedger.getGroupUsage(GROUP));
+	}
+
+	@Test
+	void releasedReservationsGiveTheRoomBack() throws Exception {
+		final QuotaLedger quotaLedger = new QuotaLedger(1000L, 0L, 60000L);
+		final QuotaLedger.Reservation reservation = quotaLedger.reserve(USER, GROUP, 700L);
+
+		quotaLedger.release(reservation);
+		quotaLedger.release(reservation);
+		quotaLedger.release(null);
+		assertEquals(0L, quotaLedger.getUserUsage(USER));
+		assertEquals(0L, quotaLedger.getGroupUsage(GROUP));
+		quotaLedger.reserve(USER, GROUP, 1000L);
+	}
+
+	@Test
+	void abandonedReservationsRunOut() throws Exception {
+		final QuotaLedger quotaLedger = new QuotaLedger(1000L, 0L, 0L);
+		quotaLedger.hold(new Entry().setName("never published.bin"), quotaLedger.reserve(USER, GROUP, 800L));
+
+		Thread.sleep(5L);
+		quotaLedger.reserve(USER, GROUP, 900L);
+		assertEquals(900L, quotaLedger.getUserUsage(USER));
+	}
+}
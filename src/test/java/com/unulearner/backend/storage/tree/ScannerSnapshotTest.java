@@ -0,0 +1,292 @@
+package com.unulearner.backend.storage.tree;
+
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Comparator;
+import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.unulearner.backend.storage.models.Entry;
+import com.unulearner.backend.storage.models.utility.EntryPath;
+import com.unulearner.backend.storage.models.utility.EntryChildren;
+import com.unulearner.backend.storage.interfaces.StorageInterface;
+import com.unulearner.backend.storage.properties.StorageProperties;
+import com.unulearner.backend.storage.services.StorageService;
+
+/**
+ * A tree restored from a snapshot (and reconciled with whatever changed on disk since) is to come out exactly like
+ * the one a cold scan builds out of the very same table and disk, persisted rows without a file/directory and files
+ * edited in place (within directories that weren't otherwise touched) included.
+ */
+class ScannerSnapshotTest {
+	private static final Long LONG_AGO = System.currentTimeMillis() - 600000L;
+	private static final Long A_BIT_LATER = LONG_AGO + 300000L;
+
+	@TempDir
+	Path tempPath;
+
+	private Path rootPath;
+	private Table table;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		this.rootPath = Files.createDirectories(this.tempPath.resolve("root"));
+		for (String directory : new String[] { "a", "a/deep", "b", "c", "d", "d/inner" }) {
+			Files.createDirectories(this.rootPath.resolve(directory));
+		}
+
+		for (String file : new String[] { "top.txt", "a/one.txt", "a/deep/two.txt", "b/three.txt", "b/four.txt", "c/five.txt", "d/six.txt", "d/inner/seven.txt" }) {
+			Files.writeString(this.rootPath.resolve(file), "%s contents".formatted(file));
+		}
+
+		this.table = new Table(properties(1, true));
+		this.settleDirectories(LONG_AGO);
+		this.scan(properties(1, true), null);
+
+		this.table.insertGhost("/b/ghost.txt", "/b", false); /* Rows left behind by whatever was removed long before the snapshot */
+		this.table.insertGhost("/ghost", "/", true);
+	}
+
+	@Test
+	void restoredTreeMatchesColdScan() throws Exception {
+		final Snapshot snapshot = new Snapshot(this.table, properties(1, true), new EntryPath(this.rootPath));
+		final Entry scannedRootEntry = this.scan(properties(1, true), snapshot);
+		assertFalse(dump(scannedRootEntry).contains("ghost"));
+		snapshot.save(scannedRootEntry);
+
+		/* Whatever happens while the application is down */
+		Files.writeString(this.rootPath.resolve("a/new.txt"), "new contents");
+		Files.delete(this.rootPath.resolve("b/four.txt"));
+		Files.delete(this.rootPath.resolve("d/inner/seven.txt"));
+		Files.delete(this.rootPath.resolve("d/inner"));
+		for (String directory : new String[] { "a", "b", "d" }) {
+			Files.setLastModifiedTime(this.rootPath.resolve(directory), FileTime.fromMillis(A_BIT_LATER));
+		}
+
+		Files.writeString(this.rootPath.resolve("c/five.txt"), "edited in place, the directory is none the wiser");
+		Files.setLastModifiedTime(this.rootPath.resolve("c/five.txt"), FileTime.fromMillis(A_BIT_LATER));
+		assertEquals(LONG_AGO, Files.getLastModifiedTime(this.rootPath.resolve("c")).toMillis());
+
+		final Entry restoredRootEntry = this.scan(properties(1, true), new Snapshot(this.table, properties(1, true), new EntryPath(this.rootPath)));
+		final Entry editedEntry = restoredRootEntry.retrieveChild("c").retrieveChild("five.txt");
+		assertEquals(Files.size(this.rootPath.resolve("c/five.txt")), editedEntry.getSize());
+		assertEquals(A_BIT_LATER, editedEntry.getModified().getTime());
+
+		final String restoredTree = dump(restoredRootEntry);
+		assertTrue(restoredTree.contains("/a/new.txt"));
+		assertFalse(restoredTree.contains("/b/four.txt"));
+		assertFalse(restoredTree.contains("/d/inner"));
+
+		for (Integer parallelism : new Integer[] { 1, 4 }) {
+			for (Boolean bulkLoadEnabled : new Boolean[] { false, true }) {
+				assertEquals(restoredTree, dump(this.scan(properties(parallelism, bulkLoadEnabled), null)), "parallelism %d, bulk load %s".formatted(parallelism, bulkLoadEnabled));
+			}
+		}
+	}
+
+	@Test
+	void entriesOfAnUnchangedDirectoryMissingFromDiskAreDropped() throws Exception {
+		final Snapshot snapshot = new Snapshot(this.table, properties(1, true), new EntryPath(this.rootPath));
+		final Entry scannedRootEntry = this.scan(properties(1, true), snapshot);
+		final Entry dirEntry = scannedRootEntry.retrieveChild("c");
+		final Entry ghostEntry = new Entry().setId(UUID.randomUUID()).setUser(dirEntry.getUser()).setGroup(dirEntry.getGroup()).setEntryPath(dirEntry.getEntryPath().resolve("gone.txt"));
+		((EntryChildren) dirEntry.getChildren()).insert(ghostEntry.setParent(dirEntry)); /* The way a snapshot written before the rows were pruned may still hold one */
+		snapshot.save(scannedRootEntry);
+
+		final String restoredTree = dump(this.scan(properties(1, true), new Snapshot(this.table, properties(1, true), new EntryPath(this.rootPath))));
+		assertFalse(restoredTree.contains("gone.txt"));
+		assertEquals(dump(this.scan(properties(1, true), null)), restoredTree);
+	}
+
+	private Entry scan(StorageProperties storageProperties, Snapshot snapshot) throws Exception {
+		final Scanner scanner = new Scanner(this.table, storageProperties, new EntryPath(this.rootPath), snapshot, dirEntry -> ((EntryChildren) dirEntry.getChildren()).aggregate());
+		return scanner.scan();
+	}
+
+	/* Far enough in the past for the snapshot to trust the modification times */
+	private void settleDirectories(Long modificationTime) throws Exception {
+		try (var paths = Files.walk(this.rootPath)) {
+			for (Path path : paths.toList()) {
+				if (Files.isDirectory(path)) {
+					Files.setLastModifiedTime(path, FileTime.fromMillis(modificationTime));
+				}
+			}
+		}
+	}
+
+	private StorageProperties properties(Integer parallelism, Boolean bulkLoadEnabled) {
+		final StorageProperties storageProperties = new StorageProperties();
+		storageProperties.setDefaultNewDirectoryPermissionFlags("777");
+		storageProperties.setDefaultNewFilePermissionFlags("666");
+		storageProperties.setDefaultPermissionFlagsUmask("022");
+		storageProperties.setTreeScanParallelism(parallelism);
+		storageProperties.setTreeBulkLoadEnabled(bulkLoadEnabled);
+		storageProperties.setTreeBulkLoadPageSize(3);
+		storageProperties.setTreeSnapshotUrl(this.tempPath.resolve("tree.snapshot").toString());
+		return storageProperties;
+	}
+
+	private static String dump(Entry entry) {
+		final StringBuilder stringBuilder = new StringBuilder();
+		stringBuilder.append("%s %s parent=%s directory=%s size=%d modified=%s owner=%s:%s permissions=%s".formatted(entry.getUrl(), entry.getId(), entry.getParent() != null ? entry.getParent().getId() : null, entry.getIsDirectory(), entry.getSize(), entry.getModified() != null ? entry.getModified().getTime() : null, entry.getUser(), entry.getGroup(), entry.getPermissions()));
+		if (entry.getIsDirectory()) {
+			stringBuilder.append(" totals=%d/%d/%d".formatted(entry.getTotalSize(), entry.getTotalFiles(), entry.getTotalDirectories()));
+		}
+
+		stringBuilder.append("\n");
+		if (entry.getChildren() != null) {
+			for (Entry childEntry : entry.getChildren()) {
+				stringBuilder.append(dump(childEntry));
+			}
+		}
+
+		return stringBuilder.toString();
+	}
+
+	/**
+	 * The storage table, handing out fresh copies of its rows the way the database does (nothing set on an entry in memory sticks to its row).
+	 */
+	private static class Table implements StorageInterface {
+		private final Map<UUID, Entry> rows = new LinkedHashMap<UUID, Entry>();
+		private final StorageService storageService;
+		private Long latestUpdate = 1L;
+
+		private Table(StorageProperties storageProperties) {
+			this.storageService = new StorageService(storageProperties, null);
+		}
+
+		private synchronized void insertGhost(String url, String parentUrl, Boolean isDirectory) {
+			final Entry parentRow = this.rows.values().stream().filter(row -> row.getUrl().equals(parentUrl)).findFirst().orElseThrow();
+			final Entry row = new Entry().setId(UUID.randomUUID()).setName(url.substring(url.lastIndexOf('/') + 1)).setUrl(url).setChildren(isDirectory ? new ArrayList<Entry>() : null);
+			this.rows.put(row.getId(), row.setParent(new Entry().setId(parentRow.getId())).setUser(parentRow.getUser()).setGroup(parentRow.getGroup()));
+			this.latestUpdate++;
+		}
+
+		/* The children aren't persisted, only whether there are any to have */
+		private static Entry load(Entry row) {
+			final Entry entry = new Entry();
+			ReflectionTestUtils.setField(entry, "isDirectory", row.getIsDirectory());
+
+			return entry
+				.setId(row.getId())
+				.setName(row.getName())
+				.setUrl(row.getUrl())
+				.setParent(row.getParent() != null ? new Entry().setId(row.getParent().getId()) : null)
+				.setPermissionBits(row.getPermissionBits())
+				.setUser(row.getUser())
+				.setGroup(row.getGroup())
+				.restoreVersion(row.getVersion())
+				.restoreFileAttributes(row.getSize(), row.getModified(), row.getContentType())
+				.restoreCreated(row.getCreated())
+				.restoreUpdated(row.getUpdated());
+		}
+
+		@Override
+		public Entry createNewEntry(Entry parent, List<Entry> children, EntryPath nodePath, UUID user, UUID group, String permissions) {
+			return this.storageService.createNewEntry(parent, children, nodePath, user, group, permissions);
+		}
+
+		@Override
+		public Entry createRootEntry(EntryPath entryPath) {
+			return this.storageService.createRootEntry(entryPath);
+		}
+
+		@Override
+		public synchronized Optional<Entry> searchEntryByURL(String relativePath) {
+			return this.rows.values().stream().filter(row -> row.getUrl().equals("/" + relativePath)).findFirst().map(Table::load);
+		}
+
+		@Override
+		public synchronized Optional<Entry> searchEntryByUUID(UUID entryUUID) {
+			return Optional.ofNullable(this.rows.get(entryUUID)).map(Table::load);
+		}
+
+		@Override
+		public synchronized List<Entry> retrieveChildEntries(Entry entry) {
+			return this.rows.values().stream().filter(row -> row.getParent() != null && row.getParent().getId().equals(entry.getId())).map(Table::load).toList();
+		}
+
+		@Override
+		public synchronized List<Entry> retrieveEntriesAfter(UUID lastEntryUUID, Integer pageSize) {
+			return this.rows.values().stream().filter(row -> lastEntryUUID == null || row.getId().compareTo(lastEntryUUID) > 0).sorted(Comparator.comparing(Entry::getId)).limit(pageSize).map(Table::load).toList();
+		}
+
+		@Override
+		public synchronized Date retrieveLatestUpdate() {
+			return new Date(this.latestUpdate);
+		}
+
+		@Override
+		public synchronized Long countEntries() {
+			return (long) this.rows.size();
+		}
+
+		@Override
+		public synchronized Entry persistEntry(Entry entry) {
+			try {
+				entry.preCommitChecks();
+			} catch (Exception exception) {
+				throw new RuntimeException(exception.getMessage(), exception);
+			}
+
+			if (entry.getId() == null) {
+				entry.setId(UUID.randomUUID());
+			}
+
+			entry.restoreVersion(entry.getVersion() + 1L);
+			this.rows.put(entry.getId(), load(entry));
+			this.latestUpdate++;
+			return entry;
+		}
+
+		@Override
+		public List<Entry> persistEntries(List<Entry> entries) {
+			return entries.stream().map(this::persistEntry).toList();
+		}
+
+		@Override
+		public Comparator<Entry> getStorageComparator() {
+			return this.storageService.getStorageComparator();
+		}
+
+		@Override
+		public Map<String, UUID> retrieveEntryUrlsByOwner(UUID owner, Boolean isGroup, String afterUrl, Integer pageSize) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Map<UUID, Long> retrieveUsageByUser() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Map<UUID, Long> retrieveUsageByGroup() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void deleteEntry(Entry entry) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public EntryPath getRootDirectoryPath() {
+			throw new UnsupportedOperationException();
+		}
+	}
+}